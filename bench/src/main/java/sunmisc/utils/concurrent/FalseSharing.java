@@ -0,0 +1,74 @@
+package sunmisc.utils.concurrent;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import sunmisc.utils.concurrent.memory.ArrayMemory;
+import sunmisc.utils.concurrent.memory.BitwiseSegmentsMemory;
+import sunmisc.utils.concurrent.memory.LongMemory;
+import sunmisc.utils.concurrent.memory.ModifiableMemory;
+import sunmisc.utils.concurrent.memory.PaddedArrayMemory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * Every thread owns one index, neighbouring threads own neighbouring indexes,
+ * so the dense layouts share cache lines between writers
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@BenchmarkMode({Mode.Throughput})
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(Threads.MAX)
+@Fork(1)
+public class FalseSharing {
+
+    public static void main(final String[] args) throws RunnerException {
+        final Options opt = new OptionsBuilder()
+                .include(FalseSharing.class.getSimpleName())
+                .build();
+        new Runner(opt).run();
+    }
+
+    private static final int SIZE = 1 << 8;
+
+    private @Param({"false", "true"}) boolean padded;
+    private ModifiableMemory<Integer> array;
+    private LongMemory longs;
+    private final AtomicInteger threads = new AtomicInteger();
+
+    @Setup
+    public void prepare() {
+        this.array = this.padded
+                ? new PaddedArrayMemory<>(SIZE)
+                : new ArrayMemory<>(SIZE);
+        this.longs = BitwiseSegmentsMemory.longs(
+                new BitwiseSegmentsMemory<>(long.class, SIZE, this.padded));
+    }
+
+    @State(Scope.Thread)
+    public static class Slot {
+        int index;
+
+        @Setup
+        public void prepare(final FalseSharing bench) {
+            this.index = bench.threads.getAndIncrement() & (SIZE - 1);
+        }
+    }
+
+    @Benchmark
+    public int arrayStore(final Slot slot) {
+        final int i = slot.index;
+        this.array.store(i, i);
+        return i;
+    }
+
+    @Benchmark
+    public long longsAdd(final Slot slot) {
+        return this.longs.fetchAndAddLong(slot.index, 1L);
+    }
+}
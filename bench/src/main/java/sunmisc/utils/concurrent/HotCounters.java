@@ -0,0 +1,60 @@
+package sunmisc.utils.concurrent;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import sunmisc.utils.concurrent.memory.BitwiseSegmentsMemory;
+import sunmisc.utils.concurrent.memory.LongMemory;
+import sunmisc.utils.concurrent.memory.StripedCounterMemory;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+ * All the threads increment a few hot indexes
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@BenchmarkMode({Mode.Throughput})
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(Threads.MAX)
+@Fork(1)
+public class HotCounters {
+
+    public static void main(final String[] args) throws RunnerException {
+        final Options opt = new OptionsBuilder()
+                .include(HotCounters.class.getSimpleName())
+                .build();
+        new Runner(opt).run();
+    }
+
+    private static final int SIZE = 1 << 4;
+    private static final int HOT = 3;
+
+    private LongMemory longs;
+    private StripedCounterMemory striped;
+
+    @Setup
+    public void prepare() {
+        this.longs = BitwiseSegmentsMemory.longs(
+                new BitwiseSegmentsMemory<>(long.class, SIZE));
+        this.striped = new StripedCounterMemory(SIZE);
+    }
+
+    @Benchmark
+    public long longsAdd() {
+        return this.longs.fetchAndAddLong(HOT, 1L);
+    }
+
+    @Benchmark
+    public void stripedAdd() {
+        this.striped.add(HOT, 1L);
+    }
+
+    @Benchmark
+    public long stripedFetch() {
+        return this.striped.fetchLong(HOT);
+    }
+}
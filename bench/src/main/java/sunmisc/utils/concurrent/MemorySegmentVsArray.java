@@ -7,6 +7,7 @@ import org.openjdk.jmh.runner.options.Options;
 import org.openjdk.jmh.runner.options.OptionsBuilder;
 import sunmisc.utils.concurrent.memory.ArrayMemory;
 import sunmisc.utils.concurrent.memory.ModifiableMemory;
+import sunmisc.utils.concurrent.memory.NativeMemory;
 import sunmisc.utils.concurrent.memory.SegmentsMemory;
 
 import java.util.concurrent.ThreadLocalRandom;
@@ -30,7 +31,7 @@ public class MemorySegmentVsArray {
         new Runner(opt).run();
     }
 
-    public enum ContainerType { MALLOC, ARRAY }
+    public enum ContainerType { MALLOC, SEGMENTS, ARRAY }
 
     private @Param ContainerType type;
     private ModifiableMemory<Integer> memory;
@@ -38,11 +39,19 @@ public class MemorySegmentVsArray {
     @Setup
     public void prepare() {
         this.memory = switch (this.type) {
-            case MALLOC -> new SegmentsMemory<>(SIZE);
+            case MALLOC -> new NativeMemory<>(int.class, SIZE);
+            case SEGMENTS -> new SegmentsMemory<>(SIZE);
             case ARRAY -> new ArrayMemory<>(SIZE);
         };
     }
 
+    @TearDown
+    public void close() {
+        if (this.memory instanceof final NativeMemory<?> mem) {
+            mem.close();
+        }
+    }
+
     @Benchmark
     public Integer read() {
         final int r = ThreadLocalRandom.current().nextInt(SIZE -1);
@@ -0,0 +1,70 @@
+package sunmisc.utils.concurrent;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import sunmisc.utils.concurrent.memory.BitwiseSegmentsMemory;
+import sunmisc.utils.concurrent.memory.SegmentPool;
+import sunmisc.utils.concurrent.memory.SegmentsMemory;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Grow/shrink cycles, compare gc.alloc.rate.norm
+ * of the fresh and the pooled segments
+ */
+@State(Scope.Thread)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@BenchmarkMode({Mode.AverageTime})
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(1)
+@Fork(1)
+public class ReallocCycles {
+
+    public static void main(final String[] args) throws RunnerException {
+        final Options opt = new OptionsBuilder()
+                .include(ReallocCycles.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(opt).run();
+    }
+
+    private static final int SMALL = 1 << 4;
+    private static final int LARGE = 1 << 16;
+
+    private SegmentsMemory<Integer> objects, pooledObjects;
+    private BitwiseSegmentsMemory<Long> longs, pooledLongs;
+
+    @Setup
+    public void prepare() {
+        final SegmentPool pool = new SegmentPool(4);
+        this.objects = new SegmentsMemory<>(SMALL);
+        this.longs = new BitwiseSegmentsMemory<>(long.class, SMALL);
+        this.pooledObjects = new SegmentsMemory<>(SMALL, pool);
+        this.pooledLongs = new BitwiseSegmentsMemory<>(long.class, SMALL, pool);
+    }
+
+    @Benchmark
+    public SegmentsMemory<Integer> objects() {
+        return this.objects = this.objects.realloc(LARGE).realloc(SMALL);
+    }
+
+    @Benchmark
+    public SegmentsMemory<Integer> pooledObjects() {
+        return this.pooledObjects = this.pooledObjects.realloc(LARGE).realloc(SMALL);
+    }
+
+    @Benchmark
+    public BitwiseSegmentsMemory<Long> longs() {
+        return this.longs = this.longs.realloc(LARGE).realloc(SMALL);
+    }
+
+    @Benchmark
+    public BitwiseSegmentsMemory<Long> pooledLongs() {
+        return this.pooledLongs = this.pooledLongs.realloc(LARGE).realloc(SMALL);
+    }
+}
@@ -0,0 +1,72 @@
+package sunmisc.utils.concurrent;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * What a retry loop does after a failed CAS, before the next attempt
+ * <p>The policy is stateless, the loop passes the number of failures
+ * so far, so the uncontended path neither allocates nor waits
+ *
+ * @author Sunmisc Unsafe
+ * @see sunmisc.utils.concurrent.memory.ModifiableMemory#transformContended
+ */
+@FunctionalInterface
+public interface Backoff {
+
+    /**
+     * Retries immediately, the behaviour of a bare CAS loop
+     */
+    Backoff NONE = failures -> { };
+
+    /**
+     * A single spin-wait hint per failure
+     */
+    Backoff SPIN = failures -> Thread.onSpinWait();
+
+    /**
+     * Exponential spinning up to 64 hints, then yield, then park
+     */
+    Backoff DEFAULT = exponential(6, 16, 32);
+
+    /**
+     * Pauses after a failed attempt
+     *
+     * @param failures the number of failed attempts so far, from 1
+     */
+    void pause(int failures);
+
+    /**
+     * Exponential backoff with jitter: after the k-th failure it spins
+     * a random number of times below {@code 2^min(k, maxShift)},
+     * from {@code yieldAfter} failures it yields the processor,
+     * from {@code parkAfter} failures it parks for a period that
+     * doubles with every failure, up to a millisecond
+     *
+     * @param maxShift the limit of the spinning exponent
+     * @param yieldAfter the failures before yielding
+     * @param parkAfter the failures before parking
+     * @return the policy
+     */
+    static Backoff exponential(final int maxShift,
+                               final int yieldAfter,
+                               final int parkAfter) {
+        if (maxShift < 0 || maxShift > 30 || yieldAfter > parkAfter) {
+            throw new IllegalArgumentException();
+        }
+        return failures -> {
+            if (failures < yieldAfter) {
+                // jitter: threads failing together do not retry together
+                final int spins = ThreadLocalRandom.current()
+                        .nextInt(1 << Math.min(failures, maxShift)) + 1;
+                for (int i = 0; i < spins; ++i) {
+                    Thread.onSpinWait();
+                }
+            } else if (failures < parkAfter) {
+                Thread.yield();
+            } else {
+                LockSupport.parkNanos(1_000L << Math.min(failures - parkAfter, 10));
+            }
+        };
+    }
+}
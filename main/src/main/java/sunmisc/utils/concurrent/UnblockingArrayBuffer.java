@@ -86,10 +86,22 @@ public class UnblockingArrayBuffer<E>
     //  but ValueBased (hello Valhalla)
     transient EntrySetView<E> entrySet;
 
+    // what put does after a failed CAS, not serialized
+    transient Backoff backoff = Backoff.SPIN;
+
 
     public UnblockingArrayBuffer(final int size) {
         this.bridge = new ContainerBridge(new Object[size]);
     }
+    /**
+     * @param size the length of the array
+     * @param backoff what {@code put} does after a failed CAS,
+     *                a deserialized array uses {@link Backoff#SPIN}
+     */
+    public UnblockingArrayBuffer(final int size, final Backoff backoff) {
+        this(size);
+        this.backoff = requireNonNull(backoff);
+    }
     public UnblockingArrayBuffer(final E[] array) {
         // parallelize copy using Stream API?
         final int n = array.length;
@@ -151,15 +163,16 @@ public class UnblockingArrayBuffer<E>
 
         Object[] arr = this.bridge.array;
         checkIndex(i, arr.length);
+        int failures = 0;
         for (Object o;;) {
-            if ((o = arrayAt(arr, i)) == null) {
+            if ((o = arrayAt(arr, i)) instanceof final ForwardingPointer f) {
+                arr = this.helpTransfer(f, i);
+                continue;
+            } else if (o == null) {
                 if (weakCasAt(arr, i, null,
                         new Cell<>(newValue))) {
                     return null;
                 }
-            }
-            else if (o instanceof final ForwardingPointer f) {
-                arr = this.helpTransfer(f, i);
             } else if (o instanceof final Cell n) {
                 final Object val = n.value;
                 // Replacing a dead cell
@@ -171,6 +184,8 @@ public class UnblockingArrayBuffer<E>
                     return (E) val;
                 }
             }
+            // a failed CAS, helping a transfer is not a failure
+            this.backoff.pause(++failures);
         }
     }
 
@@ -572,6 +587,7 @@ public class UnblockingArrayBuffer<E>
             v = s.readObject();
             list.add((int) k,v);
         }
+        this.backoff = Backoff.SPIN;
         this.bridge = new ContainerBridge(list.toArray());
     }
     /*
@@ -1,5 +1,7 @@
 package sunmisc.utils.concurrent.maps;
 
+import sunmisc.utils.concurrent.Backoff;
+
 import java.io.*;
 import java.lang.invoke.MethodHandles;
 import java.lang.invoke.VarHandle;
@@ -48,6 +50,8 @@ public final class ConcurrentEnumMap<K extends Enum<K>,V>
     private transient K[] keys;
     // Array representation of this map. The ith element is the value to which universe[i]
     private transient V[] table;
+    // what compute and merge do after a failed CAS, not serialized
+    private transient Backoff backoff;
 
     @SuppressWarnings("forRemoval")
     private transient KeySetView<K,V> keySet;
@@ -57,11 +61,21 @@ public final class ConcurrentEnumMap<K extends Enum<K>,V>
     private transient EntrySetView<K,V> entrySet;
 
     public ConcurrentEnumMap(final Class<? extends K> keyType) {
+        this(keyType, Backoff.SPIN);
+    }
+    /**
+     * @param keyType the enumeration type of the keys
+     * @param backoff what {@code compute} and {@code merge} do after a failed CAS,
+     *                a deserialized map uses {@link Backoff#SPIN}
+     */
+    public ConcurrentEnumMap(final Class<? extends K> keyType, final Backoff backoff) {
         this.keyType = keyType;
         this.keys = keyType.getEnumConstants();
         this.table = (V[]) new Object[this.keys.length];
+        this.backoff = requireNonNull(backoff);
     }
     public ConcurrentEnumMap(final Map<? extends K, ? extends V> m) {
+        this.backoff = Backoff.SPIN;
         this.keys = (K[]) m.keySet().toArray(Enum[]::new);
         this.keyType = this.keys[0].getDeclaringClass();
         this.table = (V[]) new Object[this.keyType.getEnumConstants().length];
@@ -206,14 +220,15 @@ public final class ConcurrentEnumMap<K extends Enum<K>,V>
         requireNonNull(remapping);
         final int i = key.ordinal();
         final V[] tab = this.table;
-        for (V oldVal;;) {
-            final V newVal = remapping.apply(key,
-                    oldVal = tabAt(tab, i));
+        for (int failures = 0;;) {
+            final V oldVal = tabAt(tab, i);
+            final V newVal = remapping.apply(key, oldVal);
             // strong CAS to minimize function call
             if (casTabAt(tab, i, oldVal, newVal)) {
                 this.addCount(oldVal == null ? 1L : newVal == null ? -1L : 0);
                 return newVal;
             }
+            this.backoff.pause(++failures);
         }
     }
     @Override
@@ -266,7 +281,8 @@ public final class ConcurrentEnumMap<K extends Enum<K>,V>
         requireNonNull(value);
         requireNonNull(remapping);
         final int i = key.ordinal();
-        for (final V[] tab = this.table;;) {
+        final V[] tab = this.table;
+        for (int failures = 0;; this.backoff.pause(++failures)) {
             final V oldVal = tabAt(tab, i);
             if (oldVal == null) {
                 if (weakCasTabAt(tab, i, null, value)) {
@@ -800,6 +816,7 @@ public final class ConcurrentEnumMap<K extends Enum<K>,V>
     private void readObject(final ObjectInputStream s)
             throws IOException, ClassNotFoundException {
         this.keyType = (Class<K>) s.readObject();
+        this.backoff = Backoff.SPIN;
         this.keys = this.keyType.getEnumConstants();
         this.table = (V[]) new Object[this.keys.length];
         for (long delta = 0L;;) {
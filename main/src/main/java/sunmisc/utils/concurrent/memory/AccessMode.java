@@ -0,0 +1,30 @@
+package sunmisc.utils.concurrent.memory;
+
+/**
+ * Memory ordering of the loads and stores of a memory view,
+ * see {@link ModifiableMemory#withMode(AccessMode)}
+ * <p>Read-modify-write operations stay atomic (volatile)
+ * in every mode except {@link #PLAIN}
+ *
+ * @author Sunmisc Unsafe
+ */
+public enum AccessMode {
+    /**
+     * Plain array access, read-modify-write operations
+     * are not atomic: only for single owner phases,
+     * for example bulk initialization before publication
+     */
+    PLAIN,
+    /**
+     * Bitwise atomic, coherent per slot, no ordering with other slots
+     */
+    OPAQUE,
+    /**
+     * Acquire loads and release stores, the default mode
+     */
+    ACQUIRE_RELEASE,
+    /**
+     * Sequentially consistent loads and stores
+     */
+    VOLATILE
+}
@@ -5,16 +5,50 @@ import java.lang.invoke.VarHandle;
 import java.util.Arrays;
 import java.util.Objects;
 import java.util.StringJoiner;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+/**
+ * A memory over an array of references, slots are read with acquire
+ * and written with release semantics. {@link #withMode} returns
+ * a subclass per access mode, so no access branches on the mode
+ *
+ * @author Sunmisc Unsafe
+ * @param <E> the type of elements
+ */
 @SuppressWarnings("unchecked")
-public final class ArrayMemory<E> implements ModifiableMemory<E> {
+public sealed class ArrayMemory<E> implements ModifiableMemory<E> {
     private final E[] array;
+    private final AccessMode mode;
+    private final SegmentPool pool;
+    // set while this memory owns the pooled array, views never do
+    private final AtomicBoolean owner;
 
     public ArrayMemory(final int size) {
-        this((E[]) new Object[size]);
+        this((E[]) new Object[size], AccessMode.ACQUIRE_RELEASE, null, null);
     }
-    private ArrayMemory(final E[] array) {
+
+    /**
+     * The array is taken from the pool, {@link #realloc(int)} and
+     * {@link #release()} return arrays to it. Only this memory owns
+     * the array, {@link #withMode} views never return it
+     *
+     * @param size the length
+     * @param pool the pool of arrays
+     */
+    public ArrayMemory(final int size, final SegmentPool pool) {
+        this((E[]) pool.acquire(Object[].class, size),
+                AccessMode.ACQUIRE_RELEASE, Objects.requireNonNull(pool),
+                new AtomicBoolean(true));
+    }
+
+    private ArrayMemory(final E[] array,
+                        final AccessMode mode,
+                        final SegmentPool pool,
+                        final AtomicBoolean owner) {
         this.array = array;
+        this.mode = mode;
+        this.pool = pool;
+        this.owner = owner;
     }
 
     @Override
@@ -22,6 +56,19 @@ public final class ArrayMemory<E> implements ModifiableMemory<E> {
         return this.array.length;
     }
 
+    // a memory of the given access mode over the array
+    private static <E> ArrayMemory<E> of(final E[] array,
+                                         final AccessMode mode,
+                                         final SegmentPool pool,
+                                         final AtomicBoolean owner) {
+        return switch (mode) {
+            case PLAIN -> new Plain<>(array, pool, owner);
+            case OPAQUE -> new Opaque<>(array, pool, owner);
+            case ACQUIRE_RELEASE -> new ArrayMemory<>(array, mode, pool, owner);
+            case VOLATILE -> new Volatile<>(array, pool, owner);
+        };
+    }
+
     @Override
     public E fetch(final int index) {
         return (E) AA.getAcquire(this.array, index);
@@ -53,9 +100,65 @@ public final class ArrayMemory<E> implements ModifiableMemory<E> {
         return AA.compareAndSet(this.array, index, expectedValue, newValue);
     }
 
+    @Override
+    public ArrayMemory<E> withMode(final AccessMode mode) {
+        return of(this.array, mode, this.pool, null);
+    }
+
+    @Override
+    public void fetchRange(final int from,
+                           final E[] dst,
+                           final int offset,
+                           final int length
+    ) throws IndexOutOfBoundsException {
+        System.arraycopy(this.array, from, dst, offset, length);
+        VarHandle.acquireFence();
+    }
+
+    @Override
+    public void storeRange(final int from,
+                           final E[] src,
+                           final int offset,
+                           final int length
+    ) throws IndexOutOfBoundsException {
+        VarHandle.releaseFence();
+        System.arraycopy(src, offset, this.array, from, length);
+    }
+
+    @Override
+    public void fill(final int from,
+                     final int to,
+                     final E value
+    ) throws IndexOutOfBoundsException {
+        Objects.checkFromToIndex(from, to, this.array.length);
+        VarHandle.releaseFence();
+        Arrays.fill(this.array, from, to, value);
+    }
+
+    /**
+     * A pooled memory hands its array back to the pool if it owns it,
+     * it must not be used after the call. The new memory owns its array
+     */
     @Override
     public ModifiableMemory<E> realloc(final int size) throws OutOfMemoryError {
-        return new ArrayMemory<>(Arrays.copyOf(this.array, size));
+        final SegmentPool pool = this.pool;
+        if (pool == null) {
+            return of(Arrays.copyOf(this.array, size), this.mode, null, null);
+        }
+        final E[] copy = (E[]) pool.acquire(Object[].class, size);
+        System.arraycopy(this.array, 0, copy, 0, Math.min(size, this.array.length));
+        this.release();
+        return of(copy, this.mode, pool, new AtomicBoolean(true));
+    }
+
+    /**
+     * Returns the array to the pool, if there is one and this memory
+     * owns it, at most once. The memory must not be used after the call
+     */
+    public void release() {
+        if (this.owner != null && this.owner.compareAndSet(true, false)) {
+            this.pool.release(this.array);
+        }
     }
 
     @Override
@@ -66,6 +169,80 @@ public final class ArrayMemory<E> implements ModifiableMemory<E> {
         return joiner.toString();
     }
 
+    private static final class Opaque<E> extends ArrayMemory<E> {
+        Opaque(final E[] array, final SegmentPool pool, final AtomicBoolean owner) {
+            super(array, AccessMode.OPAQUE, pool, owner);
+        }
+
+        @Override
+        public E fetch(final int index) {
+            return (E) AA.getOpaque(super.array, index);
+        }
+
+        @Override
+        public void store(final int index, final E value) {
+            AA.setOpaque(super.array, index, value);
+        }
+    }
+
+    private static final class Volatile<E> extends ArrayMemory<E> {
+        Volatile(final E[] array, final SegmentPool pool, final AtomicBoolean owner) {
+            super(array, AccessMode.VOLATILE, pool, owner);
+        }
+
+        @Override
+        public E fetch(final int index) {
+            return (E) AA.getVolatile(super.array, index);
+        }
+
+        @Override
+        public void store(final int index, final E value) {
+            AA.setVolatile(super.array, index, value);
+        }
+    }
+
+    // plain reads and writes, read-modify-writes are not atomic
+    private static final class Plain<E> extends ArrayMemory<E> {
+        Plain(final E[] array, final SegmentPool pool, final AtomicBoolean owner) {
+            super(array, AccessMode.PLAIN, pool, owner);
+        }
+
+        @Override
+        public E fetch(final int index) {
+            return super.array[index];
+        }
+
+        @Override
+        public void store(final int index, final E value) {
+            super.array[index] = value;
+        }
+
+        @Override
+        public E fetchAndStore(final int index, final E value) {
+            final E prev = super.array[index];
+            super.array[index] = value;
+            return prev;
+        }
+
+        @Override
+        public E compareAndExchange(final int index,
+                                    final E expectedValue,
+                                    final E newValue) {
+            final E witness = super.array[index];
+            if (witness == expectedValue) {
+                super.array[index] = newValue;
+            }
+            return witness;
+        }
+
+        @Override
+        public boolean compareAndStore(final int index,
+                                       final E expectedValue,
+                                       final E newValue) {
+            return this.compareAndExchange(index, expectedValue, newValue) == expectedValue;
+        }
+    }
+
     // VarHandle mechanics
     private static final VarHandle AA
             = MethodHandles.arrayElementVarHandle(Object[].class);
@@ -0,0 +1,16 @@
+package sunmisc.utils.concurrent.memory;
+
+public interface BitwiseLongIndexedMemory<E extends Number>
+        extends LongIndexedMemory<E> {
+
+    E fetchAndAdd(long index, E value);
+
+    E fetchAndBitwiseOr(long index, E mask);
+
+    E fetchAndBitwiseAnd(long index, E mask);
+
+    E fetchAndBitwiseXor(long index, E mask);
+
+    @Override
+    BitwiseLongIndexedMemory<E> realloc(long size) throws OutOfMemoryError;
+}
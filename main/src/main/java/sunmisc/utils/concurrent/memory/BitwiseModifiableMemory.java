@@ -1,9 +1,7 @@
 package sunmisc.utils.concurrent.memory;
 
 public interface BitwiseModifiableMemory<E extends Number>
-        extends ModifiableMemory<E> {
-
-    E fetchAndAdd(int index, E value);
+        extends NumericModifiableMemory<E> {
 
     E fetchAndBitwiseOr(int index, E mask);
 
@@ -11,6 +9,35 @@ public interface BitwiseModifiableMemory<E extends Number>
 
     E fetchAndBitwiseXor(int index, E mask);
 
+    // integral values compare exactly as longs
+    @Override
+    default E fetchAndMax(final int index, final E value) {
+        for (E prev = this.fetch(index);;) {
+            if (prev.longValue() >= value.longValue()) {
+                return prev;
+            }
+            final E witness = this.compareAndExchange(index, prev, value);
+            if (witness.equals(prev)) {
+                return prev;
+            }
+            prev = witness;
+        }
+    }
+
+    @Override
+    default E fetchAndMin(final int index, final E value) {
+        for (E prev = this.fetch(index);;) {
+            if (prev.longValue() <= value.longValue()) {
+                return prev;
+            }
+            final E witness = this.compareAndExchange(index, prev, value);
+            if (witness.equals(prev)) {
+                return prev;
+            }
+            prev = witness;
+        }
+    }
+
     @Override
     BitwiseModifiableMemory<E> realloc(int size) throws OutOfMemoryError;
 }
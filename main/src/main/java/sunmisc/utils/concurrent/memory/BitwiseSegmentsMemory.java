@@ -1,134 +1,531 @@
 package sunmisc.utils.concurrent.memory;
 
+import java.io.IOException;
+import java.lang.foreign.MemorySegment;
 import java.lang.invoke.MethodHandles;
 import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.Arrays;
+import java.util.Objects;
 import java.util.StringJoiner;
-import java.util.function.BiFunction;
-import java.util.function.Function;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.IntConsumer;
+import java.util.function.IntFunction;
+import java.util.function.LongConsumer;
+import java.util.function.ObjIntConsumer;
 
-import static java.lang.Integer.numberOfLeadingZeros;
+import static sunmisc.utils.concurrent.memory.PowerOfTwoAreas.areaForIndex;
 
+/**
+ * Power-of-two areas of primitive arrays
+ * <p>The primitive views ({@link #longs}, {@link #ints}, {@link #shorts},
+ * {@link #bytes}) avoid boxing, each takes only a memory of its own
+ * component type
+ * <p>The padded layout puts every slot on its own pair of cache lines
+ * (128 bytes), so threads updating adjacent indexes do not contend,
+ * at the cost of a footprint that many times larger
+ *
+ * @author Sunmisc Unsafe
+ * @param <E> boxed component type
+ */
 public final class BitwiseSegmentsMemory<E extends Number>
         implements BitwiseModifiableMemory<E> {
 
-    private final BitwiseModifiableMemory<E>[] areas;
-    private final Function<Integer, Area<E>> mapped;
+    private final Area<E>[] areas;
+    private final IntFunction<Area<E>> mapped;
+    private final SegmentPool pool;
+    // set while this memory owns the pooled areas, realloc hands them over
+    private final AtomicBoolean owner;
+    // the primitive view of the component type
+    private final Object view;
 
-    private BitwiseSegmentsMemory(final BitwiseModifiableMemory<E>[] areas,
-                                  final Function<Integer, Area<E>> mapped) {
+    private BitwiseSegmentsMemory(final Area<E>[] areas,
+                                  final IntFunction<Area<E>> mapped,
+                                  final SegmentPool pool,
+                                  final boolean owner) {
         this.areas = areas;
         this.mapped = mapped;
+        this.pool = pool;
+        this.owner = new AtomicBoolean(owner);
+        this.view = this.primitiveView();
     }
 
     public BitwiseSegmentsMemory(final Class<E> componentType, final int size) {
-        final Function<Integer, Area<E>> map = typeToArea(componentType);
-        final int segments = 32 - numberOfLeadingZeros(Math.max(size - 1, 1));
-        @SuppressWarnings("unchecked")
-        final BitwiseModifiableMemory<E>[] areas = new BitwiseModifiableMemory[segments];
-        areas[0] = map.apply(2);
-        for (int segment = 1; segment < segments; ++segment) {
-            areas[segment] = map.apply(1 << segment);
+        this(componentType, size, false);
+    }
+
+    public BitwiseSegmentsMemory(final Class<E> componentType,
+                                 final int size,
+                                 final boolean padded) {
+        this(componentType, size, padded, null);
+    }
+
+    /**
+     * Dense areas taken from the pool, a shrinking {@link #realloc(int)}
+     * and {@link #release()} return them to it. The areas are owned
+     * by the memory, {@link #realloc(int)} hands them over to the new one
+     * and {@link #withMode} views never own them, so only the owner
+     * may be reallocated, once
+     *
+     * @param componentType the primitive component type
+     * @param size minimal length of the memory
+     * @param pool the pool of area arrays
+     */
+    public BitwiseSegmentsMemory(final Class<E> componentType,
+                                 final int size,
+                                 final SegmentPool pool) {
+        this(componentType, size, false, Objects.requireNonNull(pool));
+    }
+
+    private BitwiseSegmentsMemory(final Class<E> componentType,
+                                  final int size,
+                                  final boolean padded,
+                                  final SegmentPool pool) {
+        final IntFunction<Dense<E>> dense = typeToArea(componentType, pool);
+        final IntFunction<Area<E>> map;
+        if (padded) {
+            // slots per 128 bytes: long - 16, int - 32, short - 64, byte - 128
+            final int shift = 7 - Integer.numberOfTrailingZeros(widthOf(componentType));
+            map = len -> new Padded<>(dense.apply((len + 1) << shift), shift);
+        } else {
+            map = dense::apply;
         }
+        @SuppressWarnings("unchecked")
+        final Area<E>[] empty = new Area[0];
         this.mapped = map;
-        this.areas = areas;
+        this.areas = PowerOfTwoAreas.make(empty, size, map);
+        this.pool = pool;
+        this.owner = new AtomicBoolean(true);
+        this.view = this.primitiveView();
+    }
+
+    private Object primitiveView() {
+        final Dense<E> dense = this.areas[0].dense();
+        return dense instanceof LongArea ? new Longs()
+                : dense instanceof IntArea ? new Ints()
+                : dense instanceof ShortArea ? new Shorts()
+                : new Bytes();
+    }
+
+    /**
+     * Primitive access to a memory of {@code long}, without boxing
+     *
+     * @param memory the memory
+     * @return the view, the same one for every call
+     */
+    public static LongMemory longs(final BitwiseSegmentsMemory<Long> memory) {
+        return (LongMemory) memory.view;
+    }
+
+    /**
+     * Primitive access to a memory of {@code int}, without boxing
+     *
+     * @param memory the memory
+     * @return the view, the same one for every call
+     */
+    public static IntMemory ints(final BitwiseSegmentsMemory<Integer> memory) {
+        return (IntMemory) memory.view;
+    }
+
+    /**
+     * Primitive access to a memory of {@code short}, without boxing
+     *
+     * @param memory the memory
+     * @return the view, the same one for every call
+     */
+    public static ShortMemory shorts(final BitwiseSegmentsMemory<Short> memory) {
+        return (ShortMemory) memory.view;
+    }
+
+    /**
+     * Primitive access to a memory of {@code byte}, without boxing
+     *
+     * @param memory the memory
+     * @return the view, the same one for every call
+     */
+    public static ByteMemory bytes(final BitwiseSegmentsMemory<Byte> memory) {
+        return (ByteMemory) memory.view;
     }
 
     @SuppressWarnings("unchecked")
-    private static <E extends Number> Function<Integer, Area<E>> typeToArea(final Class<E> type) {
-        final Function<Integer, Area<E>> map;
+    private static <E extends Number> IntFunction<Dense<E>> typeToArea(final Class<E> type,
+                                                                       final SegmentPool pool) {
+        final IntFunction<Dense<E>> map;
         if (type == byte.class) {
-            map = len -> (Area<E>) new AreaBytes(new byte[len]);
+            map = len -> (Dense<E>) new AreaBytes(pool == null
+                    ? new byte[len]
+                    : pool.acquire(byte[].class, len));
         } else if (type == short.class) {
-            map = len -> (Area<E>) new AreaShorts(new short[len]);
+            map = len -> (Dense<E>) new AreaShorts(pool == null
+                    ? new short[len]
+                    : pool.acquire(short[].class, len));
         } else if (type == int.class) {
-            map = len -> (Area<E>) new AreaInts(new int[len]);
+            map = len -> (Dense<E>) new AreaInts(pool == null
+                    ? new int[len]
+                    : pool.acquire(int[].class, len));
         } else if (type == long.class) {
-            map = len -> (Area<E>) new AreaLongs(new long[len]);
+            map = len -> (Dense<E>) new AreaLongs(pool == null
+                    ? new long[len]
+                    : pool.acquire(long[].class, len));
         } else {
             throw new IllegalArgumentException("Component type is not bitwise");
         }
         return map;
     }
 
-    private static int areaForIndex(final int index) {
-        return index < 2 ? 0 : 31 - numberOfLeadingZeros(index);
+    private static int widthOf(final Class<?> type) {
+        return type == long.class ? Long.BYTES
+                : type == int.class ? Integer.BYTES
+                : type == short.class ? Short.BYTES
+                : Byte.BYTES;
+    }
+
+    private int indexForArea(final Area<E> area, final int index) {
+        return PowerOfTwoAreas.indexForArea(area.length(), index);
+    }
+
+    /**
+     * The new memory shares the areas with this one and takes over
+     * their ownership. With a pool, areas cut off by shrinking go back
+     * to it if this memory owned them, this memory must not be used after that
+     *
+     * @throws IllegalStateException if the areas are pooled
+     *                               and this memory does not own them
+     */
+    @Override
+    public BitwiseSegmentsMemory<E> realloc(final int size) {
+        final boolean owned = this.owner.compareAndSet(true, false);
+        if (!owned && this.pool != null) {
+            // a sibling sharing the areas could release them under us
+            throw new IllegalStateException("pooled areas are not owned");
+        }
+        final Area<E>[] prev = this.areas;
+        final Area<E>[] copy = PowerOfTwoAreas.realloc(prev, size, this.mapped);
+        if (owned && this.pool != null) {
+            for (int p = copy.length; p < prev.length; ++p) {
+                this.pool.release(prev[p].dense().array());
+            }
+        }
+        return new BitwiseSegmentsMemory<>(copy, this.mapped, this.pool, owned);
+    }
+
+    /**
+     * Returns the areas to the pool, if there is one and this memory
+     * owns them, at most once. The memory must not be used after the call
+     */
+    public void release() {
+        if (this.owner.compareAndSet(true, false) && this.pool != null) {
+            for (final Area<E> area : this.areas) {
+                this.pool.release(area.dense().array());
+            }
+        }
     }
 
-    private int indexForArea(final BitwiseModifiableMemory<E> area, final int index) {
-        return index < 2 ? index : index - area.length();
+    @Override
+    public BitwiseSegmentsMemory<E> withMode(final AccessMode mode) {
+        final Area<E>[] prev = this.areas;
+        final Area<E>[] views = Arrays.copyOf(prev, prev.length);
+        for (int p = 0; p < views.length; ++p) {
+            views[p] = prev[p].withMode(mode);
+        }
+        final IntFunction<Area<E>> mapped = this.mapped;
+        return new BitwiseSegmentsMemory<>(views,
+                len -> mapped.apply(len).withMode(mode), this.pool, false);
     }
 
+    /**
+     * Areas are copied to the channel through a direct buffer,
+     * chunk by chunk, padding is skipped
+     */
     @Override
-    public BitwiseModifiableMemory<E> realloc(final int size) {
-        final int aligned = 32 - numberOfLeadingZeros(Math.max(size - 1, 1));
-        final BitwiseModifiableMemory<E>[] prev = this.areas;
-        final BitwiseModifiableMemory<E>[] copy = Arrays.copyOf(prev, aligned);
-        for (int p = prev.length; p < aligned; ++p) {
-            copy[p] = this.mapped.apply(1 << p);
+    public void writeTo(final WritableByteChannel channel) throws IOException {
+        final ByteBuffer chunk = ChannelIO.chunk();
+        for (final Area<E> area : this.areas) {
+            area.writeTo(channel, chunk);
+        }
+    }
+
+    /**
+     * Reads a memory written by {@link #writeTo}
+     * or stored by {@link MappedSegmentsMemory}
+     *
+     * @param channel the source
+     * @param componentType primitive component type
+     * @param size minimal length, {@link #length()} slots are read
+     * @return the new memory
+     * @throws IOException if the channel fails or ends too early
+     */
+    public static <E extends Number> BitwiseSegmentsMemory<E> readFrom(
+            final ReadableByteChannel channel,
+            final Class<E> componentType,
+            final int size) throws IOException {
+        final BitwiseSegmentsMemory<E> memory = new BitwiseSegmentsMemory<>(componentType, size);
+        final ByteBuffer chunk = ChannelIO.chunk();
+        for (final Area<E> area : memory.areas) {
+            area.readFrom(channel, chunk);
         }
-        return new BitwiseSegmentsMemory<>(copy, this.mapped);
+        return memory;
+    }
+
+    @Override
+    public int length() {
+        return 1 << this.areas.length;
     }
 
     @Override
     public E fetch(final int index) {
-        return this.compute(index, (i, area) -> area.fetch(i));
+        final Area<E> area = this.areas[areaForIndex(index)];
+        final int i = area.slot(this.indexForArea(area, index));
+        return area.dense().fetch(i);
     }
 
     @Override
     public void store(final int index, final E value) {
-        this.compute(index, (i, area) -> {
-            area.store(i, value);
-            return value;
-        });
+        final Area<E> area = this.areas[areaForIndex(index)];
+        final int i = area.slot(this.indexForArea(area, index));
+        area.dense().store(i, value);
     }
 
     @Override
     public E compareAndExchange(final int index, final E expected, final E value) {
-        return this.compute(index, (i, area) -> area.compareAndExchange(i, expected, value));
+        final Area<E> area = this.areas[areaForIndex(index)];
+        final int i = area.slot(this.indexForArea(area, index));
+        return area.dense().compareAndExchange(i, expected, value);
+    }
+
+    @Override
+    public boolean compareAndStore(final int index, final E expected, final E value) {
+        final Area<E> area = this.areas[areaForIndex(index)];
+        final int i = area.slot(this.indexForArea(area, index));
+        return area.dense().compareAndStore(i, expected, value);
     }
 
     @Override
     public E fetchAndStore(final int index, final E value) {
-        return this.compute(index, (i, area) -> area.fetchAndStore(i, value));
+        final Area<E> area = this.areas[areaForIndex(index)];
+        final int i = area.slot(this.indexForArea(area, index));
+        return area.dense().fetchAndStore(i, value);
     }
 
     @Override
     public E fetchAndAdd(final int index, final E value) {
-        return this.compute(index, (i, area) -> area.fetchAndAdd(i, value));
+        final Area<E> area = this.areas[areaForIndex(index)];
+        final int i = area.slot(this.indexForArea(area, index));
+        return area.dense().fetchAndAdd(i, value);
     }
 
     @Override
     public E fetchAndBitwiseOr(final int index, final E mask) {
-        return this.compute(index, (i, area) -> area.fetchAndBitwiseOr(i, mask));
+        final Area<E> area = this.areas[areaForIndex(index)];
+        final int i = area.slot(this.indexForArea(area, index));
+        return area.dense().fetchAndBitwiseOr(i, mask);
     }
 
     @Override
     public E fetchAndBitwiseAnd(final int index, final E mask) {
-        return this.compute(index, (i, area) -> area.fetchAndBitwiseAnd(i, mask));
+        final Area<E> area = this.areas[areaForIndex(index)];
+        final int i = area.slot(this.indexForArea(area, index));
+        return area.dense().fetchAndBitwiseAnd(i, mask);
     }
 
     @Override
     public E fetchAndBitwiseXor(final int index, final E mask) {
-        return this.compute(index, (i, area) -> area.fetchAndBitwiseXor(i, mask));
+        final Area<E> area = this.areas[areaForIndex(index)];
+        final int i = area.slot(this.indexForArea(area, index));
+        return area.dense().fetchAndBitwiseXor(i, mask);
     }
 
     @Override
-    public int length() {
-        return 1 << this.areas.length;
+    public void fetchRange(final int from, final E[] dst, final int offset, final int length) {
+        Objects.checkFromIndexSize(offset, length, dst.length);
+        this.ranges(from, length, (area, start, done, n) ->
+                area.fetchRange(start, dst, offset + done, n));
+    }
+
+    @Override
+    public void storeRange(final int from, final E[] src, final int offset, final int length) {
+        Objects.checkFromIndexSize(offset, length, src.length);
+        this.ranges(from, length, (area, start, done, n) ->
+                area.storeRange(start, src, offset + done, n));
+    }
+
+    @Override
+    public void fill(final int from, final int to, final E value) {
+        Objects.checkFromToIndex(from, to, this.length());
+        this.ranges(from, to - from, (area, start, done, n) ->
+                area.fill(start, start + n, value));
+    }
+
+    @Override
+    public void forEachIndexed(final int from,
+                               final int to,
+                               final ObjIntConsumer<? super E> action) {
+        Objects.requireNonNull(action);
+        Objects.checkFromToIndex(from, to, this.length());
+        this.ranges(from, to - from, (area, start, done, n) -> {
+            for (int k = 0; k < n; ++k) {
+                action.accept(area.fetch(start + k), from + done + k);
+            }
+        });
+    }
+
+    /*
+     * Splits [from, from + length) at area boundaries into runs
+     * of contiguous slots of dense areas, padded slots go one by one
+     */
+    private void ranges(final int from,
+                        final int length,
+                        final RangeAction<E> action) {
+        Objects.checkFromIndexSize(from, length, this.length());
+        for (int done = 0; done < length; ) {
+            final int index = from + done;
+            final Area<E> area = this.areas[areaForIndex(index)];
+            final int start = this.indexForArea(area, index);
+            final Dense<E> dense = area.dense();
+            final int n = dense == area ? Math.min(area.length() - start, length - done) : 1;
+            action.apply(dense, area.slot(start), done, n);
+            done += n;
+        }
+    }
+
+    @FunctionalInterface
+    private interface RangeAction<E extends Number> {
+        void apply(Dense<E> area, int start, int done, int n);
     }
 
-    private E compute(final int index,
-                      final BiFunction<Integer, BitwiseModifiableMemory<E>, E> consumer) {
-        final int exponent = areaForIndex(index);
-        final BitwiseModifiableMemory<E> area = this.areas[exponent];
-        final int i = this.indexForArea(area, index);
-        return consumer.apply(i, area);
+    /**
+     * Atomically ors every slot with the slot of {@code other}
+     * at the same index, slot by slot
+     *
+     * @param other memory of the same component type
+     */
+    public void or(final BitwiseSegmentsMemory<E> other) {
+        this.accumulate(Operation.OR, other);
     }
+
+    /**
+     * Atomically ands every slot with the slot of {@code other}
+     * at the same index, slot by slot, slots beyond
+     * the length of {@code other} are cleared
+     *
+     * @param other memory of the same component type
+     */
+    public void and(final BitwiseSegmentsMemory<E> other) {
+        this.accumulate(Operation.AND, other);
+    }
+
+    /**
+     * Atomically clears in every slot the bits set in the slot
+     * of {@code other} at the same index, slot by slot
+     *
+     * @param other memory of the same component type
+     */
+    public void andNot(final BitwiseSegmentsMemory<E> other) {
+        this.accumulate(Operation.AND_NOT, other);
+    }
+
+    /**
+     * Atomically xors every slot with the slot of {@code other}
+     * at the same index, slot by slot
+     *
+     * @param other memory of the same component type
+     */
+    public void xor(final BitwiseSegmentsMemory<E> other) {
+        this.accumulate(Operation.XOR, other);
+    }
+
+    /**
+     * Plain snapshot flavour of {@link #or}: both memories are read
+     * without atomicity and the result is a new memory
+     * of the length of this one
+     *
+     * @param other memory of the same component type
+     * @return the new memory
+     */
+    public BitwiseSegmentsMemory<E> orSnapshot(final BitwiseSegmentsMemory<E> other) {
+        return this.combine(Operation.OR, other);
+    }
+
+    /**
+     * Plain snapshot flavour of {@link #and}
+     *
+     * @param other memory of the same component type
+     * @return the new memory
+     */
+    public BitwiseSegmentsMemory<E> andSnapshot(final BitwiseSegmentsMemory<E> other) {
+        return this.combine(Operation.AND, other);
+    }
+
+    /**
+     * Plain snapshot flavour of {@link #andNot}
+     *
+     * @param other memory of the same component type
+     * @return the new memory
+     */
+    public BitwiseSegmentsMemory<E> andNotSnapshot(final BitwiseSegmentsMemory<E> other) {
+        return this.combine(Operation.AND_NOT, other);
+    }
+
+    /**
+     * Plain snapshot flavour of {@link #xor}
+     *
+     * @param other memory of the same component type
+     * @return the new memory
+     */
+    public BitwiseSegmentsMemory<E> xorSnapshot(final BitwiseSegmentsMemory<E> other) {
+        return this.combine(Operation.XOR, other);
+    }
+
+    /**
+     * @return the number of set bits over all slots,
+     * read without atomicity
+     */
+    public long popCount() {
+        long count = 0;
+        for (final Area<E> area : this.areas) {
+            count += area.popCount();
+        }
+        return count;
+    }
+
+    private void accumulate(final Operation op, final BitwiseSegmentsMemory<E> other) {
+        final Area<E>[] a = this.areas, b = other.areas;
+        for (int p = 0; p < a.length; ++p) {
+            final Area<E> area = a[p];
+            if (p < b.length) {
+                area.accumulate(op, b[p]);
+            } else if (op == Operation.AND) {
+                for (int i = 0, n = area.length(); i < n; ++i) {
+                    area.storeWord(i, 0L);
+                }
+            }
+        }
+    }
+
+    private BitwiseSegmentsMemory<E> combine(final Operation op,
+                                             final BitwiseSegmentsMemory<E> other) {
+        final Area<E>[] a = this.areas, b = other.areas;
+        final Area<E>[] result = Arrays.copyOf(a, a.length);
+        for (int p = 0; p < a.length; ++p) {
+            if (p < b.length) {
+                final Area<E> area = a[p].copy();
+                area.combine(op, b[p]);
+                result[p] = area;
+            } else {
+                result[p] = op == Operation.AND
+                        ? this.mapped.apply(a[p].length())
+                        : a[p].copy();
+            }
+        }
+        return new BitwiseSegmentsMemory<>(result, this.mapped, this.pool, true);
+    }
+
     @Override
     public String toString() {
         final StringJoiner joiner = new StringJoiner("\n");
-        for (final BitwiseModifiableMemory<E> area : this.areas) {
+        for (final Area<E> area : this.areas) {
             if (area == null) {
                 break;
             }
@@ -137,136 +534,1408 @@ public final class BitwiseSegmentsMemory<E extends Number>
         return joiner.toString();
     }
 
-    private interface Area<E extends Number>
-            extends BitwiseModifiableMemory<E> {
+    // the long view, only created for a memory of long
+    private final class Longs implements LongMemory {
+
         @Override
-        default BitwiseModifiableMemory<E> realloc(final int size) throws OutOfMemoryError {
-            throw new UnsupportedOperationException();
+        public int length() {
+            return BitwiseSegmentsMemory.this.length();
+        }
+
+        @Override
+        public long fetchLong(final int index) {
+            final Area<E> area = BitwiseSegmentsMemory.this.areas[areaForIndex(index)];
+            final int i = area.slot(BitwiseSegmentsMemory.this.indexForArea(area, index));
+            return ((LongArea) area.dense()).fetchLong(i);
+        }
+
+        @Override
+        public void storeLong(final int index, final long value) {
+            final Area<E> area = BitwiseSegmentsMemory.this.areas[areaForIndex(index)];
+            final int i = area.slot(BitwiseSegmentsMemory.this.indexForArea(area, index));
+            ((LongArea) area.dense()).storeLong(i, value);
+        }
+
+        @Override
+        public long fetchAndStoreLong(final int index, final long value) {
+            final Area<E> area = BitwiseSegmentsMemory.this.areas[areaForIndex(index)];
+            final int i = area.slot(BitwiseSegmentsMemory.this.indexForArea(area, index));
+            return ((LongArea) area.dense()).fetchAndStoreLong(i, value);
+        }
+
+        @Override
+        public long compareAndExchangeLong(final int index, final long expected, final long value) {
+            final Area<E> area = BitwiseSegmentsMemory.this.areas[areaForIndex(index)];
+            final int i = area.slot(BitwiseSegmentsMemory.this.indexForArea(area, index));
+            return ((LongArea) area.dense()).compareAndExchangeLong(i, expected, value);
+        }
+
+        @Override
+        public boolean compareAndStoreLong(final int index, final long expected, final long value) {
+            final Area<E> area = BitwiseSegmentsMemory.this.areas[areaForIndex(index)];
+            final int i = area.slot(BitwiseSegmentsMemory.this.indexForArea(area, index));
+            return ((LongArea) area.dense()).compareAndStoreLong(i, expected, value);
+        }
+
+        @Override
+        public long fetchAndAddLong(final int index, final long value) {
+            final Area<E> area = BitwiseSegmentsMemory.this.areas[areaForIndex(index)];
+            final int i = area.slot(BitwiseSegmentsMemory.this.indexForArea(area, index));
+            return ((LongArea) area.dense()).fetchAndAddLong(i, value);
+        }
+
+        @Override
+        public long fetchAndBitwiseOrLong(final int index, final long mask) {
+            final Area<E> area = BitwiseSegmentsMemory.this.areas[areaForIndex(index)];
+            final int i = area.slot(BitwiseSegmentsMemory.this.indexForArea(area, index));
+            return ((LongArea) area.dense()).fetchAndBitwiseOrLong(i, mask);
+        }
+
+        @Override
+        public long fetchAndBitwiseAndLong(final int index, final long mask) {
+            final Area<E> area = BitwiseSegmentsMemory.this.areas[areaForIndex(index)];
+            final int i = area.slot(BitwiseSegmentsMemory.this.indexForArea(area, index));
+            return ((LongArea) area.dense()).fetchAndBitwiseAndLong(i, mask);
+        }
+
+        @Override
+        public long fetchAndBitwiseXorLong(final int index, final long mask) {
+            final Area<E> area = BitwiseSegmentsMemory.this.areas[areaForIndex(index)];
+            final int i = area.slot(BitwiseSegmentsMemory.this.indexForArea(area, index));
+            return ((LongArea) area.dense()).fetchAndBitwiseXorLong(i, mask);
+        }
+
+        @Override
+        public void fetchRangeLong(final int from, final long[] dst, final int offset, final int length) {
+            Objects.checkFromIndexSize(offset, length, dst.length);
+            BitwiseSegmentsMemory.this.ranges(from, length, (area, start, done, n) ->
+                    ((LongArea) area).fetchRangeLong(start, dst, offset + done, n));
+        }
+
+        @Override
+        public void storeRangeLong(final int from, final long[] src, final int offset, final int length) {
+            Objects.checkFromIndexSize(offset, length, src.length);
+            BitwiseSegmentsMemory.this.ranges(from, length, (area, start, done, n) ->
+                    ((LongArea) area).storeRangeLong(start, src, offset + done, n));
+        }
+
+        @Override
+        public void fillLong(final int from, final int to, final long value) {
+            Objects.checkFromToIndex(from, to, BitwiseSegmentsMemory.this.length());
+            BitwiseSegmentsMemory.this.ranges(from, to - from, (area, start, done, n) ->
+                    ((LongArea) area).fillLong(start, start + n, value));
+        }
+
+        // a whole area at a time, like forEachIndexed
+        @Override
+        public void forEachLong(final int from, final int to, final LongConsumer action) {
+            Objects.requireNonNull(action);
+            Objects.checkFromToIndex(from, to, BitwiseSegmentsMemory.this.length());
+            BitwiseSegmentsMemory.this.ranges(from, to - from, (area, start, done, n) -> {
+                final LongArea slots = (LongArea) area;
+                for (int k = 0; k < n; ++k) {
+                    action.accept(slots.fetchLong(start + k));
+                }
+            });
         }
     }
 
-    private record AreaLongs(long[] array) implements Area<Long> {
-        private static final VarHandle
-                LONGS = MethodHandles.arrayElementVarHandle(long[].class);
+    // the int view, only created for a memory of int
+    private final class Ints implements IntMemory {
 
-        @Override public int length()
-        { return this.array.length; }
+        @Override
+        public int length() {
+            return BitwiseSegmentsMemory.this.length();
+        }
 
-        @Override public Long fetch(final int index)
-        { return (long) LONGS.getAcquire(this.array, index); }
+        @Override
+        public int fetchInt(final int index) {
+            final Area<E> area = BitwiseSegmentsMemory.this.areas[areaForIndex(index)];
+            final int i = area.slot(BitwiseSegmentsMemory.this.indexForArea(area, index));
+            return ((IntArea) area.dense()).fetchInt(i);
+        }
 
-        @Override public void store(final int index, final Long value)
-        { LONGS.setRelease(this.array, index, value); }
+        @Override
+        public void storeInt(final int index, final int value) {
+            final Area<E> area = BitwiseSegmentsMemory.this.areas[areaForIndex(index)];
+            final int i = area.slot(BitwiseSegmentsMemory.this.indexForArea(area, index));
+            ((IntArea) area.dense()).storeInt(i, value);
+        }
+
+        @Override
+        public int fetchAndStoreInt(final int index, final int value) {
+            final Area<E> area = BitwiseSegmentsMemory.this.areas[areaForIndex(index)];
+            final int i = area.slot(BitwiseSegmentsMemory.this.indexForArea(area, index));
+            return ((IntArea) area.dense()).fetchAndStoreInt(i, value);
+        }
 
-        @Override public Long fetchAndStore(final int index, final Long value)
-        { return (long) LONGS.getAndSet(this.array, index, value); }
+        @Override
+        public int compareAndExchangeInt(final int index, final int expected, final int value) {
+            final Area<E> area = BitwiseSegmentsMemory.this.areas[areaForIndex(index)];
+            final int i = area.slot(BitwiseSegmentsMemory.this.indexForArea(area, index));
+            return ((IntArea) area.dense()).compareAndExchangeInt(i, expected, value);
+        }
+
+        @Override
+        public boolean compareAndStoreInt(final int index, final int expected, final int value) {
+            final Area<E> area = BitwiseSegmentsMemory.this.areas[areaForIndex(index)];
+            final int i = area.slot(BitwiseSegmentsMemory.this.indexForArea(area, index));
+            return ((IntArea) area.dense()).compareAndStoreInt(i, expected, value);
+        }
+
+        @Override
+        public int fetchAndAddInt(final int index, final int value) {
+            final Area<E> area = BitwiseSegmentsMemory.this.areas[areaForIndex(index)];
+            final int i = area.slot(BitwiseSegmentsMemory.this.indexForArea(area, index));
+            return ((IntArea) area.dense()).fetchAndAddInt(i, value);
+        }
 
-        @Override public Long compareAndExchange(final int i, final Long expected, final Long value)
-        { return (long) LONGS.compareAndExchange(this.array, i, expected, value); }
+        @Override
+        public int fetchAndBitwiseOrInt(final int index, final int mask) {
+            final Area<E> area = BitwiseSegmentsMemory.this.areas[areaForIndex(index)];
+            final int i = area.slot(BitwiseSegmentsMemory.this.indexForArea(area, index));
+            return ((IntArea) area.dense()).fetchAndBitwiseOrInt(i, mask);
+        }
+
+        @Override
+        public int fetchAndBitwiseAndInt(final int index, final int mask) {
+            final Area<E> area = BitwiseSegmentsMemory.this.areas[areaForIndex(index)];
+            final int i = area.slot(BitwiseSegmentsMemory.this.indexForArea(area, index));
+            return ((IntArea) area.dense()).fetchAndBitwiseAndInt(i, mask);
+        }
+
+        @Override
+        public int fetchAndBitwiseXorInt(final int index, final int mask) {
+            final Area<E> area = BitwiseSegmentsMemory.this.areas[areaForIndex(index)];
+            final int i = area.slot(BitwiseSegmentsMemory.this.indexForArea(area, index));
+            return ((IntArea) area.dense()).fetchAndBitwiseXorInt(i, mask);
+        }
 
-        @Override public Long fetchAndAdd(final int i, final Long value)
-        { return (long) LONGS.getAndAdd(this.array, i, value); }
+        @Override
+        public void fetchRangeInt(final int from, final int[] dst, final int offset, final int length) {
+            Objects.checkFromIndexSize(offset, length, dst.length);
+            BitwiseSegmentsMemory.this.ranges(from, length, (area, start, done, n) ->
+                    ((IntArea) area).fetchRangeInt(start, dst, offset + done, n));
+        }
 
-        @Override public Long fetchAndBitwiseOr(final int index, final Long mask)
-        { return (long) LONGS.getAndBitwiseOr(this.array, index, mask); }
+        @Override
+        public void storeRangeInt(final int from, final int[] src, final int offset, final int length) {
+            Objects.checkFromIndexSize(offset, length, src.length);
+            BitwiseSegmentsMemory.this.ranges(from, length, (area, start, done, n) ->
+                    ((IntArea) area).storeRangeInt(start, src, offset + done, n));
+        }
 
-        @Override public Long fetchAndBitwiseAnd(final int index, final Long mask)
-        { return (long) LONGS.getAndBitwiseAnd(this.array, index, mask); }
+        @Override
+        public void fillInt(final int from, final int to, final int value) {
+            Objects.checkFromToIndex(from, to, BitwiseSegmentsMemory.this.length());
+            BitwiseSegmentsMemory.this.ranges(from, to - from, (area, start, done, n) ->
+                    ((IntArea) area).fillInt(start, start + n, value));
+        }
 
-        @Override public Long fetchAndBitwiseXor(final int index, final Long mask)
-        { return (long) LONGS.getAndBitwiseXor(this.array, index, mask); }
+        @Override
+        public void forEachInt(final int from, final int to, final IntConsumer action) {
+            Objects.requireNonNull(action);
+            Objects.checkFromToIndex(from, to, BitwiseSegmentsMemory.this.length());
+            BitwiseSegmentsMemory.this.ranges(from, to - from, (area, start, done, n) -> {
+                final IntArea slots = (IntArea) area;
+                for (int k = 0; k < n; ++k) {
+                    action.accept(slots.fetchInt(start + k));
+                }
+            });
+        }
     }
-    private record AreaInts(int[] array) implements Area<Integer> {
-        private static final VarHandle
-                INTEGERS = MethodHandles.arrayElementVarHandle(int[].class);
 
-        @Override public int length()
-        { return this.array.length; }
+    // the short view, only created for a memory of short
+    private final class Shorts implements ShortMemory {
 
-        @Override public Integer fetch(final int index)
-        { return (int) INTEGERS.getAcquire(this.array, index); }
+        @Override
+        public int length() {
+            return BitwiseSegmentsMemory.this.length();
+        }
 
-        @Override public void store(final int index, final Integer value)
-        { INTEGERS.setRelease(this.array, index, value); }
+        @Override
+        public short fetchShort(final int index) {
+            final Area<E> area = BitwiseSegmentsMemory.this.areas[areaForIndex(index)];
+            final int i = area.slot(BitwiseSegmentsMemory.this.indexForArea(area, index));
+            return ((ShortArea) area.dense()).fetchShort(i);
+        }
+
+        @Override
+        public void storeShort(final int index, final short value) {
+            final Area<E> area = BitwiseSegmentsMemory.this.areas[areaForIndex(index)];
+            final int i = area.slot(BitwiseSegmentsMemory.this.indexForArea(area, index));
+            ((ShortArea) area.dense()).storeShort(i, value);
+        }
+
+        @Override
+        public short fetchAndStoreShort(final int index, final short value) {
+            final Area<E> area = BitwiseSegmentsMemory.this.areas[areaForIndex(index)];
+            final int i = area.slot(BitwiseSegmentsMemory.this.indexForArea(area, index));
+            return ((ShortArea) area.dense()).fetchAndStoreShort(i, value);
+        }
+
+        @Override
+        public short compareAndExchangeShort(final int index, final short expected, final short value) {
+            final Area<E> area = BitwiseSegmentsMemory.this.areas[areaForIndex(index)];
+            final int i = area.slot(BitwiseSegmentsMemory.this.indexForArea(area, index));
+            return ((ShortArea) area.dense()).compareAndExchangeShort(i, expected, value);
+        }
+
+        @Override
+        public boolean compareAndStoreShort(final int index, final short expected, final short value) {
+            final Area<E> area = BitwiseSegmentsMemory.this.areas[areaForIndex(index)];
+            final int i = area.slot(BitwiseSegmentsMemory.this.indexForArea(area, index));
+            return ((ShortArea) area.dense()).compareAndStoreShort(i, expected, value);
+        }
+
+        @Override
+        public short fetchAndAddShort(final int index, final short value) {
+            final Area<E> area = BitwiseSegmentsMemory.this.areas[areaForIndex(index)];
+            final int i = area.slot(BitwiseSegmentsMemory.this.indexForArea(area, index));
+            return ((ShortArea) area.dense()).fetchAndAddShort(i, value);
+        }
+
+        @Override
+        public short fetchAndBitwiseOrShort(final int index, final short mask) {
+            final Area<E> area = BitwiseSegmentsMemory.this.areas[areaForIndex(index)];
+            final int i = area.slot(BitwiseSegmentsMemory.this.indexForArea(area, index));
+            return ((ShortArea) area.dense()).fetchAndBitwiseOrShort(i, mask);
+        }
 
-        @Override public Integer fetchAndStore(final int index, final Integer value)
-        { return (int) INTEGERS.getAndSet(this.array, index, value); }
+        @Override
+        public short fetchAndBitwiseAndShort(final int index, final short mask) {
+            final Area<E> area = BitwiseSegmentsMemory.this.areas[areaForIndex(index)];
+            final int i = area.slot(BitwiseSegmentsMemory.this.indexForArea(area, index));
+            return ((ShortArea) area.dense()).fetchAndBitwiseAndShort(i, mask);
+        }
 
-        @Override public Integer compareAndExchange(final int i, final Integer expected, final Integer value)
-        { return (int) INTEGERS.compareAndExchange(this.array, i, expected, value); }
+        @Override
+        public short fetchAndBitwiseXorShort(final int index, final short mask) {
+            final Area<E> area = BitwiseSegmentsMemory.this.areas[areaForIndex(index)];
+            final int i = area.slot(BitwiseSegmentsMemory.this.indexForArea(area, index));
+            return ((ShortArea) area.dense()).fetchAndBitwiseXorShort(i, mask);
+        }
 
-        @Override public Integer fetchAndAdd(final int i, final Integer value)
-        { return (int) INTEGERS.getAndAdd(this.array, i, value); }
+        @Override
+        public void fetchRangeShort(final int from, final short[] dst, final int offset, final int length) {
+            Objects.checkFromIndexSize(offset, length, dst.length);
+            BitwiseSegmentsMemory.this.ranges(from, length, (area, start, done, n) ->
+                    ((ShortArea) area).fetchRangeShort(start, dst, offset + done, n));
+        }
 
-        @Override public Integer fetchAndBitwiseOr(final int index, final Integer mask)
-        { return (int) INTEGERS.getAndBitwiseOr(this.array, index, mask); }
+        @Override
+        public void storeRangeShort(final int from, final short[] src, final int offset, final int length) {
+            Objects.checkFromIndexSize(offset, length, src.length);
+            BitwiseSegmentsMemory.this.ranges(from, length, (area, start, done, n) ->
+                    ((ShortArea) area).storeRangeShort(start, src, offset + done, n));
+        }
 
-        @Override public Integer fetchAndBitwiseAnd(final int index, final Integer mask)
-        { return (int) INTEGERS.getAndBitwiseAnd(this.array, index, mask); }
+        @Override
+        public void fillShort(final int from, final int to, final short value) {
+            Objects.checkFromToIndex(from, to, BitwiseSegmentsMemory.this.length());
+            BitwiseSegmentsMemory.this.ranges(from, to - from, (area, start, done, n) ->
+                    ((ShortArea) area).fillShort(start, start + n, value));
+        }
 
-        @Override public Integer fetchAndBitwiseXor(final int index, final Integer mask)
-        { return (int) INTEGERS.getAndBitwiseXor(this.array, index, mask); }
+        @Override
+        public void forEachShort(final int from, final int to, final IntConsumer action) {
+            Objects.requireNonNull(action);
+            Objects.checkFromToIndex(from, to, BitwiseSegmentsMemory.this.length());
+            BitwiseSegmentsMemory.this.ranges(from, to - from, (area, start, done, n) -> {
+                final ShortArea slots = (ShortArea) area;
+                for (int k = 0; k < n; ++k) {
+                    action.accept(slots.fetchShort(start + k));
+                }
+            });
+        }
     }
-    private record AreaShorts(short[] array) implements Area<Short> {
-        private static final VarHandle
-                SHORTS = MethodHandles.arrayElementVarHandle(short[].class);
 
-        @Override public int length()
-        { return this.array.length; }
+    // the byte view, only created for a memory of byte
+    private final class Bytes implements ByteMemory {
 
-        @Override public Short fetch(final int index)
-        { return (short) SHORTS.getAcquire(this.array, index); }
+        @Override
+        public int length() {
+            return BitwiseSegmentsMemory.this.length();
+        }
 
-        @Override public void store(final int index, final Short value)
-        { SHORTS.setRelease(this.array, index, value); }
+        @Override
+        public byte fetchByte(final int index) {
+            final Area<E> area = BitwiseSegmentsMemory.this.areas[areaForIndex(index)];
+            final int i = area.slot(BitwiseSegmentsMemory.this.indexForArea(area, index));
+            return ((ByteArea) area.dense()).fetchByte(i);
+        }
+
+        @Override
+        public void storeByte(final int index, final byte value) {
+            final Area<E> area = BitwiseSegmentsMemory.this.areas[areaForIndex(index)];
+            final int i = area.slot(BitwiseSegmentsMemory.this.indexForArea(area, index));
+            ((ByteArea) area.dense()).storeByte(i, value);
+        }
+
+        @Override
+        public byte fetchAndStoreByte(final int index, final byte value) {
+            final Area<E> area = BitwiseSegmentsMemory.this.areas[areaForIndex(index)];
+            final int i = area.slot(BitwiseSegmentsMemory.this.indexForArea(area, index));
+            return ((ByteArea) area.dense()).fetchAndStoreByte(i, value);
+        }
+
+        @Override
+        public byte compareAndExchangeByte(final int index, final byte expected, final byte value) {
+            final Area<E> area = BitwiseSegmentsMemory.this.areas[areaForIndex(index)];
+            final int i = area.slot(BitwiseSegmentsMemory.this.indexForArea(area, index));
+            return ((ByteArea) area.dense()).compareAndExchangeByte(i, expected, value);
+        }
+
+        @Override
+        public boolean compareAndStoreByte(final int index, final byte expected, final byte value) {
+            final Area<E> area = BitwiseSegmentsMemory.this.areas[areaForIndex(index)];
+            final int i = area.slot(BitwiseSegmentsMemory.this.indexForArea(area, index));
+            return ((ByteArea) area.dense()).compareAndStoreByte(i, expected, value);
+        }
 
-        @Override public Short fetchAndStore(final int index, final Short value)
-        { return (short) SHORTS.getAndSet(this.array, index, value); }
+        @Override
+        public byte fetchAndAddByte(final int index, final byte value) {
+            final Area<E> area = BitwiseSegmentsMemory.this.areas[areaForIndex(index)];
+            final int i = area.slot(BitwiseSegmentsMemory.this.indexForArea(area, index));
+            return ((ByteArea) area.dense()).fetchAndAddByte(i, value);
+        }
+
+        @Override
+        public byte fetchAndBitwiseOrByte(final int index, final byte mask) {
+            final Area<E> area = BitwiseSegmentsMemory.this.areas[areaForIndex(index)];
+            final int i = area.slot(BitwiseSegmentsMemory.this.indexForArea(area, index));
+            return ((ByteArea) area.dense()).fetchAndBitwiseOrByte(i, mask);
+        }
+
+        @Override
+        public byte fetchAndBitwiseAndByte(final int index, final byte mask) {
+            final Area<E> area = BitwiseSegmentsMemory.this.areas[areaForIndex(index)];
+            final int i = area.slot(BitwiseSegmentsMemory.this.indexForArea(area, index));
+            return ((ByteArea) area.dense()).fetchAndBitwiseAndByte(i, mask);
+        }
 
-        @Override public Short compareAndExchange(final int i, final Short expected, final Short value)
-        { return (short) SHORTS.compareAndExchange(this.array, i, expected, value); }
+        @Override
+        public byte fetchAndBitwiseXorByte(final int index, final byte mask) {
+            final Area<E> area = BitwiseSegmentsMemory.this.areas[areaForIndex(index)];
+            final int i = area.slot(BitwiseSegmentsMemory.this.indexForArea(area, index));
+            return ((ByteArea) area.dense()).fetchAndBitwiseXorByte(i, mask);
+        }
+
+        @Override
+        public void fetchRangeByte(final int from, final byte[] dst, final int offset, final int length) {
+            Objects.checkFromIndexSize(offset, length, dst.length);
+            BitwiseSegmentsMemory.this.ranges(from, length, (area, start, done, n) ->
+                    ((ByteArea) area).fetchRangeByte(start, dst, offset + done, n));
+        }
+
+        @Override
+        public void storeRangeByte(final int from, final byte[] src, final int offset, final int length) {
+            Objects.checkFromIndexSize(offset, length, src.length);
+            BitwiseSegmentsMemory.this.ranges(from, length, (area, start, done, n) ->
+                    ((ByteArea) area).storeRangeByte(start, src, offset + done, n));
+        }
 
-        @Override public Short fetchAndAdd(final int i, final Short value)
-        { return (short) SHORTS.getAndAdd(this.array, i, value); }
+        @Override
+        public void fillByte(final int from, final int to, final byte value) {
+            Objects.checkFromToIndex(from, to, BitwiseSegmentsMemory.this.length());
+            BitwiseSegmentsMemory.this.ranges(from, to - from, (area, start, done, n) ->
+                    ((ByteArea) area).fillByte(start, start + n, value));
+        }
 
-        @Override public Short fetchAndBitwiseOr(final int index, final Short mask)
-        { return (short) SHORTS.getAndBitwiseOr(this.array, index, mask); }
+        @Override
+        public void forEachByte(final int from, final int to, final IntConsumer action) {
+            Objects.requireNonNull(action);
+            Objects.checkFromToIndex(from, to, BitwiseSegmentsMemory.this.length());
+            BitwiseSegmentsMemory.this.ranges(from, to - from, (area, start, done, n) -> {
+                final ByteArea slots = (ByteArea) area;
+                for (int k = 0; k < n; ++k) {
+                    action.accept(slots.fetchByte(start + k));
+                }
+            });
+        }
+    }
 
-        @Override public Short fetchAndBitwiseAnd(final int index, final Short mask)
-        { return (short) SHORTS.getAndBitwiseAnd(this.array, index, mask); }
+    private enum Operation {
+        OR, AND, AND_NOT, XOR;
 
-        @Override public Short fetchAndBitwiseXor(final int index, final Short mask)
-        { return (short) SHORTS.getAndBitwiseXor(this.array, index, mask); }
+        long apply(final long a, final long b) {
+            return switch (this) {
+                case OR -> a | b;
+                case AND -> a & b;
+                case AND_NOT -> a & ~b;
+                case XOR -> a ^ b;
+            };
+        }
     }
-    private record AreaBytes(byte[] array) implements Area<Byte> {
-        private static final VarHandle
-                BYTES = MethodHandles.arrayElementVarHandle(byte[].class);
 
-        @Override public int length()
-        { return this.array.length; }
+    // a power-of-two area: a dense area or a layout over one
+    private interface Area<E extends Number> {
 
-        @Override public Byte fetch(final int index)
-        { return (byte) BYTES.getAcquire(this.array, index); }
+        int length();
 
-        @Override public void store(final int index, final Byte value)
-        { BYTES.setRelease(this.array, index, value); }
+        // the dense area holding the slots
+        Dense<E> dense();
+
+        // the slot of the dense area that holds the index
+        int slot(int index);
+
+        // plain snapshot of the slots
+        Area<E> copy();
+
+        Area<E> withMode(AccessMode mode);
 
-        @Override public Byte fetchAndStore(final int index, final Byte value)
-        { return (byte) BYTES.getAndSet(this.array, index, value); }
+        void writeTo(WritableByteChannel channel, ByteBuffer chunk) throws IOException;
 
-        @Override public Byte compareAndExchange(final int i, final Byte expected, final Byte value)
-        { return (byte) BYTES.compareAndExchange(this.array, i, expected, value); }
+        void readFrom(ReadableByteChannel channel, ByteBuffer chunk) throws IOException;
 
-        @Override public Byte fetchAndAdd(final int i, final Byte value)
-        { return (byte) BYTES.getAndAdd(this.array, i, value); }
+        // slot value zero-extended to 64 bits
+        default long word(final int index) {
+            return this.dense().word(this.slot(index));
+        }
 
-        @Override public Byte fetchAndBitwiseOr(final int index, final Byte mask)
-        { return (byte) BYTES.getAndBitwiseOr(this.array, index, mask); }
+        default void storeWord(final int index, final long word) {
+            this.dense().storeWord(this.slot(index), word);
+        }
 
-        @Override public Byte fetchAndBitwiseAnd(final int index, final Byte mask)
-        { return (byte) BYTES.getAndBitwiseAnd(this.array, index, mask); }
+        // atomically: slot = slot op mask
+        default void accumulateWord(final Operation op, final int index, final long mask) {
+            this.dense().accumulateWord(op, this.slot(index), mask);
+        }
 
-        @Override public Byte fetchAndBitwiseXor(final int index, final Byte mask)
-        { return (byte) BYTES.getAndBitwiseXor(this.array, index, mask); }
+        default void accumulate(final Operation op, final Area<E> other) {
+            for (int i = 0, n = this.length(); i < n; ++i) {
+                this.accumulateWord(op, i, other.word(i));
+            }
+        }
+
+        // plain, only for areas that are not published yet
+        default void combine(final Operation op, final Area<E> other) {
+            for (int i = 0, n = this.length(); i < n; ++i) {
+                this.storeWord(i, op.apply(this.word(i), other.word(i)));
+            }
+        }
+
+        default long popCount() {
+            long count = 0;
+            for (int i = 0, n = this.length(); i < n; ++i) {
+                count += Long.bitCount(this.word(i));
+            }
+            return count;
+        }
+    }
+
+    // an area over a primitive array, slot i is element i
+    private interface Dense<E extends Number>
+            extends Area<E>, BitwiseModifiableMemory<E> {
+        @Override
+        default BitwiseModifiableMemory<E> realloc(final int size) throws OutOfMemoryError {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        default Dense<E> dense() {
+            return this;
+        }
+
+        @Override
+        default int slot(final int index) {
+            return index;
+        }
+
+        @Override
+        long word(int index);
+
+        @Override
+        void storeWord(int index, long word);
+
+        @Override
+        void accumulateWord(Operation op, int index, long mask);
+
+        @Override
+        Dense<E> copy();
+
+        @Override
+        Dense<E> withMode(AccessMode mode);
+
+        // heap segment over the backing array, for bulk channel I/O
+        MemorySegment segment();
+
+        // the backing primitive array, for the pool
+        Object array();
+
+        int width();
+
+        @Override
+        default void writeTo(final WritableByteChannel channel,
+                             final ByteBuffer chunk) throws IOException {
+            final int width = this.width();
+            ChannelIO.write(channel, this.segment(), 0, width, width, this.length(), chunk);
+        }
+
+        @Override
+        default void readFrom(final ReadableByteChannel channel,
+                              final ByteBuffer chunk) throws IOException {
+            final int width = this.width();
+            ChannelIO.read(channel, this.segment(), 0, width, width, this.length(), chunk);
+        }
+    }
+
+    /*
+     * Padded layout over a dense area: logical slot i lives at
+     * (i + 1) << shift, the first stride shares a line with the array header.
+     * Only remaps slots, the memory accesses them through the dense area
+     */
+    private record Padded<E extends Number>(Dense<E> dense, int shift) implements Area<E> {
+
+        @Override public int length()
+        { return (this.dense.length() >> this.shift) - 1; }
+
+        @Override public int slot(final int index)
+        { return (Objects.checkIndex(index, this.length()) + 1) << this.shift; }
+
+        @Override public Padded<E> copy()
+        { return new Padded<>(this.dense.copy(), this.shift); }
+
+        @Override public Padded<E> withMode(final AccessMode mode)
+        { return new Padded<>(this.dense.withMode(mode), this.shift); }
+
+        @Override public void writeTo(final WritableByteChannel channel,
+                                      final ByteBuffer chunk) throws IOException {
+            final int width = this.dense.width();
+            final long stride = (long) width << this.shift;
+            ChannelIO.write(channel, this.dense.segment(), stride, width, stride, this.length(), chunk);
+        }
+
+        @Override public void readFrom(final ReadableByteChannel channel,
+                                       final ByteBuffer chunk) throws IOException {
+            final int width = this.dense.width();
+            final long stride = (long) width << this.shift;
+            ChannelIO.read(channel, this.dense.segment(), stride, width, stride, this.length(), chunk);
+        }
+
+        // padding slots are never written, they stay zero
+        @Override public void combine(final Operation op, final Area<E> other) {
+            if (other instanceof final Padded<E> p && p.shift == this.shift) {
+                this.dense.combine(op, p.dense);
+            } else {
+                Area.super.combine(op, other);
+            }
+        }
+
+        @Override public long popCount()
+        { return this.dense.popCount(); }
+    }
+
+    /*
+     * Areas of a component type share one interface: the default record
+     * uses acquire/release and withMode returns a record per access mode,
+     * so no access branches on the mode
+     */
+    private interface LongArea extends Dense<Long>, LongMemory {
+        VarHandle LONGS = MethodHandles.arrayElementVarHandle(long[].class);
+
+        @Override long[] array();
+
+        // an area of the same access mode over the array
+        LongArea with(long[] array);
+
+        @Override default int length()
+        { return this.array().length; }
+
+        @Override default LongArea withMode(final AccessMode mode) {
+            final long[] array = this.array();
+            return switch (mode) {
+                case PLAIN -> new PlainLongs(array);
+                case OPAQUE -> new OpaqueLongs(array);
+                case ACQUIRE_RELEASE -> new AreaLongs(array);
+                case VOLATILE -> new VolatileLongs(array);
+            };
+        }
+
+        @Override default MemorySegment segment()
+        { return MemorySegment.ofArray(this.array()); }
+
+        @Override default int width()
+        { return Long.BYTES; }
+
+        @Override default long fetchAndStoreLong(final int index, final long value)
+        { return (long) LONGS.getAndSet(this.array(), index, value); }
+
+        @Override default long compareAndExchangeLong(final int i, final long expected, final long value)
+        { return (long) LONGS.compareAndExchange(this.array(), i, expected, value); }
+
+        @Override default boolean compareAndStoreLong(final int i, final long expected, final long value)
+        { return LONGS.compareAndSet(this.array(), i, expected, value); }
+
+        @Override default long fetchAndAddLong(final int i, final long value)
+        { return (long) LONGS.getAndAdd(this.array(), i, value); }
+
+        @Override default long fetchAndBitwiseOrLong(final int index, final long mask)
+        { return (long) LONGS.getAndBitwiseOr(this.array(), index, mask); }
+
+        @Override default long fetchAndBitwiseAndLong(final int index, final long mask)
+        { return (long) LONGS.getAndBitwiseAnd(this.array(), index, mask); }
+
+        @Override default long fetchAndBitwiseXorLong(final int index, final long mask)
+        { return (long) LONGS.getAndBitwiseXor(this.array(), index, mask); }
+
+        @Override default void fetchRangeLong(final int from, final long[] dst, final int offset, final int length)
+        { System.arraycopy(this.array(), from, dst, offset, length); VarHandle.acquireFence(); }
+
+        @Override default void storeRangeLong(final int from, final long[] src, final int offset, final int length)
+        { VarHandle.releaseFence(); System.arraycopy(src, offset, this.array(), from, length); }
+
+        @Override default void fillLong(final int from, final int to, final long value)
+        { VarHandle.releaseFence(); Arrays.fill(this.array(), from, to, value); }
+
+        @Override default long word(final int index)
+        { return this.fetchLong(index); }
+
+        @Override default void storeWord(final int index, final long word)
+        { this.storeLong(index, word); }
+
+        @Override default void accumulateWord(final Operation op, final int index, final long mask) {
+            switch (op) {
+                case OR -> this.fetchAndBitwiseOrLong(index, mask);
+                case AND -> this.fetchAndBitwiseAndLong(index, mask);
+                case AND_NOT -> this.fetchAndBitwiseAndLong(index, ~mask);
+                case XOR -> this.fetchAndBitwiseXorLong(index, mask);
+            }
+        }
+
+        @Override default LongArea copy()
+        { return this.with(this.array().clone()); }
+
+        // plain counted loops over the arrays, C2 vectorizes them
+        @Override default void combine(final Operation op, final Area<Long> other) {
+            if (other instanceof final LongArea o) {
+                final long[] a = this.array(), b = o.array();
+                final int n = Math.min(a.length, b.length);
+                switch (op) {
+                    case OR -> { for (int i = 0; i < n; ++i) { a[i] |= b[i]; } }
+                    case AND -> { for (int i = 0; i < n; ++i) { a[i] &= b[i]; } }
+                    case AND_NOT -> { for (int i = 0; i < n; ++i) { a[i] &= ~b[i]; } }
+                    case XOR -> { for (int i = 0; i < n; ++i) { a[i] ^= b[i]; } }
+                }
+            } else {
+                Dense.super.combine(op, other);
+            }
+        }
+
+        @Override default long popCount() {
+            long count = 0;
+            for (final long word : this.array()) {
+                count += Long.bitCount(word);
+            }
+            return count;
+        }
+
+        @Override default Long fetch(final int index)
+        { return this.fetchLong(index); }
+
+        @Override default void store(final int index, final Long value)
+        { this.storeLong(index, value); }
+
+        @Override default Long fetchAndStore(final int index, final Long value)
+        { return this.fetchAndStoreLong(index, value); }
+
+        @Override default Long compareAndExchange(final int i, final Long expected, final Long value)
+        { return this.compareAndExchangeLong(i, expected, value); }
+
+        @Override default boolean compareAndStore(final int i, final Long expected, final Long value)
+        { return this.compareAndStoreLong(i, expected, value); }
+
+        @Override default Long fetchAndAdd(final int i, final Long value)
+        { return this.fetchAndAddLong(i, value); }
+
+        @Override default Long fetchAndBitwiseOr(final int index, final Long mask)
+        { return this.fetchAndBitwiseOrLong(index, mask); }
+
+        @Override default Long fetchAndBitwiseAnd(final int index, final Long mask)
+        { return this.fetchAndBitwiseAndLong(index, mask); }
+
+        @Override default Long fetchAndBitwiseXor(final int index, final Long mask)
+        { return this.fetchAndBitwiseXorLong(index, mask); }
+    }
+
+    // the default acquire/release area
+    private record AreaLongs(long[] array) implements LongArea {
+        @Override public AreaLongs with(final long[] array)
+        { return new AreaLongs(array); }
+
+        @Override public long fetchLong(final int index)
+        { return (long) LONGS.getAcquire(this.array, index); }
+
+        @Override public void storeLong(final int index, final long value)
+        { LONGS.setRelease(this.array, index, value); }
+    }
+
+    private record OpaqueLongs(long[] array) implements LongArea {
+        @Override public OpaqueLongs with(final long[] array)
+        { return new OpaqueLongs(array); }
+
+        @Override public long fetchLong(final int index)
+        { return (long) LONGS.getOpaque(this.array, index); }
+
+        @Override public void storeLong(final int index, final long value)
+        { LONGS.setOpaque(this.array, index, value); }
+    }
+
+    private record VolatileLongs(long[] array) implements LongArea {
+        @Override public VolatileLongs with(final long[] array)
+        { return new VolatileLongs(array); }
+
+        @Override public long fetchLong(final int index)
+        { return (long) LONGS.getVolatile(this.array, index); }
+
+        @Override public void storeLong(final int index, final long value)
+        { LONGS.setVolatile(this.array, index, value); }
+    }
+
+    // plain reads and writes, read-modify-writes are not atomic
+    private record PlainLongs(long[] array) implements LongArea {
+        @Override public PlainLongs with(final long[] array)
+        { return new PlainLongs(array); }
+
+        @Override public long fetchLong(final int index)
+        { return this.array[index]; }
+
+        @Override public void storeLong(final int index, final long value)
+        { this.array[index] = value; }
+
+        @Override public long fetchAndStoreLong(final int index, final long value) {
+            final long prev = this.array[index];
+            this.array[index] = value;
+            return prev;
+        }
+
+        @Override public long compareAndExchangeLong(final int i, final long expected, final long value) {
+            final long witness = this.array[i];
+            if (witness == expected) {
+                this.array[i] = value;
+            }
+            return witness;
+        }
+
+        @Override public boolean compareAndStoreLong(final int i, final long expected, final long value)
+        { return this.compareAndExchangeLong(i, expected, value) == expected; }
+
+        @Override public long fetchAndAddLong(final int i, final long value) {
+            final long prev = this.array[i];
+            this.array[i] = prev + value;
+            return prev;
+        }
+
+        @Override public long fetchAndBitwiseOrLong(final int index, final long mask) {
+            final long prev = this.array[index];
+            this.array[index] = prev | mask;
+            return prev;
+        }
+
+        @Override public long fetchAndBitwiseAndLong(final int index, final long mask) {
+            final long prev = this.array[index];
+            this.array[index] = prev & mask;
+            return prev;
+        }
+
+        @Override public long fetchAndBitwiseXorLong(final int index, final long mask) {
+            final long prev = this.array[index];
+            this.array[index] = prev ^ mask;
+            return prev;
+        }
+    }
+
+    private interface IntArea extends Dense<Integer>, IntMemory {
+        VarHandle INTEGERS = MethodHandles.arrayElementVarHandle(int[].class);
+
+        @Override int[] array();
+
+        // an area of the same access mode over the array
+        IntArea with(int[] array);
+
+        @Override default int length()
+        { return this.array().length; }
+
+        @Override default IntArea withMode(final AccessMode mode) {
+            final int[] array = this.array();
+            return switch (mode) {
+                case PLAIN -> new PlainInts(array);
+                case OPAQUE -> new OpaqueInts(array);
+                case ACQUIRE_RELEASE -> new AreaInts(array);
+                case VOLATILE -> new VolatileInts(array);
+            };
+        }
+
+        @Override default MemorySegment segment()
+        { return MemorySegment.ofArray(this.array()); }
+
+        @Override default int width()
+        { return Integer.BYTES; }
+
+        @Override default int fetchAndStoreInt(final int index, final int value)
+        { return (int) INTEGERS.getAndSet(this.array(), index, value); }
+
+        @Override default int compareAndExchangeInt(final int i, final int expected, final int value)
+        { return (int) INTEGERS.compareAndExchange(this.array(), i, expected, value); }
+
+        @Override default boolean compareAndStoreInt(final int i, final int expected, final int value)
+        { return INTEGERS.compareAndSet(this.array(), i, expected, value); }
+
+        @Override default int fetchAndAddInt(final int i, final int value)
+        { return (int) INTEGERS.getAndAdd(this.array(), i, value); }
+
+        @Override default int fetchAndBitwiseOrInt(final int index, final int mask)
+        { return (int) INTEGERS.getAndBitwiseOr(this.array(), index, mask); }
+
+        @Override default int fetchAndBitwiseAndInt(final int index, final int mask)
+        { return (int) INTEGERS.getAndBitwiseAnd(this.array(), index, mask); }
+
+        @Override default int fetchAndBitwiseXorInt(final int index, final int mask)
+        { return (int) INTEGERS.getAndBitwiseXor(this.array(), index, mask); }
+
+        @Override default void fetchRangeInt(final int from, final int[] dst, final int offset, final int length)
+        { System.arraycopy(this.array(), from, dst, offset, length); VarHandle.acquireFence(); }
+
+        @Override default void storeRangeInt(final int from, final int[] src, final int offset, final int length)
+        { VarHandle.releaseFence(); System.arraycopy(src, offset, this.array(), from, length); }
+
+        @Override default void fillInt(final int from, final int to, final int value)
+        { VarHandle.releaseFence(); Arrays.fill(this.array(), from, to, value); }
+
+        @Override default long word(final int index)
+        { return Integer.toUnsignedLong(this.fetchInt(index)); }
+
+        @Override default void storeWord(final int index, final long word)
+        { this.storeInt(index, (int) word); }
+
+        @Override default void accumulateWord(final Operation op, final int index, final long mask) {
+            switch (op) {
+                case OR -> this.fetchAndBitwiseOrInt(index, (int) mask);
+                case AND -> this.fetchAndBitwiseAndInt(index, (int) mask);
+                case AND_NOT -> this.fetchAndBitwiseAndInt(index, (int) ~mask);
+                case XOR -> this.fetchAndBitwiseXorInt(index, (int) mask);
+            }
+        }
+
+        @Override default IntArea copy()
+        { return this.with(this.array().clone()); }
+
+        // plain counted loops over the arrays, C2 vectorizes them
+        @Override default void combine(final Operation op, final Area<Integer> other) {
+            if (other instanceof final IntArea o) {
+                final int[] a = this.array(), b = o.array();
+                final int n = Math.min(a.length, b.length);
+                switch (op) {
+                    case OR -> { for (int i = 0; i < n; ++i) { a[i] |= b[i]; } }
+                    case AND -> { for (int i = 0; i < n; ++i) { a[i] &= b[i]; } }
+                    case AND_NOT -> { for (int i = 0; i < n; ++i) { a[i] &= ~b[i]; } }
+                    case XOR -> { for (int i = 0; i < n; ++i) { a[i] ^= b[i]; } }
+                }
+            } else {
+                Dense.super.combine(op, other);
+            }
+        }
+
+        @Override default long popCount() {
+            long count = 0;
+            for (final int word : this.array()) {
+                count += Integer.bitCount(word);
+            }
+            return count;
+        }
+
+        @Override default Integer fetch(final int index)
+        { return this.fetchInt(index); }
+
+        @Override default void store(final int index, final Integer value)
+        { this.storeInt(index, value); }
+
+        @Override default Integer fetchAndStore(final int index, final Integer value)
+        { return this.fetchAndStoreInt(index, value); }
+
+        @Override default Integer compareAndExchange(final int i, final Integer expected, final Integer value)
+        { return this.compareAndExchangeInt(i, expected, value); }
+
+        @Override default boolean compareAndStore(final int i, final Integer expected, final Integer value)
+        { return this.compareAndStoreInt(i, expected, value); }
+
+        @Override default Integer fetchAndAdd(final int i, final Integer value)
+        { return this.fetchAndAddInt(i, value); }
+
+        @Override default Integer fetchAndBitwiseOr(final int index, final Integer mask)
+        { return this.fetchAndBitwiseOrInt(index, mask); }
+
+        @Override default Integer fetchAndBitwiseAnd(final int index, final Integer mask)
+        { return this.fetchAndBitwiseAndInt(index, mask); }
+
+        @Override default Integer fetchAndBitwiseXor(final int index, final Integer mask)
+        { return this.fetchAndBitwiseXorInt(index, mask); }
+    }
+
+    // the default acquire/release area
+    private record AreaInts(int[] array) implements IntArea {
+        @Override public AreaInts with(final int[] array)
+        { return new AreaInts(array); }
+
+        @Override public int fetchInt(final int index)
+        { return (int) INTEGERS.getAcquire(this.array, index); }
+
+        @Override public void storeInt(final int index, final int value)
+        { INTEGERS.setRelease(this.array, index, value); }
+    }
+
+    private record OpaqueInts(int[] array) implements IntArea {
+        @Override public OpaqueInts with(final int[] array)
+        { return new OpaqueInts(array); }
+
+        @Override public int fetchInt(final int index)
+        { return (int) INTEGERS.getOpaque(this.array, index); }
+
+        @Override public void storeInt(final int index, final int value)
+        { INTEGERS.setOpaque(this.array, index, value); }
+    }
+
+    private record VolatileInts(int[] array) implements IntArea {
+        @Override public VolatileInts with(final int[] array)
+        { return new VolatileInts(array); }
+
+        @Override public int fetchInt(final int index)
+        { return (int) INTEGERS.getVolatile(this.array, index); }
+
+        @Override public void storeInt(final int index, final int value)
+        { INTEGERS.setVolatile(this.array, index, value); }
+    }
+
+    // plain reads and writes, read-modify-writes are not atomic
+    private record PlainInts(int[] array) implements IntArea {
+        @Override public PlainInts with(final int[] array)
+        { return new PlainInts(array); }
+
+        @Override public int fetchInt(final int index)
+        { return this.array[index]; }
+
+        @Override public void storeInt(final int index, final int value)
+        { this.array[index] = value; }
+
+        @Override public int fetchAndStoreInt(final int index, final int value) {
+            final int prev = this.array[index];
+            this.array[index] = value;
+            return prev;
+        }
+
+        @Override public int compareAndExchangeInt(final int i, final int expected, final int value) {
+            final int witness = this.array[i];
+            if (witness == expected) {
+                this.array[i] = value;
+            }
+            return witness;
+        }
+
+        @Override public boolean compareAndStoreInt(final int i, final int expected, final int value)
+        { return this.compareAndExchangeInt(i, expected, value) == expected; }
+
+        @Override public int fetchAndAddInt(final int i, final int value) {
+            final int prev = this.array[i];
+            this.array[i] = prev + value;
+            return prev;
+        }
+
+        @Override public int fetchAndBitwiseOrInt(final int index, final int mask) {
+            final int prev = this.array[index];
+            this.array[index] = prev | mask;
+            return prev;
+        }
+
+        @Override public int fetchAndBitwiseAndInt(final int index, final int mask) {
+            final int prev = this.array[index];
+            this.array[index] = prev & mask;
+            return prev;
+        }
+
+        @Override public int fetchAndBitwiseXorInt(final int index, final int mask) {
+            final int prev = this.array[index];
+            this.array[index] = prev ^ mask;
+            return prev;
+        }
+    }
+
+    private interface ShortArea extends Dense<Short>, ShortMemory {
+        VarHandle SHORTS = MethodHandles.arrayElementVarHandle(short[].class);
+
+        @Override short[] array();
+
+        // an area of the same access mode over the array
+        ShortArea with(short[] array);
+
+        @Override default int length()
+        { return this.array().length; }
+
+        @Override default ShortArea withMode(final AccessMode mode) {
+            final short[] array = this.array();
+            return switch (mode) {
+                case PLAIN -> new PlainShorts(array);
+                case OPAQUE -> new OpaqueShorts(array);
+                case ACQUIRE_RELEASE -> new AreaShorts(array);
+                case VOLATILE -> new VolatileShorts(array);
+            };
+        }
+
+        @Override default MemorySegment segment()
+        { return MemorySegment.ofArray(this.array()); }
+
+        @Override default int width()
+        { return Short.BYTES; }
+
+        @Override default short fetchAndStoreShort(final int index, final short value)
+        { return (short) SHORTS.getAndSet(this.array(), index, value); }
+
+        @Override default short compareAndExchangeShort(final int i, final short expected, final short value)
+        { return (short) SHORTS.compareAndExchange(this.array(), i, expected, value); }
+
+        @Override default boolean compareAndStoreShort(final int i, final short expected, final short value)
+        { return SHORTS.compareAndSet(this.array(), i, expected, value); }
+
+        @Override default short fetchAndAddShort(final int i, final short value)
+        { return (short) SHORTS.getAndAdd(this.array(), i, value); }
+
+        @Override default short fetchAndBitwiseOrShort(final int index, final short mask)
+        { return (short) SHORTS.getAndBitwiseOr(this.array(), index, mask); }
+
+        @Override default short fetchAndBitwiseAndShort(final int index, final short mask)
+        { return (short) SHORTS.getAndBitwiseAnd(this.array(), index, mask); }
+
+        @Override default short fetchAndBitwiseXorShort(final int index, final short mask)
+        { return (short) SHORTS.getAndBitwiseXor(this.array(), index, mask); }
+
+        @Override default void fetchRangeShort(final int from, final short[] dst, final int offset, final int length)
+        { System.arraycopy(this.array(), from, dst, offset, length); VarHandle.acquireFence(); }
+
+        @Override default void storeRangeShort(final int from, final short[] src, final int offset, final int length)
+        { VarHandle.releaseFence(); System.arraycopy(src, offset, this.array(), from, length); }
+
+        @Override default void fillShort(final int from, final int to, final short value)
+        { VarHandle.releaseFence(); Arrays.fill(this.array(), from, to, value); }
+
+        @Override default long word(final int index)
+        { return this.fetchShort(index) & 0xFFFFL; }
+
+        @Override default void storeWord(final int index, final long word)
+        { this.storeShort(index, (short) word); }
+
+        @Override default void accumulateWord(final Operation op, final int index, final long mask) {
+            switch (op) {
+                case OR -> this.fetchAndBitwiseOrShort(index, (short) mask);
+                case AND -> this.fetchAndBitwiseAndShort(index, (short) mask);
+                case AND_NOT -> this.fetchAndBitwiseAndShort(index, (short) ~mask);
+                case XOR -> this.fetchAndBitwiseXorShort(index, (short) mask);
+            }
+        }
+
+        @Override default ShortArea copy()
+        { return this.with(this.array().clone()); }
+
+        @Override default Short fetch(final int index)
+        { return this.fetchShort(index); }
+
+        @Override default void store(final int index, final Short value)
+        { this.storeShort(index, value); }
+
+        @Override default Short fetchAndStore(final int index, final Short value)
+        { return this.fetchAndStoreShort(index, value); }
+
+        @Override default Short compareAndExchange(final int i, final Short expected, final Short value)
+        { return this.compareAndExchangeShort(i, expected, value); }
+
+        @Override default boolean compareAndStore(final int i, final Short expected, final Short value)
+        { return this.compareAndStoreShort(i, expected, value); }
+
+        @Override default Short fetchAndAdd(final int i, final Short value)
+        { return this.fetchAndAddShort(i, value); }
+
+        @Override default Short fetchAndBitwiseOr(final int index, final Short mask)
+        { return this.fetchAndBitwiseOrShort(index, mask); }
+
+        @Override default Short fetchAndBitwiseAnd(final int index, final Short mask)
+        { return this.fetchAndBitwiseAndShort(index, mask); }
+
+        @Override default Short fetchAndBitwiseXor(final int index, final Short mask)
+        { return this.fetchAndBitwiseXorShort(index, mask); }
+    }
+
+    // the default acquire/release area
+    private record AreaShorts(short[] array) implements ShortArea {
+        @Override public AreaShorts with(final short[] array)
+        { return new AreaShorts(array); }
+
+        @Override public short fetchShort(final int index)
+        { return (short) SHORTS.getAcquire(this.array, index); }
+
+        @Override public void storeShort(final int index, final short value)
+        { SHORTS.setRelease(this.array, index, value); }
+    }
+
+    private record OpaqueShorts(short[] array) implements ShortArea {
+        @Override public OpaqueShorts with(final short[] array)
+        { return new OpaqueShorts(array); }
+
+        @Override public short fetchShort(final int index)
+        { return (short) SHORTS.getOpaque(this.array, index); }
+
+        @Override public void storeShort(final int index, final short value)
+        { SHORTS.setOpaque(this.array, index, value); }
+    }
+
+    private record VolatileShorts(short[] array) implements ShortArea {
+        @Override public VolatileShorts with(final short[] array)
+        { return new VolatileShorts(array); }
+
+        @Override public short fetchShort(final int index)
+        { return (short) SHORTS.getVolatile(this.array, index); }
+
+        @Override public void storeShort(final int index, final short value)
+        { SHORTS.setVolatile(this.array, index, value); }
+    }
+
+    // plain reads and writes, read-modify-writes are not atomic
+    private record PlainShorts(short[] array) implements ShortArea {
+        @Override public PlainShorts with(final short[] array)
+        { return new PlainShorts(array); }
+
+        @Override public short fetchShort(final int index)
+        { return this.array[index]; }
+
+        @Override public void storeShort(final int index, final short value)
+        { this.array[index] = value; }
+
+        @Override public short fetchAndStoreShort(final int index, final short value) {
+            final short prev = this.array[index];
+            this.array[index] = value;
+            return prev;
+        }
+
+        @Override public short compareAndExchangeShort(final int i, final short expected, final short value) {
+            final short witness = this.array[i];
+            if (witness == expected) {
+                this.array[i] = value;
+            }
+            return witness;
+        }
+
+        @Override public boolean compareAndStoreShort(final int i, final short expected, final short value)
+        { return this.compareAndExchangeShort(i, expected, value) == expected; }
+
+        @Override public short fetchAndAddShort(final int i, final short value) {
+            final short prev = this.array[i];
+            this.array[i] = (short) (prev + value);
+            return prev;
+        }
+
+        @Override public short fetchAndBitwiseOrShort(final int index, final short mask) {
+            final short prev = this.array[index];
+            this.array[index] = (short) (prev | mask);
+            return prev;
+        }
+
+        @Override public short fetchAndBitwiseAndShort(final int index, final short mask) {
+            final short prev = this.array[index];
+            this.array[index] = (short) (prev & mask);
+            return prev;
+        }
+
+        @Override public short fetchAndBitwiseXorShort(final int index, final short mask) {
+            final short prev = this.array[index];
+            this.array[index] = (short) (prev ^ mask);
+            return prev;
+        }
+    }
+
+    private interface ByteArea extends Dense<Byte>, ByteMemory {
+        VarHandle BYTES = MethodHandles.arrayElementVarHandle(byte[].class);
+
+        @Override byte[] array();
+
+        // an area of the same access mode over the array
+        ByteArea with(byte[] array);
+
+        @Override default int length()
+        { return this.array().length; }
+
+        @Override default ByteArea withMode(final AccessMode mode) {
+            final byte[] array = this.array();
+            return switch (mode) {
+                case PLAIN -> new PlainBytes(array);
+                case OPAQUE -> new OpaqueBytes(array);
+                case ACQUIRE_RELEASE -> new AreaBytes(array);
+                case VOLATILE -> new VolatileBytes(array);
+            };
+        }
+
+        @Override default MemorySegment segment()
+        { return MemorySegment.ofArray(this.array()); }
+
+        @Override default int width()
+        { return Byte.BYTES; }
+
+        @Override default byte fetchAndStoreByte(final int index, final byte value)
+        { return (byte) BYTES.getAndSet(this.array(), index, value); }
+
+        @Override default byte compareAndExchangeByte(final int i, final byte expected, final byte value)
+        { return (byte) BYTES.compareAndExchange(this.array(), i, expected, value); }
+
+        @Override default boolean compareAndStoreByte(final int i, final byte expected, final byte value)
+        { return BYTES.compareAndSet(this.array(), i, expected, value); }
+
+        @Override default byte fetchAndAddByte(final int i, final byte value)
+        { return (byte) BYTES.getAndAdd(this.array(), i, value); }
+
+        @Override default byte fetchAndBitwiseOrByte(final int index, final byte mask)
+        { return (byte) BYTES.getAndBitwiseOr(this.array(), index, mask); }
+
+        @Override default byte fetchAndBitwiseAndByte(final int index, final byte mask)
+        { return (byte) BYTES.getAndBitwiseAnd(this.array(), index, mask); }
+
+        @Override default byte fetchAndBitwiseXorByte(final int index, final byte mask)
+        { return (byte) BYTES.getAndBitwiseXor(this.array(), index, mask); }
+
+        @Override default void fetchRangeByte(final int from, final byte[] dst, final int offset, final int length)
+        { System.arraycopy(this.array(), from, dst, offset, length); VarHandle.acquireFence(); }
+
+        @Override default void storeRangeByte(final int from, final byte[] src, final int offset, final int length)
+        { VarHandle.releaseFence(); System.arraycopy(src, offset, this.array(), from, length); }
+
+        @Override default void fillByte(final int from, final int to, final byte value)
+        { VarHandle.releaseFence(); Arrays.fill(this.array(), from, to, value); }
+
+        @Override default long word(final int index)
+        { return this.fetchByte(index) & 0xFFL; }
+
+        @Override default void storeWord(final int index, final long word)
+        { this.storeByte(index, (byte) word); }
+
+        @Override default void accumulateWord(final Operation op, final int index, final long mask) {
+            switch (op) {
+                case OR -> this.fetchAndBitwiseOrByte(index, (byte) mask);
+                case AND -> this.fetchAndBitwiseAndByte(index, (byte) mask);
+                case AND_NOT -> this.fetchAndBitwiseAndByte(index, (byte) ~mask);
+                case XOR -> this.fetchAndBitwiseXorByte(index, (byte) mask);
+            }
+        }
+
+        @Override default ByteArea copy()
+        { return this.with(this.array().clone()); }
+
+        @Override default Byte fetch(final int index)
+        { return this.fetchByte(index); }
+
+        @Override default void store(final int index, final Byte value)
+        { this.storeByte(index, value); }
+
+        @Override default Byte fetchAndStore(final int index, final Byte value)
+        { return this.fetchAndStoreByte(index, value); }
+
+        @Override default Byte compareAndExchange(final int i, final Byte expected, final Byte value)
+        { return this.compareAndExchangeByte(i, expected, value); }
+
+        @Override default boolean compareAndStore(final int i, final Byte expected, final Byte value)
+        { return this.compareAndStoreByte(i, expected, value); }
+
+        @Override default Byte fetchAndAdd(final int i, final Byte value)
+        { return this.fetchAndAddByte(i, value); }
+
+        @Override default Byte fetchAndBitwiseOr(final int index, final Byte mask)
+        { return this.fetchAndBitwiseOrByte(index, mask); }
+
+        @Override default Byte fetchAndBitwiseAnd(final int index, final Byte mask)
+        { return this.fetchAndBitwiseAndByte(index, mask); }
+
+        @Override default Byte fetchAndBitwiseXor(final int index, final Byte mask)
+        { return this.fetchAndBitwiseXorByte(index, mask); }
+    }
+
+    // the default acquire/release area
+    private record AreaBytes(byte[] array) implements ByteArea {
+        @Override public AreaBytes with(final byte[] array)
+        { return new AreaBytes(array); }
+
+        @Override public byte fetchByte(final int index)
+        { return (byte) BYTES.getAcquire(this.array, index); }
+
+        @Override public void storeByte(final int index, final byte value)
+        { BYTES.setRelease(this.array, index, value); }
+    }
+
+    private record OpaqueBytes(byte[] array) implements ByteArea {
+        @Override public OpaqueBytes with(final byte[] array)
+        { return new OpaqueBytes(array); }
+
+        @Override public byte fetchByte(final int index)
+        { return (byte) BYTES.getOpaque(this.array, index); }
+
+        @Override public void storeByte(final int index, final byte value)
+        { BYTES.setOpaque(this.array, index, value); }
+    }
+
+    private record VolatileBytes(byte[] array) implements ByteArea {
+        @Override public VolatileBytes with(final byte[] array)
+        { return new VolatileBytes(array); }
+
+        @Override public byte fetchByte(final int index)
+        { return (byte) BYTES.getVolatile(this.array, index); }
+
+        @Override public void storeByte(final int index, final byte value)
+        { BYTES.setVolatile(this.array, index, value); }
+    }
+
+    // plain reads and writes, read-modify-writes are not atomic
+    private record PlainBytes(byte[] array) implements ByteArea {
+        @Override public PlainBytes with(final byte[] array)
+        { return new PlainBytes(array); }
+
+        @Override public byte fetchByte(final int index)
+        { return this.array[index]; }
+
+        @Override public void storeByte(final int index, final byte value)
+        { this.array[index] = value; }
+
+        @Override public byte fetchAndStoreByte(final int index, final byte value) {
+            final byte prev = this.array[index];
+            this.array[index] = value;
+            return prev;
+        }
+
+        @Override public byte compareAndExchangeByte(final int i, final byte expected, final byte value) {
+            final byte witness = this.array[i];
+            if (witness == expected) {
+                this.array[i] = value;
+            }
+            return witness;
+        }
+
+        @Override public boolean compareAndStoreByte(final int i, final byte expected, final byte value)
+        { return this.compareAndExchangeByte(i, expected, value) == expected; }
+
+        @Override public byte fetchAndAddByte(final int i, final byte value) {
+            final byte prev = this.array[i];
+            this.array[i] = (byte) (prev + value);
+            return prev;
+        }
+
+        @Override public byte fetchAndBitwiseOrByte(final int index, final byte mask) {
+            final byte prev = this.array[index];
+            this.array[index] = (byte) (prev | mask);
+            return prev;
+        }
+
+        @Override public byte fetchAndBitwiseAndByte(final int index, final byte mask) {
+            final byte prev = this.array[index];
+            this.array[index] = (byte) (prev & mask);
+            return prev;
+        }
+
+        @Override public byte fetchAndBitwiseXorByte(final int index, final byte mask) {
+            final byte prev = this.array[index];
+            this.array[index] = (byte) (prev ^ mask);
+            return prev;
+        }
     }
 }
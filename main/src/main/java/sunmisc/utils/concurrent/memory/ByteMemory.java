@@ -0,0 +1,121 @@
+package sunmisc.utils.concurrent.memory;
+
+import java.util.Objects;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Primitive {@code byte} access to a memory, without boxing
+ * of indexes or values
+ *
+ * @author Sunmisc Unsafe
+ * @see BitwiseModifiableMemory
+ */
+public interface ByteMemory {
+
+    int length();
+
+    byte fetchByte(int index) throws IndexOutOfBoundsException;
+
+    void storeByte(int index, byte value) throws IndexOutOfBoundsException;
+
+    byte fetchAndStoreByte(int index, byte value) throws IndexOutOfBoundsException;
+
+    byte compareAndExchangeByte(int index,
+                                byte expectedValue,
+                                byte newValue
+    ) throws IndexOutOfBoundsException;
+
+    default boolean compareAndStoreByte(final int index,
+                                        final byte expectedValue,
+                                        final byte newValue
+    ) throws IndexOutOfBoundsException {
+        return this.compareAndExchangeByte(index,
+                expectedValue,
+                newValue
+        ) == expectedValue;
+    }
+
+    byte fetchAndAddByte(int index, byte value) throws IndexOutOfBoundsException;
+
+    byte fetchAndBitwiseOrByte(int index, byte mask) throws IndexOutOfBoundsException;
+
+    byte fetchAndBitwiseAndByte(int index, byte mask) throws IndexOutOfBoundsException;
+
+    byte fetchAndBitwiseXorByte(int index, byte mask) throws IndexOutOfBoundsException;
+
+    /**
+     * Primitive counterpart of {@link ReadableMemory#fetchRange}
+     */
+    default void fetchRangeByte(final int from,
+                                final byte[] dst,
+                                final int offset,
+                                final int length
+    ) throws IndexOutOfBoundsException {
+        Objects.checkFromIndexSize(from, length, this.length());
+        Objects.checkFromIndexSize(offset, length, dst.length);
+        for (int i = 0; i < length; ++i) {
+            dst[offset + i] = this.fetchByte(from + i);
+        }
+    }
+
+    /**
+     * Primitive counterpart of {@link ModifiableMemory#storeRange}
+     */
+    default void storeRangeByte(final int from,
+                                final byte[] src,
+                                final int offset,
+                                final int length
+    ) throws IndexOutOfBoundsException {
+        Objects.checkFromIndexSize(from, length, this.length());
+        Objects.checkFromIndexSize(offset, length, src.length);
+        for (int i = 0; i < length; ++i) {
+            this.storeByte(from + i, src[offset + i]);
+        }
+    }
+
+    /**
+     * Primitive counterpart of {@link ModifiableMemory#fill}
+     */
+    default void fillByte(final int from,
+                          final int to,
+                          final byte value
+    ) throws IndexOutOfBoundsException {
+        Objects.checkFromToIndex(from, to, this.length());
+        for (int i = from; i < to; ++i) {
+            this.storeByte(i, value);
+        }
+    }
+
+    /**
+     * Primitive counterpart of {@link ReadableMemory#forEachIndexed},
+     * passes the values of the slots {@code [from, to)} in index order, widened to {@code int}
+     *
+     * @param from index of the first slot, inclusive
+     * @param to index of the last slot, exclusive
+     * @param action the action
+     * @throws IndexOutOfBoundsException if the range is out of bounds
+     */
+    default void forEachByte(final int from,
+                             final int to,
+                             final IntConsumer action
+    ) throws IndexOutOfBoundsException {
+        Objects.requireNonNull(action);
+        Objects.checkFromToIndex(from, to, this.length());
+        for (int i = from; i < to; ++i) {
+            action.accept(this.fetchByte(i));
+        }
+    }
+
+    /**
+     * Primitive counterpart of {@link ReadableMemory#stream()}, widened to {@code int},
+     * splits the same way, {@code parallel()} makes it parallel
+     *
+     * @return sequential stream over the current length of the memory
+     */
+    default IntStream intStream() {
+        return StreamSupport.intStream(new MemorySpliterator.Ints(
+                this::fetchByte, this::forEachByte, 0, this.length()), false);
+    }
+}
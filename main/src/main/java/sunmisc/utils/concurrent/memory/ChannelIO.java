@@ -0,0 +1,152 @@
+package sunmisc.utils.concurrent.memory;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/*
+ * Bulk channel I/O of memory slots in native byte order.
+ * Native segments and byte arrays are viewed as byte buffers
+ * and go to the channel without a copy, other heap arrays can not be
+ * viewed so, they are copied through one direct chunk (MemorySegment.copy),
+ * so a checkpoint costs a single chunk of extra memory
+ * and no per-element encoding. Strided (padded) slots are gathered
+ * into the chunk by a typed load-store loop, not a copy per slot
+ */
+final class ChannelIO {
+    // bytes per chunk
+    private static final int CHUNK = 1 << 16;
+
+    private ChannelIO() { }
+
+    static ByteBuffer chunk() {
+        return ByteBuffer.allocateDirect(CHUNK);
+    }
+
+    // writes count slots of width bytes, the i-th one at offset + i * stride
+    static void write(final WritableByteChannel channel,
+                      final MemorySegment src,
+                      final long offset,
+                      final int width,
+                      final long stride,
+                      final long count,
+                      final ByteBuffer chunk) throws IOException {
+        if (stride == width && viewable(src, width)) {
+            writeFully(channel, src.asSlice(offset, count * width).asByteBuffer());
+            return;
+        }
+        final MemorySegment dst = MemorySegment.ofBuffer(chunk.clear());
+        final long perChunk = chunk.capacity() / width;
+        for (long done = 0; done < count; ) {
+            final long n = Math.min(perChunk, count - done);
+            if (stride == width) {
+                MemorySegment.copy(src, offset + done * width, dst, 0, n * width);
+            } else {
+                strided(src, offset + done * stride, stride, dst, 0, width, width, n);
+            }
+            chunk.clear().limit((int) (n * width));
+            writeFully(channel, chunk);
+            done += n;
+        }
+    }
+
+    // reads count slots of width bytes, the i-th one to offset + i * stride
+    static void read(final ReadableByteChannel channel,
+                     final MemorySegment dst,
+                     final long offset,
+                     final int width,
+                     final long stride,
+                     final long count,
+                     final ByteBuffer chunk) throws IOException {
+        if (stride == width && viewable(dst, width)) {
+            readFully(channel, dst.asSlice(offset, count * width).asByteBuffer());
+            return;
+        }
+        final MemorySegment src = MemorySegment.ofBuffer(chunk.clear());
+        final long perChunk = chunk.capacity() / width;
+        for (long done = 0; done < count; ) {
+            final long n = Math.min(perChunk, count - done);
+            chunk.clear().limit((int) (n * width));
+            readFully(channel, chunk);
+            if (stride == width) {
+                MemorySegment.copy(src, 0, dst, offset + done * width, n * width);
+            } else {
+                strided(src, 0, width, dst, offset + done * stride, stride, width, n);
+            }
+            done += n;
+        }
+    }
+
+    // only native and byte[] segments have a byte buffer view
+    private static boolean viewable(final MemorySegment segment, final int width) {
+        return segment.isNative() || width == Byte.BYTES;
+    }
+
+    // copies n slots of width bytes, one load and one store per slot
+    private static void strided(final MemorySegment src,
+                                final long srcOffset,
+                                final long srcStride,
+                                final MemorySegment dst,
+                                final long dstOffset,
+                                final long dstStride,
+                                final int width,
+                                final long n) {
+        switch (width) {
+            case Long.BYTES -> {
+                for (long k = 0; k < n; ++k) {
+                    dst.set(ValueLayout.JAVA_LONG_UNALIGNED, dstOffset + k * dstStride,
+                            src.get(ValueLayout.JAVA_LONG_UNALIGNED, srcOffset + k * srcStride));
+                }
+            }
+            case Integer.BYTES -> {
+                for (long k = 0; k < n; ++k) {
+                    dst.set(ValueLayout.JAVA_INT_UNALIGNED, dstOffset + k * dstStride,
+                            src.get(ValueLayout.JAVA_INT_UNALIGNED, srcOffset + k * srcStride));
+                }
+            }
+            case Short.BYTES -> {
+                for (long k = 0; k < n; ++k) {
+                    dst.set(ValueLayout.JAVA_SHORT_UNALIGNED, dstOffset + k * dstStride,
+                            src.get(ValueLayout.JAVA_SHORT_UNALIGNED, srcOffset + k * srcStride));
+                }
+            }
+            default -> {
+                for (long k = 0; k < n; ++k) {
+                    dst.set(ValueLayout.JAVA_BYTE, dstOffset + k * dstStride,
+                            src.get(ValueLayout.JAVA_BYTE, srcOffset + k * srcStride));
+                }
+            }
+        }
+    }
+
+    // gathering write when the channel supports it
+    static void writeFully(final WritableByteChannel channel,
+                           final ByteBuffer... buffers) throws IOException {
+        if (buffers.length > 1 && channel instanceof final GatheringByteChannel gathering) {
+            final ByteBuffer last = buffers[buffers.length - 1];
+            while (last.hasRemaining()) {
+                gathering.write(buffers);
+            }
+        } else {
+            for (final ByteBuffer buffer : buffers) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+        }
+    }
+
+    static void readFully(final ReadableByteChannel channel,
+                          final ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException();
+            }
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package sunmisc.utils.concurrent.memory;
+
+import java.util.Objects;
+import java.util.function.DoubleConsumer;
+import java.util.stream.DoubleStream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Primitive {@code double} access to a memory, without boxing
+ * of indexes or values
+ * <p>Compare-and-exchange compares the raw bits of the values,
+ * so {@code NaN} matches itself and {@code -0.0} does not match {@code 0.0}
+ *
+ * @author Sunmisc Unsafe
+ * @see NumericModifiableMemory
+ */
+public interface DoubleMemory {
+
+    int length();
+
+    double fetchDouble(int index) throws IndexOutOfBoundsException;
+
+    void storeDouble(int index, double value) throws IndexOutOfBoundsException;
+
+    double fetchAndStoreDouble(int index, double value) throws IndexOutOfBoundsException;
+
+    double compareAndExchangeDouble(int index,
+                                    double expectedValue,
+                                    double newValue
+    ) throws IndexOutOfBoundsException;
+
+    boolean compareAndStoreDouble(int index,
+                                  double expectedValue,
+                                  double newValue
+    ) throws IndexOutOfBoundsException;
+
+    double fetchAndAddDouble(int index, double value) throws IndexOutOfBoundsException;
+
+    double fetchAndMaxDouble(int index, double value) throws IndexOutOfBoundsException;
+
+    double fetchAndMinDouble(int index, double value) throws IndexOutOfBoundsException;
+
+    /**
+     * Primitive counterpart of {@link ReadableMemory#fetchRange}
+     */
+    default void fetchRangeDouble(final int from,
+                                  final double[] dst,
+                                  final int offset,
+                                  final int length
+    ) throws IndexOutOfBoundsException {
+        Objects.checkFromIndexSize(from, length, this.length());
+        Objects.checkFromIndexSize(offset, length, dst.length);
+        for (int i = 0; i < length; ++i) {
+            dst[offset + i] = this.fetchDouble(from + i);
+        }
+    }
+
+    /**
+     * Primitive counterpart of {@link ModifiableMemory#storeRange}
+     */
+    default void storeRangeDouble(final int from,
+                                  final double[] src,
+                                  final int offset,
+                                  final int length
+    ) throws IndexOutOfBoundsException {
+        Objects.checkFromIndexSize(from, length, this.length());
+        Objects.checkFromIndexSize(offset, length, src.length);
+        for (int i = 0; i < length; ++i) {
+            this.storeDouble(from + i, src[offset + i]);
+        }
+    }
+
+    /**
+     * Primitive counterpart of {@link ModifiableMemory#fill}
+     */
+    default void fillDouble(final int from,
+                            final int to,
+                            final double value
+    ) throws IndexOutOfBoundsException {
+        Objects.checkFromToIndex(from, to, this.length());
+        for (int i = from; i < to; ++i) {
+            this.storeDouble(i, value);
+        }
+    }
+
+    /**
+     * Primitive counterpart of {@link ReadableMemory#forEachIndexed},
+     * passes the values of the slots {@code [from, to)} in index order
+     *
+     * @param from index of the first slot, inclusive
+     * @param to index of the last slot, exclusive
+     * @param action the action
+     * @throws IndexOutOfBoundsException if the range is out of bounds
+     */
+    default void forEachDouble(final int from,
+                               final int to,
+                               final DoubleConsumer action
+    ) throws IndexOutOfBoundsException {
+        Objects.requireNonNull(action);
+        Objects.checkFromToIndex(from, to, this.length());
+        for (int i = from; i < to; ++i) {
+            action.accept(this.fetchDouble(i));
+        }
+    }
+
+    /**
+     * Primitive counterpart of {@link ReadableMemory#stream()},
+     * splits the same way, {@code parallel()} makes it parallel
+     *
+     * @return sequential stream over the current length of the memory
+     */
+    default DoubleStream doubleStream() {
+        return StreamSupport.doubleStream(new MemorySpliterator.Doubles(
+                this::fetchDouble, this::forEachDouble, 0, this.length()), false);
+    }
+}
@@ -0,0 +1,116 @@
+package sunmisc.utils.concurrent.memory;
+
+import java.util.Objects;
+import java.util.function.DoubleConsumer;
+import java.util.stream.DoubleStream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Primitive {@code float} access to a memory, without boxing
+ * of indexes or values
+ * <p>Compare-and-exchange compares the raw bits of the values,
+ * so {@code NaN} matches itself and {@code -0.0} does not match {@code 0.0}
+ *
+ * @author Sunmisc Unsafe
+ * @see NumericModifiableMemory
+ */
+public interface FloatMemory {
+
+    int length();
+
+    float fetchFloat(int index) throws IndexOutOfBoundsException;
+
+    void storeFloat(int index, float value) throws IndexOutOfBoundsException;
+
+    float fetchAndStoreFloat(int index, float value) throws IndexOutOfBoundsException;
+
+    float compareAndExchangeFloat(int index,
+                                  float expectedValue,
+                                  float newValue
+    ) throws IndexOutOfBoundsException;
+
+    boolean compareAndStoreFloat(int index,
+                                 float expectedValue,
+                                 float newValue
+    ) throws IndexOutOfBoundsException;
+
+    float fetchAndAddFloat(int index, float value) throws IndexOutOfBoundsException;
+
+    float fetchAndMaxFloat(int index, float value) throws IndexOutOfBoundsException;
+
+    float fetchAndMinFloat(int index, float value) throws IndexOutOfBoundsException;
+
+    /**
+     * Primitive counterpart of {@link ReadableMemory#fetchRange}
+     */
+    default void fetchRangeFloat(final int from,
+                                 final float[] dst,
+                                 final int offset,
+                                 final int length
+    ) throws IndexOutOfBoundsException {
+        Objects.checkFromIndexSize(from, length, this.length());
+        Objects.checkFromIndexSize(offset, length, dst.length);
+        for (int i = 0; i < length; ++i) {
+            dst[offset + i] = this.fetchFloat(from + i);
+        }
+    }
+
+    /**
+     * Primitive counterpart of {@link ModifiableMemory#storeRange}
+     */
+    default void storeRangeFloat(final int from,
+                                 final float[] src,
+                                 final int offset,
+                                 final int length
+    ) throws IndexOutOfBoundsException {
+        Objects.checkFromIndexSize(from, length, this.length());
+        Objects.checkFromIndexSize(offset, length, src.length);
+        for (int i = 0; i < length; ++i) {
+            this.storeFloat(from + i, src[offset + i]);
+        }
+    }
+
+    /**
+     * Primitive counterpart of {@link ModifiableMemory#fill}
+     */
+    default void fillFloat(final int from,
+                           final int to,
+                           final float value
+    ) throws IndexOutOfBoundsException {
+        Objects.checkFromToIndex(from, to, this.length());
+        for (int i = from; i < to; ++i) {
+            this.storeFloat(i, value);
+        }
+    }
+
+    /**
+     * Primitive counterpart of {@link ReadableMemory#forEachIndexed},
+     * passes the values of the slots {@code [from, to)} in index order, widened to {@code double}
+     *
+     * @param from index of the first slot, inclusive
+     * @param to index of the last slot, exclusive
+     * @param action the action
+     * @throws IndexOutOfBoundsException if the range is out of bounds
+     */
+    default void forEachFloat(final int from,
+                              final int to,
+                              final DoubleConsumer action
+    ) throws IndexOutOfBoundsException {
+        Objects.requireNonNull(action);
+        Objects.checkFromToIndex(from, to, this.length());
+        for (int i = from; i < to; ++i) {
+            action.accept(this.fetchFloat(i));
+        }
+    }
+
+    /**
+     * Primitive counterpart of {@link ReadableMemory#stream()}, widened to {@code double},
+     * splits the same way, {@code parallel()} makes it parallel
+     *
+     * @return sequential stream over the current length of the memory
+     */
+    default DoubleStream doubleStream() {
+        return StreamSupport.doubleStream(new MemorySpliterator.Doubles(
+                this::fetchFloat, this::forEachFloat, 0, this.length()), false);
+    }
+}
@@ -0,0 +1,254 @@
+package sunmisc.utils.concurrent.memory;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.StringJoiner;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A memory that grows by itself: {@code store}, {@code fetchAndStore}
+ * and {@code compareAndExchange} beyond the current length enlarge it,
+ * {@link #realloc(int)} grows in place and returns this memory
+ * <p>Growth never loses writes: slots are migrated cooperatively,
+ * every thread that meets a migration helps to finish it.
+ * Reads are non-blocking, {@link #fetch(int)} beyond the
+ * current length returns {@code null}
+ * <p>Replaces the racing
+ * {@code AtomicReference<ModifiableMemory>} + {@code realloc} pattern,
+ * where writes landing during the copy are lost
+ *
+ * @author Sunmisc Unsafe
+ * @param <E> the type of elements
+ */
+@SuppressWarnings("unchecked")
+public final class GrowableMemory<E> implements ModifiableMemory<E> {
+    /*
+     * Overview:
+     *
+     * Tables form a chain, the root is the oldest table
+     * that is not fully migrated yet (or the latest one).
+     * A new table is installed only as the next of a fully migrated root,
+     * so at most one migration is in progress at a time
+     *
+     * Migration of a slot (Cliff Click's scheme):
+     * 1) freeze: CAS the value v into Frozen(v), writers can not
+     *    change a frozen slot, they help to migrate it instead
+     * 2) copy: CAS the slot of the next table from PENDING to v,
+     *    the next table is prefilled with PENDING, no one stores it,
+     *    so a late helper can not resurrect a stale value
+     * 3) forward: CAS Frozen(v) into MOVED, readers and writers
+     *    that see MOVED continue in the next table
+     *
+     * Helpers claim strides of slots, a thread that ends up with
+     * no stride left rechecks all the slots unless the moved counter says
+     * the migration is complete (the claimers may be stalled),
+     * then advances the root
+     */
+
+    /**
+     * Number of CPUS, to place bounds on some sizing's
+     */
+    private static final int NCPU = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * The minimum number of slots per transfer step
+     */
+    private static final int MIN_TRANSFER_STRIDE = 64;
+
+    private static final Object MOVED = new Object();
+    private static final Object PENDING = new Object();
+
+    private final AtomicReference<Table> table;
+
+    public GrowableMemory(final int size) {
+        this.table = new AtomicReference<>(new Table(size, 0));
+    }
+
+    @Override
+    public int length() {
+        Table t = this.table.get();
+        for (Table next; (next = t.next.get()) != null; t = next);
+        return t.array.length;
+    }
+
+    @Override
+    public E fetch(final int index) {
+        Objects.checkIndex(index, Integer.MAX_VALUE);
+        for (Table t = this.table.get();;) {
+            final Object[] array = t.array;
+            if (index >= array.length) {
+                final Table next = t.next.get();
+                if (next == null) {
+                    return null;
+                }
+                t = next;
+                continue;
+            }
+            final Object o = AA.getAcquire(array, index);
+            if (o == MOVED) {
+                t = t.next.get();
+            } else if (o instanceof final Frozen f) {
+                return (E) f.value;
+            } else {
+                return (E) o;
+            }
+        }
+    }
+
+    @Override
+    public void store(final int index, final E value) {
+        this.update(index, null, value, false);
+    }
+
+    @Override
+    public E fetchAndStore(final int index, final E value) {
+        return (E) this.update(index, null, value, false);
+    }
+
+    @Override
+    public E compareAndExchange(final int index,
+                                final E expectedValue,
+                                final E newValue) {
+        return (E) this.update(index, expectedValue, newValue, true);
+    }
+
+    /**
+     * Grows the memory in place up to {@code size} slots,
+     * a smaller size is ignored
+     *
+     * @return this memory
+     */
+    @Override
+    public GrowableMemory<E> realloc(final int size) {
+        for (Table t = this.table.get(); t.array.length < size;) {
+            t = this.grow(t, size);
+        }
+        return this;
+    }
+
+    private Object update(final int index,
+                          final Object expected,
+                          final Object value,
+                          final boolean exact) {
+        Objects.checkIndex(index, Integer.MAX_VALUE);
+        for (Table t = this.table.get();;) {
+            final Object[] array = t.array;
+            if (index >= array.length) {
+                t = this.grow(t, index + 1);
+                continue;
+            }
+            final Object o = AA.getAcquire(array, index);
+            if (o == MOVED) {
+                t = t.next.get();
+            } else if (o instanceof Frozen) {
+                final Table next = t.next.get();
+                if (migrate(t, next, index)) {
+                    t.moved.incrementAndGet();
+                }
+                t = next;
+            } else if (exact && o != expected) {
+                return o;
+            } else if (AA.compareAndSet(array, index, o, value)) {
+                return o;
+            }
+        }
+    }
+
+    private Table grow(final Table t, final int size) {
+        final Table next = t.next.get();
+        if (next != null) {
+            this.transfer(t, next);
+            return next;
+        }
+        // t is the latest table, finish the migrations before it
+        for (Table root; (root = this.table.get()) != t;) {
+            this.transfer(root, root.next.get());
+        }
+        final int n = t.array.length;
+        final int length = Math.max(size,
+                n <= Integer.MAX_VALUE >> 1 ? n << 1 : Integer.MAX_VALUE);
+        final Table created = new Table(length, n);
+        final Table witness = t.next.compareAndExchange(null, created);
+        final Table target = witness == null ? created : witness;
+        this.transfer(t, target);
+        return target;
+    }
+
+    private void transfer(final Table from, final Table to) {
+        final Object[] array = from.array;
+        final int n = array.length;
+        final int stride = Math.max(MIN_TRANSFER_STRIDE, (n >>> 3) / NCPU);
+        for (int start; (start = from.claimed.get()) < n;) {
+            final int end = n - start > stride ? start + stride : n;
+            if (from.claimed.compareAndSet(start, end)) {
+                from.moved.addAndGet(migrate(from, to, start, end));
+            }
+        }
+        if (from.moved.get() < n) {
+            from.moved.addAndGet(migrate(from, to, 0, n));
+        }
+        this.table.compareAndSet(from, to);
+    }
+
+    private static int migrate(final Table from, final Table to,
+                               final int start, final int end) {
+        int committed = 0;
+        for (int i = start; i < end; ++i) {
+            if (migrate(from, to, i)) {
+                committed++;
+            }
+        }
+        return committed;
+    }
+
+    // returns true if this thread has forwarded the slot
+    private static boolean migrate(final Table from, final Table to, final int index) {
+        final Object[] array = from.array;
+        for (;;) {
+            final Object o = AA.getAcquire(array, index);
+            if (o == MOVED) {
+                return false;
+            }
+            final Frozen frozen;
+            if (o instanceof final Frozen f) {
+                frozen = f;
+            } else if (!AA.compareAndSet(array, index, o, frozen = new Frozen(o))) {
+                continue;
+            }
+            AA.compareAndSet(to.array, index, PENDING, frozen.value);
+            if (AA.compareAndSet(array, index, frozen, MOVED)) {
+                return true;
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        final StringJoiner joiner = new StringJoiner(
+                ", ", "[", "]");
+        this.forEach(x -> joiner.add(Objects.toString(x)));
+        return joiner.toString();
+    }
+
+    private record Frozen(Object value) { }
+
+    private static final class Table {
+        final Object[] array;
+        final AtomicReference<Table> next = new AtomicReference<>();
+        final AtomicInteger claimed = new AtomicInteger();
+        final AtomicInteger moved = new AtomicInteger();
+
+        Table(final int length, final int pending) {
+            final Object[] array = new Object[length];
+            Arrays.fill(array, 0, pending, PENDING);
+            this.array = array;
+        }
+    }
+
+    // VarHandle mechanics
+    private static final VarHandle AA
+            = MethodHandles.arrayElementVarHandle(Object[].class);
+}
@@ -0,0 +1,121 @@
+package sunmisc.utils.concurrent.memory;
+
+import java.util.Objects;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Primitive {@code int} access to a memory, without boxing
+ * of indexes or values
+ *
+ * @author Sunmisc Unsafe
+ * @see BitwiseModifiableMemory
+ */
+public interface IntMemory {
+
+    int length();
+
+    int fetchInt(int index) throws IndexOutOfBoundsException;
+
+    void storeInt(int index, int value) throws IndexOutOfBoundsException;
+
+    int fetchAndStoreInt(int index, int value) throws IndexOutOfBoundsException;
+
+    int compareAndExchangeInt(int index,
+                              int expectedValue,
+                              int newValue
+    ) throws IndexOutOfBoundsException;
+
+    default boolean compareAndStoreInt(final int index,
+                                       final int expectedValue,
+                                       final int newValue
+    ) throws IndexOutOfBoundsException {
+        return this.compareAndExchangeInt(index,
+                expectedValue,
+                newValue
+        ) == expectedValue;
+    }
+
+    int fetchAndAddInt(int index, int value) throws IndexOutOfBoundsException;
+
+    int fetchAndBitwiseOrInt(int index, int mask) throws IndexOutOfBoundsException;
+
+    int fetchAndBitwiseAndInt(int index, int mask) throws IndexOutOfBoundsException;
+
+    int fetchAndBitwiseXorInt(int index, int mask) throws IndexOutOfBoundsException;
+
+    /**
+     * Primitive counterpart of {@link ReadableMemory#fetchRange}
+     */
+    default void fetchRangeInt(final int from,
+                               final int[] dst,
+                               final int offset,
+                               final int length
+    ) throws IndexOutOfBoundsException {
+        Objects.checkFromIndexSize(from, length, this.length());
+        Objects.checkFromIndexSize(offset, length, dst.length);
+        for (int i = 0; i < length; ++i) {
+            dst[offset + i] = this.fetchInt(from + i);
+        }
+    }
+
+    /**
+     * Primitive counterpart of {@link ModifiableMemory#storeRange}
+     */
+    default void storeRangeInt(final int from,
+                               final int[] src,
+                               final int offset,
+                               final int length
+    ) throws IndexOutOfBoundsException {
+        Objects.checkFromIndexSize(from, length, this.length());
+        Objects.checkFromIndexSize(offset, length, src.length);
+        for (int i = 0; i < length; ++i) {
+            this.storeInt(from + i, src[offset + i]);
+        }
+    }
+
+    /**
+     * Primitive counterpart of {@link ModifiableMemory#fill}
+     */
+    default void fillInt(final int from,
+                         final int to,
+                         final int value
+    ) throws IndexOutOfBoundsException {
+        Objects.checkFromToIndex(from, to, this.length());
+        for (int i = from; i < to; ++i) {
+            this.storeInt(i, value);
+        }
+    }
+
+    /**
+     * Primitive counterpart of {@link ReadableMemory#forEachIndexed},
+     * passes the values of the slots {@code [from, to)} in index order
+     *
+     * @param from index of the first slot, inclusive
+     * @param to index of the last slot, exclusive
+     * @param action the action
+     * @throws IndexOutOfBoundsException if the range is out of bounds
+     */
+    default void forEachInt(final int from,
+                            final int to,
+                            final IntConsumer action
+    ) throws IndexOutOfBoundsException {
+        Objects.requireNonNull(action);
+        Objects.checkFromToIndex(from, to, this.length());
+        for (int i = from; i < to; ++i) {
+            action.accept(this.fetchInt(i));
+        }
+    }
+
+    /**
+     * Primitive counterpart of {@link ReadableMemory#stream()},
+     * splits the same way, {@code parallel()} makes it parallel
+     *
+     * @return sequential stream over the current length of the memory
+     */
+    default IntStream intStream() {
+        return StreamSupport.intStream(new MemorySpliterator.Ints(
+                this::fetchInt, this::forEachInt, 0, this.length()), false);
+    }
+}
@@ -0,0 +1,150 @@
+package sunmisc.utils.concurrent.memory;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.StringJoiner;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A memory that is materialized on the first store or successful
+ * compare-and-exchange of a non-null value, until then it reads as nulls
+ * and costs nothing but its length.
+ * Concurrent first writers race with a CAS, only one allocation wins
+ * <p>Intended as a segment allocator for sparse {@link SegmentsMemory}:
+ * <pre>{@code
+ * new SegmentsMemory<>(1 << 28, LazyMemory::new)
+ * }</pre>
+ *
+ * @author Sunmisc Unsafe
+ * @param <E> the type of elements
+ */
+public final class LazyMemory<E> implements ModifiableMemory<E> {
+    private final AtomicReference<ModifiableMemory<E>> origin;
+    private final int length;
+
+    public LazyMemory(final int length) {
+        this(length, null);
+    }
+
+    private LazyMemory(final int length, final ModifiableMemory<E> origin) {
+        this.origin = new AtomicReference<>(origin);
+        this.length = length;
+    }
+
+    private ModifiableMemory<E> materialize() {
+        final ModifiableMemory<E> mem = this.origin.get();
+        if (mem != null) {
+            return mem;
+        }
+        final ModifiableMemory<E> alloc = new ArrayMemory<>(this.length);
+        final ModifiableMemory<E> witness = this.origin.compareAndExchange(null, alloc);
+        return witness == null ? alloc : witness;
+    }
+
+    @Override
+    public int length() {
+        return this.length;
+    }
+
+    @Override
+    public E fetch(final int index) {
+        final ModifiableMemory<E> mem = this.origin.get();
+        if (mem == null) {
+            Objects.checkIndex(index, this.length);
+            return null;
+        }
+        return mem.fetch(index);
+    }
+
+    @Override
+    public void store(final int index, final E value) {
+        final ModifiableMemory<E> mem = this.origin.get();
+        if (mem != null) {
+            mem.store(index, value);
+        } else if (value != null) {
+            Objects.checkIndex(index, this.length);
+            this.materialize().store(index, value);
+        } else {
+            Objects.checkIndex(index, this.length);
+        }
+    }
+
+    @Override
+    public E fetchAndStore(final int index, final E value) {
+        final ModifiableMemory<E> mem = this.origin.get();
+        if (mem != null) {
+            return mem.fetchAndStore(index, value);
+        }
+        Objects.checkIndex(index, this.length);
+        return value == null ? null : this.materialize().fetchAndStore(index, value);
+    }
+
+    @Override
+    public E compareAndExchange(final int index,
+                                final E expectedValue,
+                                final E newValue) {
+        final ModifiableMemory<E> mem = this.origin.get();
+        if (mem != null) {
+            return mem.compareAndExchange(index, expectedValue, newValue);
+        }
+        Objects.checkIndex(index, this.length);
+        // a missing memory holds only nulls
+        return expectedValue != null || newValue == null
+                ? null
+                : this.materialize().compareAndExchange(index, null, newValue);
+    }
+
+    @Override
+    public void fetchRange(final int from,
+                           final E[] dst,
+                           final int offset,
+                           final int length) {
+        final ModifiableMemory<E> mem = this.origin.get();
+        if (mem != null) {
+            mem.fetchRange(from, dst, offset, length);
+        } else {
+            Objects.checkFromIndexSize(from, length, this.length);
+            Arrays.fill(dst, offset, offset + length, null);
+        }
+    }
+
+    @Override
+    public void storeRange(final int from,
+                           final E[] src,
+                           final int offset,
+                           final int length) {
+        Objects.checkFromIndexSize(from, length, this.length);
+        this.materialize().storeRange(from, src, offset, length);
+    }
+
+    @Override
+    public void fill(final int from, final int to, final E value) {
+        final ModifiableMemory<E> mem = this.origin.get();
+        Objects.checkFromToIndex(from, to, this.length);
+        if (mem != null) {
+            mem.fill(from, to, value);
+        } else if (value != null) {
+            this.materialize().fill(from, to, value);
+        }
+    }
+
+    @Override
+    public LazyMemory<E> realloc(final int size) throws OutOfMemoryError {
+        final ModifiableMemory<E> mem = this.origin.get();
+        return new LazyMemory<>(size, mem == null ? null : mem.realloc(size));
+    }
+
+    @Override
+    public String toString() {
+        final ModifiableMemory<E> mem = this.origin.get();
+        if (mem != null) {
+            return mem.toString();
+        }
+        final StringJoiner joiner = new StringJoiner(
+                ", ", "[", "]");
+        for (int i = 0; i < this.length; ++i) {
+            joiner.add("null");
+        }
+        return joiner.toString();
+    }
+}
@@ -0,0 +1,46 @@
+package sunmisc.utils.concurrent.memory;
+
+import java.util.Objects;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * Counterpart of {@link ModifiableMemory} indexed by {@code long},
+ * for memories of more than {@code 2^31} slots
+ *
+ * @author Sunmisc Unsafe
+ * @param <E> the type of elements
+ */
+public interface LongIndexedMemory<E> {
+
+    long length();
+
+    E fetch(long index) throws IndexOutOfBoundsException;
+
+    void store(long index, E value) throws IndexOutOfBoundsException;
+
+    E fetchAndStore(long index, E value) throws IndexOutOfBoundsException;
+
+    E compareAndExchange(long index,
+                         E expectedValue,
+                         E newValue
+    ) throws IndexOutOfBoundsException;
+
+    default boolean compareAndStore(final long index,
+                                    final E expectedValue,
+                                    final E newValue
+    ) throws IndexOutOfBoundsException {
+        return this.compareAndExchange(index,
+                expectedValue,
+                newValue
+        ) == expectedValue;
+    }
+
+    LongIndexedMemory<E> realloc(long size) throws OutOfMemoryError;
+
+    default void forEachIndexed(final ObjLongConsumer<? super E> action) {
+        Objects.requireNonNull(action);
+        for (long i = 0, n = this.length(); i < n; ++i) {
+            action.accept(this.fetch(i), i);
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package sunmisc.utils.concurrent.memory;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.util.Arrays;
+
+import static java.lang.Long.numberOfLeadingZeros;
+
+/**
+ * Off-heap power-of-two areas with {@code long} indexes,
+ * every area is a single {@link MemorySegment}, so there is
+ * no {@code 2^31} bound per area
+ * <p>{@link #realloc(long)} allocates only the new areas
+ * in the same arena, the existing ones are shared with the returned memory.
+ * {@link #close()} on any of them frees everything
+ * <p>Only {@code int} and {@code long} component types are supported
+ *
+ * @author Sunmisc Unsafe
+ * @param <E> boxed component type
+ */
+public final class LongIndexedNativeMemory<E extends Number>
+        implements BitwiseLongIndexedMemory<E>, AutoCloseable {
+    private final Arena arena;
+    private final NativeCarrier<E> carrier;
+    private final MemorySegment[] areas;
+
+    public LongIndexedNativeMemory(final Class<E> componentType, final long size) {
+        final NativeCarrier<E> carrier = NativeCarrier.of(componentType);
+        final Arena arena = Arena.ofShared();
+        final int segments = 64 - numberOfLeadingZeros(Math.max(size - 1, 1));
+        final MemorySegment[] areas = new MemorySegment[segments];
+        try {
+            for (int p = 0; p < segments; ++p) {
+                areas[p] = allocate(arena, carrier.layout(), p);
+            }
+        } catch (final RuntimeException | OutOfMemoryError e) {
+            arena.close();
+            throw e;
+        }
+        this.arena = arena;
+        this.carrier = carrier;
+        this.areas = areas;
+    }
+
+    private LongIndexedNativeMemory(final Arena arena,
+                                    final NativeCarrier<E> carrier,
+                                    final MemorySegment[] areas) {
+        this.arena = arena;
+        this.carrier = carrier;
+        this.areas = areas;
+    }
+
+    private static MemorySegment allocate(final Arena arena,
+                                          final ValueLayout layout,
+                                          final int area) {
+        final long slots = area == 0 ? 2 : 1L << area;
+        return arena.allocate(layout.byteSize() * slots, layout.byteAlignment());
+    }
+
+    private static int areaForIndex(final long index) {
+        return index < 2 ? 0 : 63 - numberOfLeadingZeros(index);
+    }
+
+    private static long indexForArea(final int area, final long index) {
+        return index < 2 ? index : index - (1L << area);
+    }
+
+    @Override
+    public LongIndexedNativeMemory<E> realloc(final long size) {
+        final int aligned = 64 - numberOfLeadingZeros(Math.max(size - 1, 1));
+        final MemorySegment[] prev = this.areas;
+        final MemorySegment[] copy = Arrays.copyOf(prev, aligned);
+        for (int p = prev.length; p < aligned; ++p) {
+            copy[p] = allocate(this.arena, this.carrier.layout(), p);
+        }
+        return new LongIndexedNativeMemory<>(this.arena, this.carrier, copy);
+    }
+
+    @Override
+    public long length() {
+        return 1L << this.areas.length;
+    }
+
+    @Override
+    public E fetch(final long index) {
+        final int p = areaForIndex(index);
+        return this.carrier.fetch(this.areas[p], indexForArea(p, index));
+    }
+
+    @Override
+    public void store(final long index, final E value) {
+        final int p = areaForIndex(index);
+        this.carrier.store(this.areas[p], indexForArea(p, index), value);
+    }
+
+    @Override
+    public E fetchAndStore(final long index, final E value) {
+        final int p = areaForIndex(index);
+        return this.carrier.fetchAndStore(this.areas[p], indexForArea(p, index), value);
+    }
+
+    @Override
+    public E compareAndExchange(final long index, final E expected, final E value) {
+        final int p = areaForIndex(index);
+        return this.carrier.compareAndExchange(
+                this.areas[p], indexForArea(p, index), expected, value);
+    }
+
+    @Override
+    public boolean compareAndStore(final long index, final E expected, final E value) {
+        return expected.equals(this.compareAndExchange(index, expected, value));
+    }
+
+    @Override
+    public E fetchAndAdd(final long index, final E value) {
+        final int p = areaForIndex(index);
+        return this.carrier.fetchAndAdd(this.areas[p], indexForArea(p, index), value);
+    }
+
+    @Override
+    public E fetchAndBitwiseOr(final long index, final E mask) {
+        final int p = areaForIndex(index);
+        return this.carrier.fetchAndBitwiseOr(this.areas[p], indexForArea(p, index), mask);
+    }
+
+    @Override
+    public E fetchAndBitwiseAnd(final long index, final E mask) {
+        final int p = areaForIndex(index);
+        return this.carrier.fetchAndBitwiseAnd(this.areas[p], indexForArea(p, index), mask);
+    }
+
+    @Override
+    public E fetchAndBitwiseXor(final long index, final E mask) {
+        final int p = areaForIndex(index);
+        return this.carrier.fetchAndBitwiseXor(this.areas[p], indexForArea(p, index), mask);
+    }
+
+    /**
+     * Frees every area, also the ones shared through {@code realloc}
+     */
+    @Override
+    public void close() {
+        this.arena.close();
+    }
+}
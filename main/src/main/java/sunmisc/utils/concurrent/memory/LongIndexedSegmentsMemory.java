@@ -0,0 +1,142 @@
+package sunmisc.utils.concurrent.memory;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.function.IntFunction;
+
+import static java.lang.Long.numberOfLeadingZeros;
+
+/**
+ * The power-of-two layout of {@link SegmentsMemory} with {@code long} indexes:
+ * segment {@code p} covers {@code [2^p, 2^(p+1))}, segments larger
+ * than {@code 2^30} slots are split into chunks of {@code 2^30},
+ * since a single Java array can not hold them
+ *
+ * @author Sunmisc Unsafe
+ * @param <E> the type of elements
+ */
+public final class LongIndexedSegmentsMemory<E> implements LongIndexedMemory<E> {
+    private static final int CHUNK_SHIFT = 30;
+    private static final long CHUNK_MASK = (1L << CHUNK_SHIFT) - 1;
+
+    private final ModifiableMemory<E>[][] segments;
+    private final IntFunction<ModifiableMemory<E>> allocator;
+
+    public LongIndexedSegmentsMemory(final long size) {
+        this(size, ArrayMemory::new);
+    }
+
+    /**
+     * @param size minimal length of the memory
+     * @param allocator creates a chunk of the given length,
+     *                  for example {@code LazyMemory::new}
+     */
+    public LongIndexedSegmentsMemory(final long size,
+                                     final IntFunction<ModifiableMemory<E>> allocator) {
+        this(make(size, allocator), allocator);
+    }
+
+    private LongIndexedSegmentsMemory(final ModifiableMemory<E>[][] segments,
+                                      final IntFunction<ModifiableMemory<E>> allocator) {
+        this.segments = segments;
+        this.allocator = allocator;
+    }
+
+    @Override
+    public LongIndexedSegmentsMemory<E> realloc(final long size) {
+        final int aligned = 64 - numberOfLeadingZeros(Math.max(size - 1, 1));
+        final ModifiableMemory<E>[][] prev = this.segments;
+        final ModifiableMemory<E>[][] copy = Arrays.copyOf(prev, aligned);
+        for (int p = prev.length; p < aligned; ++p) {
+            copy[p] = segment(p, this.allocator);
+        }
+        return new LongIndexedSegmentsMemory<>(copy, this.allocator);
+    }
+
+    @Override
+    public long length() {
+        return 1L << this.segments.length;
+    }
+
+    @Override
+    public E fetch(final long index) {
+        Objects.checkIndex(index, this.length());
+        final int p = segmentForIndex(index);
+        final long i = indexForSegment(p, index);
+        return this.segments[p][(int) (i >>> CHUNK_SHIFT)].fetch((int) (i & CHUNK_MASK));
+    }
+
+    @Override
+    public void store(final long index, final E value) {
+        Objects.checkIndex(index, this.length());
+        final int p = segmentForIndex(index);
+        final long i = indexForSegment(p, index);
+        this.segments[p][(int) (i >>> CHUNK_SHIFT)].store((int) (i & CHUNK_MASK), value);
+    }
+
+    @Override
+    public E fetchAndStore(final long index, final E value) {
+        Objects.checkIndex(index, this.length());
+        final int p = segmentForIndex(index);
+        final long i = indexForSegment(p, index);
+        return this.segments[p][(int) (i >>> CHUNK_SHIFT)]
+                .fetchAndStore((int) (i & CHUNK_MASK), value);
+    }
+
+    @Override
+    public E compareAndExchange(final long index,
+                                final E expectedValue,
+                                final E newValue) {
+        Objects.checkIndex(index, this.length());
+        final int p = segmentForIndex(index);
+        final long i = indexForSegment(p, index);
+        return this.segments[p][(int) (i >>> CHUNK_SHIFT)]
+                .compareAndExchange((int) (i & CHUNK_MASK), expectedValue, newValue);
+    }
+
+    @Override
+    public boolean compareAndStore(final long index,
+                                   final E expectedValue,
+                                   final E newValue) {
+        Objects.checkIndex(index, this.length());
+        final int p = segmentForIndex(index);
+        final long i = indexForSegment(p, index);
+        return this.segments[p][(int) (i >>> CHUNK_SHIFT)]
+                .compareAndStore((int) (i & CHUNK_MASK), expectedValue, newValue);
+    }
+
+    // log2
+    private static int segmentForIndex(final long index) {
+        return index < 2 ? 0 : 63 - numberOfLeadingZeros(index);
+    }
+
+    private static long indexForSegment(final int segment, final long index) {
+        return index < 2 ? index : index - (1L << segment);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <E> ModifiableMemory<E>[] segment(
+            final int p,
+            final IntFunction<ModifiableMemory<E>> allocator) {
+        final long slots = p == 0 ? 2 : 1L << p;
+        final int chunks = (int) Math.max(1, slots >>> CHUNK_SHIFT);
+        final int length = (int) Math.min(slots, 1L << CHUNK_SHIFT);
+        final ModifiableMemory<E>[] segment = new ModifiableMemory[chunks];
+        for (int c = 0; c < chunks; ++c) {
+            segment[c] = allocator.apply(length);
+        }
+        return segment;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <E> ModifiableMemory<E>[][] make(
+            final long size,
+            final IntFunction<ModifiableMemory<E>> allocator) {
+        final int segments = 64 - numberOfLeadingZeros(Math.max(size - 1, 1));
+        final ModifiableMemory<E>[][] array = new ModifiableMemory[segments][];
+        for (int p = 0; p < segments; ++p) {
+            array[p] = segment(p, allocator);
+        }
+        return array;
+    }
+}
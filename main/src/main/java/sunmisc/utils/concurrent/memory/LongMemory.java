@@ -0,0 +1,121 @@
+package sunmisc.utils.concurrent.memory;
+
+import java.util.Objects;
+import java.util.function.LongConsumer;
+import java.util.stream.LongStream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Primitive {@code long} access to a memory, without boxing
+ * of indexes or values
+ *
+ * @author Sunmisc Unsafe
+ * @see BitwiseModifiableMemory
+ */
+public interface LongMemory {
+
+    int length();
+
+    long fetchLong(int index) throws IndexOutOfBoundsException;
+
+    void storeLong(int index, long value) throws IndexOutOfBoundsException;
+
+    long fetchAndStoreLong(int index, long value) throws IndexOutOfBoundsException;
+
+    long compareAndExchangeLong(int index,
+                                long expectedValue,
+                                long newValue
+    ) throws IndexOutOfBoundsException;
+
+    default boolean compareAndStoreLong(final int index,
+                                        final long expectedValue,
+                                        final long newValue
+    ) throws IndexOutOfBoundsException {
+        return this.compareAndExchangeLong(index,
+                expectedValue,
+                newValue
+        ) == expectedValue;
+    }
+
+    long fetchAndAddLong(int index, long value) throws IndexOutOfBoundsException;
+
+    long fetchAndBitwiseOrLong(int index, long mask) throws IndexOutOfBoundsException;
+
+    long fetchAndBitwiseAndLong(int index, long mask) throws IndexOutOfBoundsException;
+
+    long fetchAndBitwiseXorLong(int index, long mask) throws IndexOutOfBoundsException;
+
+    /**
+     * Primitive counterpart of {@link ReadableMemory#fetchRange}
+     */
+    default void fetchRangeLong(final int from,
+                                final long[] dst,
+                                final int offset,
+                                final int length
+    ) throws IndexOutOfBoundsException {
+        Objects.checkFromIndexSize(from, length, this.length());
+        Objects.checkFromIndexSize(offset, length, dst.length);
+        for (int i = 0; i < length; ++i) {
+            dst[offset + i] = this.fetchLong(from + i);
+        }
+    }
+
+    /**
+     * Primitive counterpart of {@link ModifiableMemory#storeRange}
+     */
+    default void storeRangeLong(final int from,
+                                final long[] src,
+                                final int offset,
+                                final int length
+    ) throws IndexOutOfBoundsException {
+        Objects.checkFromIndexSize(from, length, this.length());
+        Objects.checkFromIndexSize(offset, length, src.length);
+        for (int i = 0; i < length; ++i) {
+            this.storeLong(from + i, src[offset + i]);
+        }
+    }
+
+    /**
+     * Primitive counterpart of {@link ModifiableMemory#fill}
+     */
+    default void fillLong(final int from,
+                          final int to,
+                          final long value
+    ) throws IndexOutOfBoundsException {
+        Objects.checkFromToIndex(from, to, this.length());
+        for (int i = from; i < to; ++i) {
+            this.storeLong(i, value);
+        }
+    }
+
+    /**
+     * Primitive counterpart of {@link ReadableMemory#forEachIndexed},
+     * passes the values of the slots {@code [from, to)} in index order
+     *
+     * @param from index of the first slot, inclusive
+     * @param to index of the last slot, exclusive
+     * @param action the action
+     * @throws IndexOutOfBoundsException if the range is out of bounds
+     */
+    default void forEachLong(final int from,
+                             final int to,
+                             final LongConsumer action
+    ) throws IndexOutOfBoundsException {
+        Objects.requireNonNull(action);
+        Objects.checkFromToIndex(from, to, this.length());
+        for (int i = from; i < to; ++i) {
+            action.accept(this.fetchLong(i));
+        }
+    }
+
+    /**
+     * Primitive counterpart of {@link ReadableMemory#stream()},
+     * splits the same way, {@code parallel()} makes it parallel
+     *
+     * @return sequential stream over the current length of the memory
+     */
+    default LongStream longStream() {
+        return StreamSupport.longStream(new MemorySpliterator.Longs(
+                this::fetchLong, this::forEachLong, 0, this.length()), false);
+    }
+}
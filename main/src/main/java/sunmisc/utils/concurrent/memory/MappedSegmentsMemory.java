@@ -0,0 +1,228 @@
+package sunmisc.utils.concurrent.memory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.StringJoiner;
+
+import static java.lang.Integer.numberOfLeadingZeros;
+
+/**
+ * File persistent variant of {@link BitwiseSegmentsMemory}:
+ * each power-of-two area is a mapped region of the same file
+ * <p>Area {@code p} covers slots {@code [2^p, 2^(p+1))},
+ * so the file is simply a flat array of slots in native byte order,
+ * opening an existing file maps it back without any decoding
+ * <p>{@link #realloc(int)} extends the file and maps only the new areas,
+ * the existing areas are shared with the returned memory.
+ * All the memories obtained through {@code realloc} share the file,
+ * {@link #close()} on any of them unmaps everything
+ * <p>Only {@code int} and {@code long} component types are supported
+ *
+ * @author Sunmisc Unsafe
+ * @param <E> boxed component type
+ */
+public final class MappedSegmentsMemory<E extends Number>
+        implements BitwiseModifiableMemory<E>, AutoCloseable {
+    private final FileChannel channel;
+    private final Arena arena;
+    private final NativeCarrier<E> carrier;
+    private final MemorySegment[] areas;
+
+    private MappedSegmentsMemory(final FileChannel channel,
+                                 final Arena arena,
+                                 final NativeCarrier<E> carrier,
+                                 final MemorySegment[] areas) {
+        this.channel = channel;
+        this.arena = arena;
+        this.carrier = carrier;
+        this.areas = areas;
+    }
+
+    /**
+     * Opens (or creates) the file, if the file already holds more
+     * slots than {@code size} they are all mapped back
+     *
+     * @param file backing file
+     * @param componentType {@code int.class} or {@code long.class}
+     * @param size minimal number of slots
+     * @throws IOException if the file cannot be opened or mapped
+     */
+    public MappedSegmentsMemory(final Path file,
+                                final Class<E> componentType,
+                                final int size) throws IOException {
+        final NativeCarrier<E> carrier = NativeCarrier.of(componentType);
+        final FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.READ,
+                StandardOpenOption.WRITE
+        );
+        final Arena arena = Arena.ofShared();
+        try {
+            final long width = carrier.layout().byteSize();
+            final long stored = Math.min(channel.size() / width, Integer.MAX_VALUE);
+            final int segments = 32 - numberOfLeadingZeros(
+                    Math.max(Math.max(size, (int) stored) - 1, 1));
+            final MemorySegment[] areas = new MemorySegment[segments];
+            for (int p = 0; p < segments; ++p) {
+                areas[p] = map(channel, arena, width, p);
+            }
+            this.areas = areas;
+        } catch (final IOException | RuntimeException e) {
+            arena.close();
+            channel.close();
+            throw e;
+        }
+        this.channel = channel;
+        this.arena = arena;
+        this.carrier = carrier;
+    }
+
+    private static MemorySegment map(final FileChannel channel,
+                                     final Arena arena,
+                                     final long width,
+                                     final int area) throws IOException {
+        final long slots = area == 0 ? 2 : 1L << area;
+        final long start = area == 0 ? 0 : 1L << area;
+        return channel.map(
+                FileChannel.MapMode.READ_WRITE,
+                start * width,
+                slots * width,
+                arena
+        );
+    }
+
+    private static int areaForIndex(final int index) {
+        return index < 2 ? 0 : 31 - numberOfLeadingZeros(index);
+    }
+
+    private static long indexForArea(final int area, final int index) {
+        return index < 2 ? index : index - (1 << area);
+    }
+
+    @Override
+    public MappedSegmentsMemory<E> realloc(final int size) {
+        final int aligned = 32 - numberOfLeadingZeros(Math.max(size - 1, 1));
+        final MemorySegment[] prev = this.areas;
+        final MemorySegment[] copy = Arrays.copyOf(prev, aligned);
+        final long width = this.carrier.layout().byteSize();
+        try {
+            for (int p = prev.length; p < aligned; ++p) {
+                copy[p] = map(this.channel, this.arena, width, p);
+            }
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return new MappedSegmentsMemory<>(this.channel, this.arena, this.carrier, copy);
+    }
+
+    /**
+     * Durability point: writes every modified page of the mapped
+     * areas back to the storage device
+     */
+    public void force() {
+        for (final MemorySegment area : this.areas) {
+            area.force();
+        }
+    }
+
+    // one gathering write of all the mapped areas
+    @Override
+    public void writeTo(final WritableByteChannel channel) throws IOException {
+        final MemorySegment[] areas = this.areas;
+        final ByteBuffer[] buffers = new ByteBuffer[areas.length];
+        for (int p = 0; p < areas.length; ++p) {
+            buffers[p] = areas[p].asByteBuffer();
+        }
+        ChannelIO.writeFully(channel, buffers);
+    }
+
+    @Override
+    public int length() {
+        return 1 << this.areas.length;
+    }
+
+    @Override
+    public E fetch(final int index) {
+        final int p = areaForIndex(index);
+        return this.carrier.fetch(this.areas[p], indexForArea(p, index));
+    }
+
+    @Override
+    public void store(final int index, final E value) {
+        final int p = areaForIndex(index);
+        this.carrier.store(this.areas[p], indexForArea(p, index), value);
+    }
+
+    @Override
+    public E fetchAndStore(final int index, final E value) {
+        final int p = areaForIndex(index);
+        return this.carrier.fetchAndStore(this.areas[p], indexForArea(p, index), value);
+    }
+
+    @Override
+    public E compareAndExchange(final int index, final E expected, final E value) {
+        final int p = areaForIndex(index);
+        return this.carrier.compareAndExchange(
+                this.areas[p], indexForArea(p, index), expected, value);
+    }
+
+    @Override
+    public boolean compareAndStore(final int index, final E expected, final E value) {
+        return expected.equals(this.compareAndExchange(index, expected, value));
+    }
+
+    @Override
+    public E fetchAndAdd(final int index, final E value) {
+        final int p = areaForIndex(index);
+        return this.carrier.fetchAndAdd(this.areas[p], indexForArea(p, index), value);
+    }
+
+    @Override
+    public E fetchAndBitwiseOr(final int index, final E mask) {
+        final int p = areaForIndex(index);
+        return this.carrier.fetchAndBitwiseOr(this.areas[p], indexForArea(p, index), mask);
+    }
+
+    @Override
+    public E fetchAndBitwiseAnd(final int index, final E mask) {
+        final int p = areaForIndex(index);
+        return this.carrier.fetchAndBitwiseAnd(this.areas[p], indexForArea(p, index), mask);
+    }
+
+    @Override
+    public E fetchAndBitwiseXor(final int index, final E mask) {
+        final int p = areaForIndex(index);
+        return this.carrier.fetchAndBitwiseXor(this.areas[p], indexForArea(p, index), mask);
+    }
+
+    /**
+     * Unmaps every area and closes the file
+     *
+     * @throws IOException if the file cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            this.arena.close();
+        } finally {
+            this.channel.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        final StringJoiner joiner = new StringJoiner(
+                ", ", "[", "]");
+        this.forEach(x -> joiner.add(Objects.toString(x)));
+        return joiner.toString();
+    }
+}
@@ -0,0 +1,269 @@
+package sunmisc.utils.concurrent.memory;
+
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.DoubleConsumer;
+import java.util.function.IntConsumer;
+import java.util.function.IntToDoubleFunction;
+import java.util.function.IntToLongFunction;
+import java.util.function.IntUnaryOperator;
+import java.util.function.LongConsumer;
+
+/*
+ * Spliterator over [index, fence) of a memory.
+ * A range that spans several power-of-two segments is split
+ * at the start of its highest segment, a range inside
+ * one segment is split in half, so every split stays
+ * inside segment boundaries. The primitive spliterators
+ * split the same way and traverse without boxing
+ */
+final class MemorySpliterator<E> implements Spliterator<E> {
+    private final ReadableMemory<E> memory;
+    private final int fence;
+    private int index;
+
+    MemorySpliterator(final ReadableMemory<E> memory,
+                      final int index,
+                      final int fence) {
+        this.memory = memory;
+        this.index = index;
+        this.fence = fence;
+    }
+
+    @Override
+    public boolean tryAdvance(final Consumer<? super E> action) {
+        Objects.requireNonNull(action);
+        final int i = this.index;
+        if (i < this.fence) {
+            this.index = i + 1;
+            action.accept(this.memory.fetch(i));
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void forEachRemaining(final Consumer<? super E> action) {
+        Objects.requireNonNull(action);
+        final int from = this.index, to = this.fence;
+        if (from < to) {
+            this.index = to;
+            this.memory.forEachIndexed(from, to,
+                    (element, index) -> action.accept(element));
+        }
+    }
+
+    @Override
+    public Spliterator<E> trySplit() {
+        final int lo = this.index, hi = this.fence;
+        if (hi - lo < 2) {
+            return null;
+        }
+        final int mid = split(lo, hi);
+        this.index = mid;
+        return new MemorySpliterator<>(this.memory, lo, mid);
+    }
+
+    @Override
+    public long estimateSize() {
+        return this.fence - this.index;
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED | SIZED | SUBSIZED;
+    }
+
+    // the start of the highest segment of [lo, hi), or the middle
+    static int split(final int lo, final int hi) {
+        final int top = Integer.highestOneBit(hi - 1);
+        return top > lo ? top : (lo + hi) >>> 1;
+    }
+
+    // traverses [from, to) of a primitive memory
+    @FunctionalInterface
+    interface Traversal<C> {
+        void forEach(int from, int to, C action);
+    }
+
+    static final class Longs implements Spliterator.OfLong {
+        private final IntToLongFunction fetch;
+        private final Traversal<LongConsumer> traversal;
+        private final int fence;
+        private int index;
+
+        Longs(final IntToLongFunction fetch,
+              final Traversal<LongConsumer> traversal,
+              final int index,
+              final int fence) {
+            this.fetch = fetch;
+            this.traversal = traversal;
+            this.index = index;
+            this.fence = fence;
+        }
+
+        @Override
+        public boolean tryAdvance(final LongConsumer action) {
+            Objects.requireNonNull(action);
+            final int i = this.index;
+            if (i < this.fence) {
+                this.index = i + 1;
+                action.accept(this.fetch.applyAsLong(i));
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public void forEachRemaining(final LongConsumer action) {
+            Objects.requireNonNull(action);
+            final int from = this.index, to = this.fence;
+            if (from < to) {
+                this.index = to;
+                this.traversal.forEach(from, to, action);
+            }
+        }
+
+        @Override
+        public Spliterator.OfLong trySplit() {
+            final int lo = this.index, hi = this.fence;
+            if (hi - lo < 2) {
+                return null;
+            }
+            final int mid = split(lo, hi);
+            this.index = mid;
+            return new Longs(this.fetch, this.traversal, lo, mid);
+        }
+
+        @Override
+        public long estimateSize() {
+            return this.fence - this.index;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | SIZED | SUBSIZED;
+        }
+    }
+
+    static final class Ints implements Spliterator.OfInt {
+        private final IntUnaryOperator fetch;
+        private final Traversal<IntConsumer> traversal;
+        private final int fence;
+        private int index;
+
+        Ints(final IntUnaryOperator fetch,
+             final Traversal<IntConsumer> traversal,
+             final int index,
+             final int fence) {
+            this.fetch = fetch;
+            this.traversal = traversal;
+            this.index = index;
+            this.fence = fence;
+        }
+
+        @Override
+        public boolean tryAdvance(final IntConsumer action) {
+            Objects.requireNonNull(action);
+            final int i = this.index;
+            if (i < this.fence) {
+                this.index = i + 1;
+                action.accept(this.fetch.applyAsInt(i));
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public void forEachRemaining(final IntConsumer action) {
+            Objects.requireNonNull(action);
+            final int from = this.index, to = this.fence;
+            if (from < to) {
+                this.index = to;
+                this.traversal.forEach(from, to, action);
+            }
+        }
+
+        @Override
+        public Spliterator.OfInt trySplit() {
+            final int lo = this.index, hi = this.fence;
+            if (hi - lo < 2) {
+                return null;
+            }
+            final int mid = split(lo, hi);
+            this.index = mid;
+            return new Ints(this.fetch, this.traversal, lo, mid);
+        }
+
+        @Override
+        public long estimateSize() {
+            return this.fence - this.index;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | SIZED | SUBSIZED;
+        }
+    }
+
+    static final class Doubles implements Spliterator.OfDouble {
+        private final IntToDoubleFunction fetch;
+        private final Traversal<DoubleConsumer> traversal;
+        private final int fence;
+        private int index;
+
+        Doubles(final IntToDoubleFunction fetch,
+                final Traversal<DoubleConsumer> traversal,
+                final int index,
+                final int fence) {
+            this.fetch = fetch;
+            this.traversal = traversal;
+            this.index = index;
+            this.fence = fence;
+        }
+
+        @Override
+        public boolean tryAdvance(final DoubleConsumer action) {
+            Objects.requireNonNull(action);
+            final int i = this.index;
+            if (i < this.fence) {
+                this.index = i + 1;
+                action.accept(this.fetch.applyAsDouble(i));
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public void forEachRemaining(final DoubleConsumer action) {
+            Objects.requireNonNull(action);
+            final int from = this.index, to = this.fence;
+            if (from < to) {
+                this.index = to;
+                this.traversal.forEach(from, to, action);
+            }
+        }
+
+        @Override
+        public Spliterator.OfDouble trySplit() {
+            final int lo = this.index, hi = this.fence;
+            if (hi - lo < 2) {
+                return null;
+            }
+            final int mid = split(lo, hi);
+            this.index = mid;
+            return new Doubles(this.fetch, this.traversal, lo, mid);
+        }
+
+        @Override
+        public long estimateSize() {
+            return this.fence - this.index;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | SIZED | SUBSIZED;
+        }
+    }
+}
@@ -1,5 +1,8 @@
 package sunmisc.utils.concurrent.memory;
 
+import sunmisc.utils.concurrent.Backoff;
+
+import java.util.Objects;
 import java.util.function.UnaryOperator;
 
 public interface ModifiableMemory<E> extends ReadableMemory<E> {
@@ -28,15 +31,94 @@ public interface ModifiableMemory<E> extends ReadableMemory<E> {
         this.fetchAndStore(index, value);
     }
 
+    /**
+     * Writes {@code length} elements of {@code src} starting at {@code from}
+     * <p>The range is not written atomically as a whole and slots
+     * may become visible in any order, but the whole write behaves
+     * as a single release: no earlier memory access is reordered after it
+     *
+     * @param from index of the first slot
+     * @param src the source array
+     * @param offset starting position in the source array
+     * @param length number of slots
+     * @throws IndexOutOfBoundsException if either range is out of bounds
+     */
+    default void storeRange(final int from,
+                            final E[] src,
+                            final int offset,
+                            final int length
+    ) throws IndexOutOfBoundsException {
+        Objects.checkFromIndexSize(from, length, this.length());
+        Objects.checkFromIndexSize(offset, length, src.length);
+        for (int i = 0; i < length; ++i) {
+            this.store(from + i, src[offset + i]);
+        }
+    }
+
+    /**
+     * Stores {@code value} into slots {@code [from, to)},
+     * with the same ordering as {@link #storeRange}
+     *
+     * @param from index of the first slot, inclusive
+     * @param to index of the last slot, exclusive
+     * @param value the value
+     * @throws IndexOutOfBoundsException if the range is out of bounds
+     */
+    default void fill(final int from,
+                      final int to,
+                      final E value
+    ) throws IndexOutOfBoundsException {
+        Objects.checkFromToIndex(from, to, this.length());
+        for (int i = from; i < to; ++i) {
+            this.store(i, value);
+        }
+    }
+
     ModifiableMemory<E> realloc(int size) throws OutOfMemoryError;
 
+    /**
+     * Returns a view that shares the storage of this memory
+     * but accesses it with the given mode.
+     * Memories that cannot weaken their ordering may return
+     * a view with a stronger one, by default this memory itself
+     *
+     * @param mode access mode of the view
+     * @return the view
+     */
+    default ModifiableMemory<E> withMode(final AccessMode mode) {
+        return this;
+    }
+
+    /**
+     * Atomically replaces the slot with the result of the operator,
+     * backing off with {@link Backoff#DEFAULT} between attempts,
+     * the operator may be applied several times
+     */
     default void transform(final int index,
                            final UnaryOperator<E> operator
     ) throws IndexOutOfBoundsException {
+        this.transformContended(index, operator, Backoff.DEFAULT);
+    }
+
+    /**
+     * {@link #transform} with the given backoff policy
+     *
+     * @param index the index
+     * @param operator side-effect-free function of the current value
+     * @param backoff pauses after every failed attempt
+     * @return the number of failed attempts, a measure of contention
+     */
+    default int transformContended(final int index,
+                                   final UnaryOperator<E> operator,
+                                   final Backoff backoff
+    ) throws IndexOutOfBoundsException {
+        int failures = 0;
         for (E current; !this.compareAndStore(index,
                 current = this.fetch(index),
                 operator.apply(current)
              );) {
+            backoff.pause(++failures);
         }
+        return failures;
     }
 }
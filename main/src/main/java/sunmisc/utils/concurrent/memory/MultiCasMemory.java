@@ -0,0 +1,214 @@
+package sunmisc.utils.concurrent.memory;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.StringJoiner;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lock-free multi-slot compare-and-swap over an object memory
+ * ({@link ArrayMemory}, {@link SegmentsMemory}, ...):
+ * {@link #casN} changes several slots atomically or none of them
+ * <p>The k-CAS of Harris, Fraser and Pratt: the operation installs
+ * a descriptor into its slots in index order through RDCSS,
+ * decides, then replaces the descriptors with the new or the old values.
+ * Every thread that meets a descriptor helps it to complete,
+ * so a stalled thread never blocks the others
+ * <p>The wrapped memory must not be used directly while the wrapper
+ * is in use, its slots may hold descriptors.
+ * Values are compared by identity, like
+ * {@link ModifiableMemory#compareAndExchange}
+ *
+ * @author Sunmisc Unsafe
+ * @param <E> the type of elements
+ */
+@SuppressWarnings("unchecked")
+public final class MultiCasMemory<E> implements ModifiableMemory<E> {
+    private static final int UNDECIDED = 0, SUCCEEDED = 1, FAILED = 2;
+
+    private final ModifiableMemory<Object> memory;
+
+    public MultiCasMemory(final ModifiableMemory<Object> memory) {
+        this.memory = Objects.requireNonNull(memory);
+    }
+
+    /**
+     * Atomically sets {@code indexes[i]} to {@code updates[i]} for all i
+     * if every slot {@code indexes[i]} holds {@code expected[i]}
+     *
+     * @param indexes distinct indexes
+     * @param expected the expected values
+     * @param updates the new values
+     * @return true if the slots were updated
+     * @throws IllegalArgumentException if the arrays differ in length
+     *                                  or an index repeats
+     */
+    public boolean casN(final int[] indexes,
+                        final E[] expected,
+                        final E[] updates) {
+        final int n = indexes.length;
+        if (expected.length != n || updates.length != n) {
+            throw new IllegalArgumentException("arrays differ in length");
+        }
+        // ascending order of slots, two operations never wait for each other in a cycle
+        final long[] order = new long[n];
+        for (int i = 0, length = this.length(); i < n; ++i) {
+            order[i] = (long) Objects.checkIndex(indexes[i], length) << 32 | i;
+        }
+        Arrays.sort(order);
+        final int[] sorted = new int[n];
+        final Object[] olds = new Object[n], news = new Object[n];
+        for (int k = 0; k < n; ++k) {
+            final int i = (int) order[k];
+            sorted[k] = indexes[i];
+            if (k > 0 && sorted[k - 1] == sorted[k]) {
+                throw new IllegalArgumentException("repeated index: " + sorted[k]);
+            }
+            olds[k] = expected[i];
+            news[k] = updates[i];
+        }
+        return this.help(new Descriptor(sorted, olds, news));
+    }
+
+    private boolean help(final Descriptor d) {
+        if (d.status.get() == UNDECIDED) {
+            int status = SUCCEEDED;
+            for (int k = 0; k < d.indexes.length && status == SUCCEEDED; ) {
+                final Object r = this.rdcss(new Intent(d, d.indexes[k], d.expected[k]));
+                if (r instanceof final Descriptor other) {
+                    if (other != d) {
+                        this.help(other);
+                        continue;
+                    }
+                } else if (r != d.expected[k]) {
+                    status = FAILED;
+                }
+                ++k;
+            }
+            d.status.compareAndSet(UNDECIDED, status);
+        }
+        final boolean succeeded = d.status.get() == SUCCEEDED;
+        for (int k = 0; k < d.indexes.length; ++k) {
+            this.memory.compareAndStore(d.indexes[k], d,
+                    succeeded ? d.updates[k] : d.expected[k]);
+        }
+        return succeeded;
+    }
+
+    /*
+     * Restricted double-compare single-swap: the slot becomes
+     * the descriptor only if it holds the expected value
+     * and the descriptor is still undecided
+     */
+    private Object rdcss(final Intent intent) {
+        for (;;) {
+            final Object r = this.memory.compareAndExchange(
+                    intent.index, intent.expected, intent);
+            if (r instanceof final Intent other) {
+                this.complete(other);
+            } else {
+                if (r == intent.expected) {
+                    this.complete(intent);
+                }
+                return r;
+            }
+        }
+    }
+
+    private void complete(final Intent intent) {
+        this.memory.compareAndStore(intent.index, intent,
+                intent.descriptor.status.get() == UNDECIDED
+                        ? intent.descriptor
+                        : intent.expected);
+    }
+
+    // the value of the slot, helps the operations found in it
+    private Object resolve(final int index) {
+        for (;;) {
+            final Object o = this.memory.fetch(index);
+            if (o instanceof final Intent intent) {
+                this.complete(intent);
+            } else if (o instanceof final Descriptor d) {
+                this.help(d);
+            } else {
+                return o;
+            }
+        }
+    }
+
+    @Override
+    public int length() {
+        return this.memory.length();
+    }
+
+    @Override
+    public E fetch(final int index) {
+        return (E) this.resolve(index);
+    }
+
+    @Override
+    public void store(final int index, final E value) {
+        this.fetchAndStore(index, value);
+    }
+
+    @Override
+    public E fetchAndStore(final int index, final E value) {
+        for (;;) {
+            final Object o = this.resolve(index);
+            if (this.memory.compareAndStore(index, o, value)) {
+                return (E) o;
+            }
+        }
+    }
+
+    @Override
+    public E compareAndExchange(final int index,
+                                final E expectedValue,
+                                final E newValue) {
+        for (;;) {
+            final Object o = this.resolve(index);
+            if (o != expectedValue ||
+                    this.memory.compareAndStore(index, o, newValue)) {
+                return (E) o;
+            }
+        }
+    }
+
+    /**
+     * Not atomic with concurrent operations, like the realloc
+     * of the wrapped memory, the copied slots are resolved
+     */
+    @Override
+    public MultiCasMemory<E> realloc(final int size) throws OutOfMemoryError {
+        final MultiCasMemory<E> next = new MultiCasMemory<>(this.memory.realloc(size));
+        for (int i = 0, n = Math.min(size, this.length()); i < n; ++i) {
+            next.resolve(i);
+        }
+        return next;
+    }
+
+    @Override
+    public String toString() {
+        final StringJoiner joiner = new StringJoiner(
+                ", ", "[", "]");
+        this.forEach(x -> joiner.add(Objects.toString(x)));
+        return joiner.toString();
+    }
+
+    private static final class Descriptor {
+        final int[] indexes;
+        final Object[] expected, updates;
+        final AtomicInteger status = new AtomicInteger(UNDECIDED);
+
+        Descriptor(final int[] indexes,
+                   final Object[] expected,
+                   final Object[] updates) {
+            this.indexes = indexes;
+            this.expected = expected;
+            this.updates = updates;
+        }
+    }
+
+    // the descriptor is about to be installed into the slot
+    private record Intent(Descriptor descriptor, int index, Object expected) { }
+}
@@ -0,0 +1,122 @@
+package sunmisc.utils.concurrent.memory;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.lang.invoke.VarHandle;
+
+/*
+ * Access strategy for slots that live in a MemorySegment.
+ * Indexes are slot indexes (not byte offsets) and are long,
+ * so the same carrier serves both int-indexed and long-indexed memories.
+ *
+ * Native segments support atomic update access modes
+ * only for int and long carriers, narrower types are rejected
+ */
+@SuppressWarnings("unchecked")
+sealed interface NativeCarrier<E extends Number> {
+
+    static <E extends Number> NativeCarrier<E> of(final Class<E> type) {
+        final NativeCarrier<?> carrier;
+        if (type == int.class) {
+            carrier = new Ints();
+        } else if (type == long.class) {
+            carrier = new Longs();
+        } else {
+            throw new IllegalArgumentException(
+                    "Component type is not supported by native memory");
+        }
+        return (NativeCarrier<E>) carrier;
+    }
+
+    ValueLayout layout();
+
+    E fetch(MemorySegment segment, long index);
+
+    void store(MemorySegment segment, long index, E value);
+
+    E fetchAndStore(MemorySegment segment, long index, E value);
+
+    E compareAndExchange(MemorySegment segment, long index, E expected, E value);
+
+    E fetchAndAdd(MemorySegment segment, long index, E value);
+
+    E fetchAndBitwiseOr(MemorySegment segment, long index, E mask);
+
+    E fetchAndBitwiseAnd(MemorySegment segment, long index, E mask);
+
+    E fetchAndBitwiseXor(MemorySegment segment, long index, E mask);
+
+    record Longs() implements NativeCarrier<Long> {
+        private static final VarHandle
+                LONGS = ValueLayout.JAVA_LONG.varHandle();
+
+        private static long offset(final long index) {
+            return index << 3;
+        }
+
+        @Override public ValueLayout layout()
+        { return ValueLayout.JAVA_LONG; }
+
+        @Override public Long fetch(final MemorySegment s, final long i)
+        { return (long) LONGS.getAcquire(s, offset(i)); }
+
+        @Override public void store(final MemorySegment s, final long i, final Long value)
+        { LONGS.setRelease(s, offset(i), (long) value); }
+
+        @Override public Long fetchAndStore(final MemorySegment s, final long i, final Long value)
+        { return (long) LONGS.getAndSet(s, offset(i), (long) value); }
+
+        @Override public Long compareAndExchange(final MemorySegment s, final long i,
+                                                 final Long expected, final Long value)
+        { return (long) LONGS.compareAndExchange(s, offset(i), (long) expected, (long) value); }
+
+        @Override public Long fetchAndAdd(final MemorySegment s, final long i, final Long value)
+        { return (long) LONGS.getAndAdd(s, offset(i), (long) value); }
+
+        @Override public Long fetchAndBitwiseOr(final MemorySegment s, final long i, final Long mask)
+        { return (long) LONGS.getAndBitwiseOr(s, offset(i), (long) mask); }
+
+        @Override public Long fetchAndBitwiseAnd(final MemorySegment s, final long i, final Long mask)
+        { return (long) LONGS.getAndBitwiseAnd(s, offset(i), (long) mask); }
+
+        @Override public Long fetchAndBitwiseXor(final MemorySegment s, final long i, final Long mask)
+        { return (long) LONGS.getAndBitwiseXor(s, offset(i), (long) mask); }
+    }
+
+    record Ints() implements NativeCarrier<Integer> {
+        private static final VarHandle
+                INTEGERS = ValueLayout.JAVA_INT.varHandle();
+
+        private static long offset(final long index) {
+            return index << 2;
+        }
+
+        @Override public ValueLayout layout()
+        { return ValueLayout.JAVA_INT; }
+
+        @Override public Integer fetch(final MemorySegment s, final long i)
+        { return (int) INTEGERS.getAcquire(s, offset(i)); }
+
+        @Override public void store(final MemorySegment s, final long i, final Integer value)
+        { INTEGERS.setRelease(s, offset(i), (int) value); }
+
+        @Override public Integer fetchAndStore(final MemorySegment s, final long i, final Integer value)
+        { return (int) INTEGERS.getAndSet(s, offset(i), (int) value); }
+
+        @Override public Integer compareAndExchange(final MemorySegment s, final long i,
+                                                    final Integer expected, final Integer value)
+        { return (int) INTEGERS.compareAndExchange(s, offset(i), (int) expected, (int) value); }
+
+        @Override public Integer fetchAndAdd(final MemorySegment s, final long i, final Integer value)
+        { return (int) INTEGERS.getAndAdd(s, offset(i), (int) value); }
+
+        @Override public Integer fetchAndBitwiseOr(final MemorySegment s, final long i, final Integer mask)
+        { return (int) INTEGERS.getAndBitwiseOr(s, offset(i), (int) mask); }
+
+        @Override public Integer fetchAndBitwiseAnd(final MemorySegment s, final long i, final Integer mask)
+        { return (int) INTEGERS.getAndBitwiseAnd(s, offset(i), (int) mask); }
+
+        @Override public Integer fetchAndBitwiseXor(final MemorySegment s, final long i, final Integer mask)
+        { return (int) INTEGERS.getAndBitwiseXor(s, offset(i), (int) mask); }
+    }
+}
@@ -0,0 +1,159 @@
+package sunmisc.utils.concurrent.memory;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Objects;
+import java.util.StringJoiner;
+
+/**
+ * Off-heap memory: slots live in a {@link MemorySegment}
+ * allocated by its own shared {@link Arena}, atomic operations
+ * go through the segment var handles
+ * <p>Only {@code int} and {@code long} component types are supported,
+ * native segments do not provide atomic updates for narrower types
+ * <p>The memory must be released explicitly with {@link #close()},
+ * any access after that throws {@link IllegalStateException}.
+ * {@link #realloc(int)} allocates a new arena, the current memory stays
+ * alive and has to be closed separately
+ *
+ * @author Sunmisc Unsafe
+ * @param <E> boxed component type
+ */
+public final class NativeMemory<E extends Number>
+        implements BitwiseModifiableMemory<E>, AutoCloseable {
+    private final Arena arena;
+    private final MemorySegment segment;
+    private final NativeCarrier<E> carrier;
+    private final int length;
+
+    public NativeMemory(final Class<E> componentType, final int size) {
+        this(NativeCarrier.of(componentType), size);
+    }
+
+    private NativeMemory(final NativeCarrier<E> carrier, final int size) {
+        this(Arena.ofShared(), carrier, size);
+    }
+
+    private NativeMemory(final Arena arena,
+                         final NativeCarrier<E> carrier,
+                         final int size) {
+        final ValueLayout layout = carrier.layout();
+        this.arena = arena;
+        this.segment = arena.allocate(
+                layout.byteSize() * size,
+                layout.byteAlignment()
+        );
+        this.carrier = carrier;
+        this.length = size;
+    }
+
+    @Override
+    public int length() {
+        return this.length;
+    }
+
+    @Override
+    public E fetch(final int index) {
+        return this.carrier.fetch(this.segment, index);
+    }
+
+    @Override
+    public void store(final int index, final E value) {
+        this.carrier.store(this.segment, index, value);
+    }
+
+    @Override
+    public E fetchAndStore(final int index, final E value) {
+        return this.carrier.fetchAndStore(this.segment, index, value);
+    }
+
+    @Override
+    public E compareAndExchange(final int index, final E expected, final E value) {
+        return this.carrier.compareAndExchange(this.segment, index, expected, value);
+    }
+
+    @Override
+    public boolean compareAndStore(final int index, final E expected, final E value) {
+        return expected.equals(this.compareAndExchange(index, expected, value));
+    }
+
+    @Override
+    public E fetchAndAdd(final int index, final E value) {
+        return this.carrier.fetchAndAdd(this.segment, index, value);
+    }
+
+    @Override
+    public E fetchAndBitwiseOr(final int index, final E mask) {
+        return this.carrier.fetchAndBitwiseOr(this.segment, index, mask);
+    }
+
+    @Override
+    public E fetchAndBitwiseAnd(final int index, final E mask) {
+        return this.carrier.fetchAndBitwiseAnd(this.segment, index, mask);
+    }
+
+    @Override
+    public E fetchAndBitwiseXor(final int index, final E mask) {
+        return this.carrier.fetchAndBitwiseXor(this.segment, index, mask);
+    }
+
+    @Override
+    public NativeMemory<E> realloc(final int size) throws OutOfMemoryError {
+        final NativeMemory<E> next = new NativeMemory<>(this.carrier, size);
+        MemorySegment.copy(
+                this.segment, 0,
+                next.segment, 0,
+                Math.min(this.segment.byteSize(), next.segment.byteSize())
+        );
+        return next;
+    }
+
+    // the segment is written directly, without copying
+    @Override
+    public void writeTo(final WritableByteChannel channel) throws IOException {
+        ChannelIO.writeFully(channel, this.segment.asByteBuffer());
+    }
+
+    /**
+     * Reads a memory written by {@link #writeTo}
+     *
+     * @param channel the source
+     * @param componentType {@code int.class} or {@code long.class}
+     * @param size number of slots to read
+     * @return the new memory, it has to be closed
+     * @throws IOException if the channel fails or ends too early
+     */
+    public static <E extends Number> NativeMemory<E> readFrom(
+            final ReadableByteChannel channel,
+            final Class<E> componentType,
+            final int size) throws IOException {
+        final NativeMemory<E> memory = new NativeMemory<>(componentType, size);
+        try {
+            ChannelIO.readFully(channel, memory.segment.asByteBuffer());
+        } catch (final IOException | RuntimeException e) {
+            memory.close();
+            throw e;
+        }
+        return memory;
+    }
+
+    /**
+     * Frees the off-heap memory, the memory is not accessible afterwards
+     */
+    @Override
+    public void close() {
+        this.arena.close();
+    }
+
+    @Override
+    public String toString() {
+        final StringJoiner joiner = new StringJoiner(
+                ", ", "[", "]");
+        this.forEach(x -> joiner.add(Objects.toString(x)));
+        return joiner.toString();
+    }
+}
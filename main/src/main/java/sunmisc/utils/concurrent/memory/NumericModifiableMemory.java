@@ -0,0 +1,36 @@
+package sunmisc.utils.concurrent.memory;
+
+/**
+ * Atomic arithmetic on numeric slots
+ *
+ * @author Sunmisc Unsafe
+ * @param <E> boxed component type
+ */
+public interface NumericModifiableMemory<E extends Number>
+        extends ModifiableMemory<E> {
+
+    E fetchAndAdd(int index, E value);
+
+    /**
+     * Atomically sets the slot to the maximum of its value
+     * and the given one
+     *
+     * @param index the index
+     * @param value the value
+     * @return the previous value
+     */
+    E fetchAndMax(int index, E value);
+
+    /**
+     * Atomically sets the slot to the minimum of its value
+     * and the given one
+     *
+     * @param index the index
+     * @param value the value
+     * @return the previous value
+     */
+    E fetchAndMin(int index, E value);
+
+    @Override
+    NumericModifiableMemory<E> realloc(int size) throws OutOfMemoryError;
+}
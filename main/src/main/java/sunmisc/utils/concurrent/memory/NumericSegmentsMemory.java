@@ -0,0 +1,455 @@
+package sunmisc.utils.concurrent.memory;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Objects;
+import java.util.StringJoiner;
+import java.util.function.IntFunction;
+
+import static sunmisc.utils.concurrent.memory.PowerOfTwoAreas.areaForIndex;
+
+/**
+ * Power-of-two areas of {@code float} or {@code double} arrays
+ * <p>Additions are atomic var handle additions, maximum and minimum
+ * are compare-and-exchange loops over the raw bits of the slot,
+ * compare-and-exchange itself compares raw bits too (see {@link DoubleMemory}).
+ * The primitive views ({@link #doubles}, {@link #floats}) avoid boxing,
+ * each takes only a memory of its own component type
+ *
+ * @author Sunmisc Unsafe
+ * @param <E> boxed component type
+ */
+public final class NumericSegmentsMemory<E extends Number>
+        implements NumericModifiableMemory<E> {
+
+    private final Area<E>[] areas;
+    private final IntFunction<Area<E>> mapped;
+    // the primitive view of the component type
+    private final Object view;
+
+    private NumericSegmentsMemory(final Area<E>[] areas,
+                                  final IntFunction<Area<E>> mapped) {
+        this.areas = areas;
+        this.mapped = mapped;
+        this.view = this.primitiveView();
+    }
+
+    public NumericSegmentsMemory(final Class<E> componentType, final int size) {
+        final IntFunction<Area<E>> map = typeToArea(componentType);
+        @SuppressWarnings("unchecked")
+        final Area<E>[] empty = new Area[0];
+        this.mapped = map;
+        this.areas = PowerOfTwoAreas.make(empty, size, map);
+        this.view = this.primitiveView();
+    }
+
+    private Object primitiveView() {
+        return this.areas[0] instanceof AreaDoubles ? new Doubles() : new Floats();
+    }
+
+    /**
+     * Primitive access to a memory of {@code double}, without boxing
+     *
+     * @param memory the memory
+     * @return the view, the same one for every call
+     */
+    public static DoubleMemory doubles(final NumericSegmentsMemory<Double> memory) {
+        return (DoubleMemory) memory.view;
+    }
+
+    /**
+     * Primitive access to a memory of {@code float}, without boxing
+     *
+     * @param memory the memory
+     * @return the view, the same one for every call
+     */
+    public static FloatMemory floats(final NumericSegmentsMemory<Float> memory) {
+        return (FloatMemory) memory.view;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <E extends Number> IntFunction<Area<E>> typeToArea(final Class<E> type) {
+        final IntFunction<Area<E>> map;
+        if (type == double.class) {
+            map = len -> (Area<E>) new AreaDoubles(new double[len]);
+        } else if (type == float.class) {
+            map = len -> (Area<E>) new AreaFloats(new float[len]);
+        } else {
+            throw new IllegalArgumentException("Component type is not floating-point");
+        }
+        return map;
+    }
+
+    private int indexForArea(final Area<E> area, final int index) {
+        return PowerOfTwoAreas.indexForArea(area.length(), index);
+    }
+
+    @Override
+    public NumericSegmentsMemory<E> realloc(final int size) {
+        final Area<E>[] copy = PowerOfTwoAreas.realloc(this.areas, size, this.mapped);
+        return new NumericSegmentsMemory<>(copy, this.mapped);
+    }
+
+    @Override
+    public int length() {
+        return 1 << this.areas.length;
+    }
+
+    @Override
+    public E fetch(final int index) {
+        final Area<E> area = this.areas[areaForIndex(index)];
+        final int i = this.indexForArea(area, index);
+        return area.fetch(i);
+    }
+
+    @Override
+    public void store(final int index, final E value) {
+        final Area<E> area = this.areas[areaForIndex(index)];
+        final int i = this.indexForArea(area, index);
+        area.store(i, value);
+    }
+
+    @Override
+    public E fetchAndStore(final int index, final E value) {
+        final Area<E> area = this.areas[areaForIndex(index)];
+        final int i = this.indexForArea(area, index);
+        return area.fetchAndStore(i, value);
+    }
+
+    @Override
+    public E compareAndExchange(final int index, final E expected, final E value) {
+        final Area<E> area = this.areas[areaForIndex(index)];
+        final int i = this.indexForArea(area, index);
+        return area.compareAndExchange(i, expected, value);
+    }
+
+    @Override
+    public boolean compareAndStore(final int index, final E expected, final E value) {
+        final Area<E> area = this.areas[areaForIndex(index)];
+        final int i = this.indexForArea(area, index);
+        return area.compareAndStore(i, expected, value);
+    }
+
+    @Override
+    public E fetchAndAdd(final int index, final E value) {
+        final Area<E> area = this.areas[areaForIndex(index)];
+        final int i = this.indexForArea(area, index);
+        return area.fetchAndAdd(i, value);
+    }
+
+    @Override
+    public E fetchAndMax(final int index, final E value) {
+        final Area<E> area = this.areas[areaForIndex(index)];
+        final int i = this.indexForArea(area, index);
+        return area.fetchAndMax(i, value);
+    }
+
+    @Override
+    public E fetchAndMin(final int index, final E value) {
+        final Area<E> area = this.areas[areaForIndex(index)];
+        final int i = this.indexForArea(area, index);
+        return area.fetchAndMin(i, value);
+    }
+
+    @Override
+    public String toString() {
+        final StringJoiner joiner = new StringJoiner(
+                ", ", "[", "]");
+        this.forEach(x -> joiner.add(Objects.toString(x)));
+        return joiner.toString();
+    }
+
+    // the double view, only created for a memory of double
+    private final class Doubles implements DoubleMemory {
+
+        @Override
+        public int length() {
+            return NumericSegmentsMemory.this.length();
+        }
+
+        @Override
+        public double fetchDouble(final int index) {
+            final Area<E> area = NumericSegmentsMemory.this.areas[areaForIndex(index)];
+            final int i = NumericSegmentsMemory.this.indexForArea(area, index);
+            return ((DoubleMemory) area).fetchDouble(i);
+        }
+
+        @Override
+        public void storeDouble(final int index, final double value) {
+            final Area<E> area = NumericSegmentsMemory.this.areas[areaForIndex(index)];
+            final int i = NumericSegmentsMemory.this.indexForArea(area, index);
+            ((DoubleMemory) area).storeDouble(i, value);
+        }
+
+        @Override
+        public double fetchAndStoreDouble(final int index, final double value) {
+            final Area<E> area = NumericSegmentsMemory.this.areas[areaForIndex(index)];
+            final int i = NumericSegmentsMemory.this.indexForArea(area, index);
+            return ((DoubleMemory) area).fetchAndStoreDouble(i, value);
+        }
+
+        @Override
+        public double compareAndExchangeDouble(final int index, final double expected, final double value) {
+            final Area<E> area = NumericSegmentsMemory.this.areas[areaForIndex(index)];
+            final int i = NumericSegmentsMemory.this.indexForArea(area, index);
+            return ((DoubleMemory) area).compareAndExchangeDouble(i, expected, value);
+        }
+
+        @Override
+        public boolean compareAndStoreDouble(final int index, final double expected, final double value) {
+            final Area<E> area = NumericSegmentsMemory.this.areas[areaForIndex(index)];
+            final int i = NumericSegmentsMemory.this.indexForArea(area, index);
+            return ((DoubleMemory) area).compareAndStoreDouble(i, expected, value);
+        }
+
+        @Override
+        public double fetchAndAddDouble(final int index, final double value) {
+            final Area<E> area = NumericSegmentsMemory.this.areas[areaForIndex(index)];
+            final int i = NumericSegmentsMemory.this.indexForArea(area, index);
+            return ((DoubleMemory) area).fetchAndAddDouble(i, value);
+        }
+
+        @Override
+        public double fetchAndMaxDouble(final int index, final double value) {
+            final Area<E> area = NumericSegmentsMemory.this.areas[areaForIndex(index)];
+            final int i = NumericSegmentsMemory.this.indexForArea(area, index);
+            return ((DoubleMemory) area).fetchAndMaxDouble(i, value);
+        }
+
+        @Override
+        public double fetchAndMinDouble(final int index, final double value) {
+            final Area<E> area = NumericSegmentsMemory.this.areas[areaForIndex(index)];
+            final int i = NumericSegmentsMemory.this.indexForArea(area, index);
+            return ((DoubleMemory) area).fetchAndMinDouble(i, value);
+        }
+    }
+
+    // the float view, only created for a memory of float
+    private final class Floats implements FloatMemory {
+
+        @Override
+        public int length() {
+            return NumericSegmentsMemory.this.length();
+        }
+
+        @Override
+        public float fetchFloat(final int index) {
+            final Area<E> area = NumericSegmentsMemory.this.areas[areaForIndex(index)];
+            final int i = NumericSegmentsMemory.this.indexForArea(area, index);
+            return ((FloatMemory) area).fetchFloat(i);
+        }
+
+        @Override
+        public void storeFloat(final int index, final float value) {
+            final Area<E> area = NumericSegmentsMemory.this.areas[areaForIndex(index)];
+            final int i = NumericSegmentsMemory.this.indexForArea(area, index);
+            ((FloatMemory) area).storeFloat(i, value);
+        }
+
+        @Override
+        public float fetchAndStoreFloat(final int index, final float value) {
+            final Area<E> area = NumericSegmentsMemory.this.areas[areaForIndex(index)];
+            final int i = NumericSegmentsMemory.this.indexForArea(area, index);
+            return ((FloatMemory) area).fetchAndStoreFloat(i, value);
+        }
+
+        @Override
+        public float compareAndExchangeFloat(final int index, final float expected, final float value) {
+            final Area<E> area = NumericSegmentsMemory.this.areas[areaForIndex(index)];
+            final int i = NumericSegmentsMemory.this.indexForArea(area, index);
+            return ((FloatMemory) area).compareAndExchangeFloat(i, expected, value);
+        }
+
+        @Override
+        public boolean compareAndStoreFloat(final int index, final float expected, final float value) {
+            final Area<E> area = NumericSegmentsMemory.this.areas[areaForIndex(index)];
+            final int i = NumericSegmentsMemory.this.indexForArea(area, index);
+            return ((FloatMemory) area).compareAndStoreFloat(i, expected, value);
+        }
+
+        @Override
+        public float fetchAndAddFloat(final int index, final float value) {
+            final Area<E> area = NumericSegmentsMemory.this.areas[areaForIndex(index)];
+            final int i = NumericSegmentsMemory.this.indexForArea(area, index);
+            return ((FloatMemory) area).fetchAndAddFloat(i, value);
+        }
+
+        @Override
+        public float fetchAndMaxFloat(final int index, final float value) {
+            final Area<E> area = NumericSegmentsMemory.this.areas[areaForIndex(index)];
+            final int i = NumericSegmentsMemory.this.indexForArea(area, index);
+            return ((FloatMemory) area).fetchAndMaxFloat(i, value);
+        }
+
+        @Override
+        public float fetchAndMinFloat(final int index, final float value) {
+            final Area<E> area = NumericSegmentsMemory.this.areas[areaForIndex(index)];
+            final int i = NumericSegmentsMemory.this.indexForArea(area, index);
+            return ((FloatMemory) area).fetchAndMinFloat(i, value);
+        }
+    }
+
+    private interface Area<E extends Number>
+            extends NumericModifiableMemory<E> {
+        @Override
+        default NumericModifiableMemory<E> realloc(final int size) throws OutOfMemoryError {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private record AreaDoubles(double[] array) implements Area<Double>, DoubleMemory {
+        private static final VarHandle
+                DOUBLES = MethodHandles.arrayElementVarHandle(double[].class);
+
+        @Override public int length()
+        { return this.array.length; }
+
+        @Override public double fetchDouble(final int index)
+        { return (double) DOUBLES.getAcquire(this.array, index); }
+
+        @Override public void storeDouble(final int index, final double value)
+        { DOUBLES.setRelease(this.array, index, value); }
+
+        @Override public double fetchAndStoreDouble(final int index, final double value)
+        { return (double) DOUBLES.getAndSet(this.array, index, value); }
+
+        @Override public double compareAndExchangeDouble(final int i, final double expected, final double value)
+        { return (double) DOUBLES.compareAndExchange(this.array, i, expected, value); }
+
+        @Override public boolean compareAndStoreDouble(final int i, final double expected, final double value)
+        { return DOUBLES.compareAndSet(this.array, i, expected, value); }
+
+        @Override public double fetchAndAddDouble(final int index, final double value)
+        { return (double) DOUBLES.getAndAdd(this.array, index, value); }
+
+        @Override public double fetchAndMaxDouble(final int index, final double value) {
+            for (double prev = (double) DOUBLES.getAcquire(this.array, index);;) {
+                final double next = Math.max(prev, value);
+                if (Double.doubleToRawLongBits(next) == Double.doubleToRawLongBits(prev)) {
+                    return prev;
+                }
+                final double witness = (double) DOUBLES.compareAndExchange(this.array, index, prev, next);
+                if (Double.doubleToRawLongBits(witness) == Double.doubleToRawLongBits(prev)) {
+                    return prev;
+                }
+                prev = witness;
+            }
+        }
+
+        @Override public double fetchAndMinDouble(final int index, final double value) {
+            for (double prev = (double) DOUBLES.getAcquire(this.array, index);;) {
+                final double next = Math.min(prev, value);
+                if (Double.doubleToRawLongBits(next) == Double.doubleToRawLongBits(prev)) {
+                    return prev;
+                }
+                final double witness = (double) DOUBLES.compareAndExchange(this.array, index, prev, next);
+                if (Double.doubleToRawLongBits(witness) == Double.doubleToRawLongBits(prev)) {
+                    return prev;
+                }
+                prev = witness;
+            }
+        }
+
+        @Override public Double fetch(final int index)
+        { return this.fetchDouble(index); }
+
+        @Override public void store(final int index, final Double value)
+        { this.storeDouble(index, value); }
+
+        @Override public Double fetchAndStore(final int index, final Double value)
+        { return this.fetchAndStoreDouble(index, value); }
+
+        @Override public Double compareAndExchange(final int i, final Double expected, final Double value)
+        { return this.compareAndExchangeDouble(i, expected, value); }
+
+        @Override public boolean compareAndStore(final int i, final Double expected, final Double value)
+        { return this.compareAndStoreDouble(i, expected, value); }
+
+        @Override public Double fetchAndAdd(final int i, final Double value)
+        { return this.fetchAndAddDouble(i, value); }
+
+        @Override public Double fetchAndMax(final int i, final Double value)
+        { return this.fetchAndMaxDouble(i, value); }
+
+        @Override public Double fetchAndMin(final int i, final Double value)
+        { return this.fetchAndMinDouble(i, value); }
+    }
+
+    private record AreaFloats(float[] array) implements Area<Float>, FloatMemory {
+        private static final VarHandle
+                FLOATS = MethodHandles.arrayElementVarHandle(float[].class);
+
+        @Override public int length()
+        { return this.array.length; }
+
+        @Override public float fetchFloat(final int index)
+        { return (float) FLOATS.getAcquire(this.array, index); }
+
+        @Override public void storeFloat(final int index, final float value)
+        { FLOATS.setRelease(this.array, index, value); }
+
+        @Override public float fetchAndStoreFloat(final int index, final float value)
+        { return (float) FLOATS.getAndSet(this.array, index, value); }
+
+        @Override public float compareAndExchangeFloat(final int i, final float expected, final float value)
+        { return (float) FLOATS.compareAndExchange(this.array, i, expected, value); }
+
+        @Override public boolean compareAndStoreFloat(final int i, final float expected, final float value)
+        { return FLOATS.compareAndSet(this.array, i, expected, value); }
+
+        @Override public float fetchAndAddFloat(final int index, final float value)
+        { return (float) FLOATS.getAndAdd(this.array, index, value); }
+
+        @Override public float fetchAndMaxFloat(final int index, final float value) {
+            for (float prev = (float) FLOATS.getAcquire(this.array, index);;) {
+                final float next = Math.max(prev, value);
+                if (Float.floatToRawIntBits(next) == Float.floatToRawIntBits(prev)) {
+                    return prev;
+                }
+                final float witness = (float) FLOATS.compareAndExchange(this.array, index, prev, next);
+                if (Float.floatToRawIntBits(witness) == Float.floatToRawIntBits(prev)) {
+                    return prev;
+                }
+                prev = witness;
+            }
+        }
+
+        @Override public float fetchAndMinFloat(final int index, final float value) {
+            for (float prev = (float) FLOATS.getAcquire(this.array, index);;) {
+                final float next = Math.min(prev, value);
+                if (Float.floatToRawIntBits(next) == Float.floatToRawIntBits(prev)) {
+                    return prev;
+                }
+                final float witness = (float) FLOATS.compareAndExchange(this.array, index, prev, next);
+                if (Float.floatToRawIntBits(witness) == Float.floatToRawIntBits(prev)) {
+                    return prev;
+                }
+                prev = witness;
+            }
+        }
+
+        @Override public Float fetch(final int index)
+        { return this.fetchFloat(index); }
+
+        @Override public void store(final int index, final Float value)
+        { this.storeFloat(index, value); }
+
+        @Override public Float fetchAndStore(final int index, final Float value)
+        { return this.fetchAndStoreFloat(index, value); }
+
+        @Override public Float compareAndExchange(final int i, final Float expected, final Float value)
+        { return this.compareAndExchangeFloat(i, expected, value); }
+
+        @Override public boolean compareAndStore(final int i, final Float expected, final Float value)
+        { return this.compareAndStoreFloat(i, expected, value); }
+
+        @Override public Float fetchAndAdd(final int i, final Float value)
+        { return this.fetchAndAddFloat(i, value); }
+
+        @Override public Float fetchAndMax(final int i, final Float value)
+        { return this.fetchAndMaxFloat(i, value); }
+
+        @Override public Float fetchAndMin(final int i, final Float value)
+        { return this.fetchAndMinFloat(i, value); }
+    }
+}
@@ -0,0 +1,111 @@
+package sunmisc.utils.concurrent.memory;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Objects;
+import java.util.StringJoiner;
+
+/**
+ * {@link ArrayMemory} with every slot placed on its own cache line pair,
+ * threads hammering adjacent indexes do not invalidate each other
+ * <p>Costs {@code 2^SHIFT} times the memory of the dense layout
+ *
+ * @author Sunmisc Unsafe
+ * @param <E> the type of elements
+ */
+@SuppressWarnings("unchecked")
+public final class PaddedArrayMemory<E> implements ModifiableMemory<E> {
+    /*
+     * 32 references is 128 bytes with compressed oops (256 without),
+     * the adjacent line prefetcher pulls lines in 128 byte pairs.
+     * The first stride is left empty, it shares a line with the array header
+     */
+    private static final int SHIFT = 5;
+    // the largest size whose padded array length fits an int
+    private static final int MAX_SIZE = (Integer.MAX_VALUE >> SHIFT) - 1;
+    private final Object[] array;
+    private final int length;
+
+    /**
+     * @param size length of the memory
+     * @throws IllegalArgumentException if size is negative
+     *                                  or the padded array would not fit an int
+     */
+    public PaddedArrayMemory(final int size) {
+        this(new Object[capacity(size)], size);
+    }
+
+    private PaddedArrayMemory(final Object[] array, final int length) {
+        this.array = array;
+        this.length = length;
+    }
+
+    private static int capacity(final int size) {
+        if (size < 0 || size > MAX_SIZE) {
+            throw new IllegalArgumentException(
+                    "size must be in [0, " + MAX_SIZE + "]: " + size);
+        }
+        return (size + 1) << SHIFT;
+    }
+
+    // the length is at most MAX_SIZE, the shift cannot overflow
+    private int slot(final int index) {
+        return (Objects.checkIndex(index, this.length) + 1) << SHIFT;
+    }
+
+    @Override
+    public int length() {
+        return this.length;
+    }
+
+    @Override
+    public E fetch(final int index) {
+        return (E) AA.getAcquire(this.array, this.slot(index));
+    }
+
+    @Override
+    public void store(final int index, final E value) {
+        AA.setRelease(this.array, this.slot(index), value);
+    }
+
+    @Override
+    public E fetchAndStore(final int index, final E value) {
+        return (E) AA.getAndSet(this.array, this.slot(index), value);
+    }
+
+    @Override
+    public E compareAndExchange(final int index,
+                                final E expectedValue,
+                                final E newValue
+    ) throws IndexOutOfBoundsException {
+        return (E) AA.compareAndExchange(this.array, this.slot(index), expectedValue, newValue);
+    }
+
+    @Override
+    public boolean compareAndStore(final int index,
+                                   final E expectedValue,
+                                   final E newValue
+    ) throws IndexOutOfBoundsException {
+        return AA.compareAndSet(this.array, this.slot(index), expectedValue, newValue);
+    }
+
+    @Override
+    public PaddedArrayMemory<E> realloc(final int size) throws OutOfMemoryError {
+        final Object[] prev = this.array;
+        final Object[] copy = new Object[capacity(size)];
+        System.arraycopy(prev, 0, copy, 0, Math.min(prev.length, copy.length));
+        return new PaddedArrayMemory<>(copy, size);
+    }
+
+    @Override
+    public String toString() {
+        final StringJoiner joiner = new StringJoiner(
+                ", ", "[", "]");
+        this.forEach(x -> joiner.add(Objects.toString(x)));
+        return joiner.toString();
+    }
+
+    // VarHandle mechanics
+    private static final VarHandle AA
+            = MethodHandles.arrayElementVarHandle(Object[].class);
+}
@@ -0,0 +1,51 @@
+package sunmisc.utils.concurrent.memory;
+
+import java.util.Arrays;
+import java.util.function.IntFunction;
+
+import static java.lang.Integer.numberOfLeadingZeros;
+
+/*
+ * The power-of-two layout of segmented memories:
+ * area 0 holds the slots 0 and 1, area p > 0 holds
+ * the 1 << p slots starting at 1 << p, so growth keeps every area
+ */
+final class PowerOfTwoAreas {
+
+    private PowerOfTwoAreas() { }
+
+    // log2
+    static int areaForIndex(final int index) {
+        return index < 2 ? 0 : 31 - numberOfLeadingZeros(index);
+    }
+
+    // the index within the area of the given length
+    static int indexForArea(final int length, final int index) {
+        return index < 2 ? index : index - length;
+    }
+
+    // number of areas holding at least size slots
+    static int areas(final int size) {
+        return 32 - numberOfLeadingZeros(Math.max(size - 1, 1));
+    }
+
+    // the new areas hold at least size slots
+    static <A> A[] make(final A[] empty, final int size,
+                        final IntFunction<? extends A> mapped) {
+        return realloc(empty, size, mapped);
+    }
+
+    /*
+     * Keeps the first areas of prev, allocates the missing ones,
+     * the caller releases the cut off ones
+     */
+    static <A> A[] realloc(final A[] prev, final int size,
+                           final IntFunction<? extends A> mapped) {
+        final int aligned = areas(size);
+        final A[] copy = Arrays.copyOf(prev, aligned);
+        for (int p = prev.length; p < aligned; ++p) {
+            copy[p] = mapped.apply(p == 0 ? 2 : 1 << p);
+        }
+        return copy;
+    }
+}
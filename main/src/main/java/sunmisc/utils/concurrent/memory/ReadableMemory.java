@@ -2,15 +2,79 @@ package sunmisc.utils.concurrent.memory;
 
 import sunmisc.utils.Cursor;
 
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
 import java.util.Objects;
+import java.util.Spliterator;
 import java.util.function.Consumer;
+import java.util.function.ObjIntConsumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public interface ReadableMemory<E> {
-
     E fetch(int index) throws IndexOutOfBoundsException;
 
     int length();
 
+    /**
+     * Reads {@code length} slots starting at {@code from} into {@code dst}
+     * <p>The range is not read atomically as a whole and slots
+     * may be read in any order, but the whole read behaves as a single
+     * acquire: no later memory access is reordered before it
+     *
+     * @param from index of the first slot
+     * @param dst the destination array
+     * @param offset starting position in the destination array
+     * @param length number of slots
+     * @throws IndexOutOfBoundsException if either range is out of bounds
+     */
+    default void fetchRange(final int from,
+                            final E[] dst,
+                            final int offset,
+                            final int length
+    ) throws IndexOutOfBoundsException {
+        Objects.checkFromIndexSize(from, length, this.length());
+        Objects.checkFromIndexSize(offset, length, dst.length);
+        for (int i = 0; i < length; ++i) {
+            dst[offset + i] = this.fetch(from + i);
+        }
+    }
+
+    /**
+     * Copies the common prefix of this memory and {@code dst}
+     * chunk by chunk, see {@link #fetchRange} and
+     * {@link ModifiableMemory#storeRange} for the ordering of every chunk
+     *
+     * @param dst the destination memory
+     */
+    @SuppressWarnings("unchecked")
+    default void copyTo(final ModifiableMemory<? super E> dst) {
+        final int n = Math.min(this.length(), dst.length());
+        // slots copied per step
+        final int step = 1 << 12;
+        final E[] chunk = (E[]) new Object[Math.min(n, step)];
+        for (int i = 0; i < n; i += chunk.length) {
+            final int len = Math.min(chunk.length, n - i);
+            this.fetchRange(i, chunk, 0, len);
+            dst.storeRange(i, chunk, 0, len);
+        }
+    }
+
+    /**
+     * Writes all the slots to the channel as a flat array in native
+     * byte order, the format of a {@link MappedSegmentsMemory} file.
+     * The write is a weakly consistent snapshot: concurrent updates
+     * may or may not be reflected
+     * <p>Only primitive-backed memories support this
+     *
+     * @param channel the destination
+     * @throws IOException if the channel fails
+     * @throws UnsupportedOperationException if the memory holds references
+     */
+    default void writeTo(final WritableByteChannel channel) throws IOException {
+        throw new UnsupportedOperationException();
+    }
+
     default Cursor<E> origin() {
         try {
             return this.length() > 0
@@ -24,13 +88,59 @@ public interface ReadableMemory<E> {
     default void forEach(final Consumer<? super E> action) {
         Objects.requireNonNull(action);
 
-        for (Cursor<E> cursor = this.origin();
-             cursor.exists();
-             cursor = cursor.next()) {
-            action.accept(cursor.element());
+        this.forEachIndexed((element, index) -> action.accept(element));
+    }
+
+    /**
+     * Performs the action for every slot with its index, in index order,
+     * without allocating anything per slot
+     *
+     * @param action the action
+     */
+    default void forEachIndexed(final ObjIntConsumer<? super E> action) {
+        this.forEachIndexed(0, this.length(), action);
+    }
+
+    /**
+     * Performs the action for the slots {@code [from, to)} with their
+     * indexes, in index order. Segmented memories traverse
+     * a whole segment at a time
+     *
+     * @param from index of the first slot, inclusive
+     * @param to index of the last slot, exclusive
+     * @param action the action
+     * @throws IndexOutOfBoundsException if the range is out of bounds
+     */
+    default void forEachIndexed(final int from,
+                                final int to,
+                                final ObjIntConsumer<? super E> action
+    ) throws IndexOutOfBoundsException {
+        Objects.requireNonNull(action);
+        Objects.checkFromToIndex(from, to, this.length());
+        for (int i = from; i < to; ++i) {
+            action.accept(this.fetch(i), i);
         }
     }
 
+    /**
+     * The spliterator splits on power-of-two boundaries,
+     * which are the segment boundaries of segmented memories,
+     * and traverses the rest with {@link #forEachIndexed(int, int, ObjIntConsumer)}
+     *
+     * @return spliterator over the current length of the memory
+     */
+    default Spliterator<E> spliterator() {
+        return new MemorySpliterator<>(this, 0, this.length());
+    }
+
+    default Stream<E> stream() {
+        return StreamSupport.stream(this.spliterator(), false);
+    }
+
+    default Stream<E> parallelStream() {
+        return StreamSupport.stream(this.spliterator(), true);
+    }
+
     record CursorImpl<E>(
             int index,
             ReadableMemory<E> memory,
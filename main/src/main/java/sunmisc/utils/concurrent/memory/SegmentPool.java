@@ -0,0 +1,132 @@
+package sunmisc.utils.concurrent.memory;
+
+import java.lang.reflect.Array;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded pool of power-of-two arrays, keyed by length and component
+ * type ({@code Object}, {@code long}, {@code int}, {@code short}, {@code byte}),
+ * for memories that are reallocated over and over
+ * <p>A released array is zeroed by the cleaner before it becomes
+ * available again, by default asynchronously in the common pool,
+ * so neither the releasing nor the acquiring thread pays for it.
+ * An array that does not fit (full bucket, other length or type)
+ * is left to the garbage collector
+ * <p>A released array must not be referenced any more,
+ * the pool does not check it
+ *
+ * @author Sunmisc Unsafe
+ */
+public final class SegmentPool {
+    private static final Class<?>[] TYPES = {
+            Object[].class, long[].class, int[].class, short[].class, byte[].class
+    };
+    private static final int EXPONENTS = 31;
+
+    private final AtomicReferenceArray<Object> slots;
+    private final int capacity;
+    private final Executor cleaner;
+
+    /**
+     * @param capacity arrays kept per length and component type
+     */
+    public SegmentPool(final int capacity) {
+        this(capacity, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param capacity arrays kept per length and component type
+     * @param cleaner zeroes released arrays, {@code Runnable::run}
+     *                zeroes them in the releasing thread
+     */
+    public SegmentPool(final int capacity, final Executor cleaner) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.slots = new AtomicReferenceArray<>(TYPES.length * EXPONENTS * capacity);
+        this.capacity = capacity;
+        this.cleaner = cleaner;
+    }
+
+    /**
+     * Takes a zeroed array from the pool or allocates a new one
+     *
+     * @param arrayType the array class, for example {@code long[].class}
+     * @param length the length
+     * @return the array of the given length
+     */
+    @SuppressWarnings("unchecked")
+    public <A> A acquire(final Class<A> arrayType, final int length) {
+        final int bucket = bucketOf(arrayType, length);
+        if (bucket >= 0) {
+            for (int i = bucket, end = bucket + this.capacity; i < end; ++i) {
+                if (this.slots.getPlain(i) != null) {
+                    final Object array = this.slots.getAndSet(i, null);
+                    if (array != null) {
+                        return (A) array;
+                    }
+                }
+            }
+        }
+        return (A) Array.newInstance(arrayType.componentType(), length);
+    }
+
+    /**
+     * Returns the array to the pool, it is zeroed by the cleaner first
+     *
+     * @param array the array that is no longer used
+     */
+    public void release(final Object array) {
+        final int bucket = bucketOf(array.getClass(), Array.getLength(array));
+        if (bucket >= 0) {
+            this.cleaner.execute(() -> {
+                clear(array);
+                for (int i = bucket, end = bucket + this.capacity; i < end; ++i) {
+                    if (this.slots.getPlain(i) == null &&
+                            this.slots.compareAndSet(i, null, array)) {
+                        return;
+                    }
+                }
+            });
+        }
+    }
+
+    // the first slot of the bucket or -1
+    private int bucketOf(final Class<?> arrayType, final int length) {
+        if (length <= 0 || (length & (length - 1)) != 0) {
+            return -1;
+        }
+        for (int k = 0; k < TYPES.length; ++k) {
+            if (TYPES[k] == arrayType) {
+                final int exponent = Integer.numberOfTrailingZeros(length);
+                return (k * EXPONENTS + exponent) * this.capacity;
+            }
+        }
+        return -1;
+    }
+
+    private static void clear(final Object array) {
+        switch (array) {
+            case final Object[] a -> Arrays.fill(a, null);
+            case final long[] a -> Arrays.fill(a, 0L);
+            case final int[] a -> Arrays.fill(a, 0);
+            case final short[] a -> Arrays.fill(a, (short) 0);
+            case final byte[] a -> Arrays.fill(a, (byte) 0);
+            default -> throw new IllegalArgumentException();
+        }
+    }
+
+    @Override
+    public String toString() {
+        int pooled = 0;
+        for (int i = 0, n = this.slots.length(); i < n; ++i) {
+            if (this.slots.get(i) != null) {
+                pooled++;
+            }
+        }
+        return "SegmentPool[capacity=" + this.capacity + ", pooled=" + pooled + ']';
+    }
+}
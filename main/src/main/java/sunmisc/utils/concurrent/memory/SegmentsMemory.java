@@ -1,31 +1,224 @@
 package sunmisc.utils.concurrent.memory;
 
 import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntFunction;
+import java.util.function.ObjIntConsumer;
 
 import static java.lang.Integer.numberOfLeadingZeros;
 
+/**
+ * Power-of-two segments, {@link #realloc(int)} keeps the existing
+ * segments and adds new ones, so growth never copies
+ * <p>Once growth settles, {@link #compact()} moves the slots
+ * into a single flat {@link ArrayMemory}. Once it has started, writers
+ * are forwarded slot by slot: a slot is frozen, copied, then marked
+ * as moved, and operations on a frozen or moved slot continue
+ * in the flat memory, so no write is lost. Writes are compare-and-sets,
+ * so none of them overwrites a marker; until the compaction starts
+ * reads are direct, without any forwarding checks
+ *
+ * @author Sunmisc Unsafe
+ * @param <E> the type of elements
+ */
+@SuppressWarnings("unchecked")
 public final class SegmentsMemory<E> implements ModifiableMemory<E> {
+    private static final Marker MOVED = new Marker();
+    private static final Object PENDING = new Object();
+
     private final ModifiableMemory<E>[] segments;
+    private final IntFunction<ModifiableMemory<E>> allocator;
+    // the flat memory, set once the compaction starts
+    private final AtomicReference<ModifiableMemory<E>> flat;
+    // set while this memory owns its segments, realloc hands them over
+    private final AtomicBoolean owner;
+    // the segments come from a pool, only their owner may realloc
+    private final boolean pooled;
 
     public SegmentsMemory(final int size) {
-        this(make(size));
+        this(size, ArrayMemory::new);
+    }
+
+    /**
+     * @param size minimal length of the memory
+     * @param allocator creates a segment of the given length,
+     *                  for example {@code LazyMemory::new}
+     *                  keeps untouched segments unallocated
+     */
+    public SegmentsMemory(final int size,
+                          final IntFunction<ModifiableMemory<E>> allocator) {
+        this(size, allocator, false);
+    }
+
+    /**
+     * Segments are taken from the pool, a shrinking {@link #realloc(int)}
+     * and {@link #release()} return them to it. The segments are owned
+     * by the memory, {@link #realloc(int)} hands them over to the new one
+     * and {@link #withMode} views never own them, so only the owner
+     * may be reallocated, once
+     *
+     * @param size minimal length of the memory
+     * @param pool the pool of segment arrays
+     */
+    public SegmentsMemory(final int size, final SegmentPool pool) {
+        this(size, len -> new ArrayMemory<>(len, pool), true);
     }
 
-    private SegmentsMemory(final ModifiableMemory<E>[] segments) {
+    private SegmentsMemory(final int size,
+                           final IntFunction<ModifiableMemory<E>> allocator,
+                           final boolean pooled) {
+        this(make(size, allocator), allocator, new AtomicReference<>(), true, pooled);
+    }
+
+    private SegmentsMemory(final ModifiableMemory<E>[] segments,
+                           final IntFunction<ModifiableMemory<E>> allocator,
+                           final AtomicReference<ModifiableMemory<E>> flat,
+                           final boolean owner,
+                           final boolean pooled) {
         this.segments = segments;
+        this.allocator = allocator;
+        this.flat = flat;
+        this.owner = new AtomicBoolean(owner);
+        this.pooled = pooled;
+    }
+
+    /**
+     * Moves all the slots into a single flat memory, the fetch of which
+     * costs no segment lookup. Operations on this memory that race
+     * with or follow the compaction are forwarded to the flat one,
+     * callers should switch to the returned memory
+     * <p>Any operation may race with the compaction: stores, swaps
+     * and bulk stores ({@code storeRange}, {@code fill}) are per-slot
+     * compare-and-sets, a bulk {@code fetchRange} resolves the slots
+     * it copied after the compaction started. Memories
+     * sharing the segments through {@link #realloc(int)} share the
+     * flat memory too. Requires atomic segments,
+     * not {@link AccessMode#PLAIN} views
+     *
+     * @return the flat memory, the same one for every call
+     * @throws IllegalStateException if a shorter memory sharing
+     *                               the segments was compacted
+     */
+    public ModifiableMemory<E> compact() {
+        ModifiableMemory<E> target = this.flat.get();
+        if (target != null && target.length() < this.length()) {
+            throw new IllegalStateException("compacted by a shorter memory");
+        } else if (target == null) {
+            final int n = this.length();
+            final ModifiableMemory<Object> created = new ArrayMemory<>(n);
+            // late helpers never overwrite a copied value
+            created.fill(0, n, PENDING);
+            target = this.flat.compareAndExchange(null, (ModifiableMemory<E>) created);
+            if (target == null) {
+                target = (ModifiableMemory<E>) created;
+            }
+        }
+        for (int index = 0, n = this.length(); index < n; ++index) {
+            final ModifiableMemory<E> segment = this.segments[segmentForIndex(index)];
+            this.forward(segment, this.indexForSegment(segment, index), index);
+        }
+        return target;
+    }
+
+    /*
+     * Moves the slot (Cliff Click's scheme, as in GrowableMemory):
+     * freeze the value, copy it over PENDING, mark the slot as moved
+     */
+    private ModifiableMemory<E> forward(final ModifiableMemory<E> segment,
+                                        final int i,
+                                        final int index) {
+        final ModifiableMemory<Object> slots = (ModifiableMemory<Object>) segment;
+        final ModifiableMemory<E> target = this.flat.get();
+        for (;;) {
+            final Object o = slots.fetch(i);
+            if (o == MOVED) {
+                return target;
+            }
+            final Frozen frozen;
+            if (o instanceof final Frozen f) {
+                frozen = f;
+            } else if (!slots.compareAndStore(i, o, frozen = new Frozen(o))) {
+                continue;
+            }
+            ((ModifiableMemory<Object>) target).compareAndStore(index, PENDING, frozen.value);
+            if (slots.compareAndStore(i, frozen, MOVED)) {
+                return target;
+            }
+        }
     }
 
-    // O(30)
+    // the value of a slot that holds a marker
+    private E resolve(final Object marker, final int index) {
+        return marker instanceof final Frozen f
+                ? (E) f.value
+                : this.flat.get().fetch(index);
+    }
+
+    /**
+     * O(30), the new memory shares the segments and the compaction
+     * state with this one and takes over their ownership. Pooled segments
+     * cut off by shrinking go back to the pool if this memory owned them,
+     * this memory must not be used after that
+     *
+     * @throws IllegalStateException if the segments are pooled
+     *                               and this memory does not own them
+     */
     @Override
     public SegmentsMemory<E> realloc(final int size) {
+        if (this.flat.get() != null) {
+            throw new IllegalStateException("compacted, realloc the flat memory");
+        }
+        final boolean owned = this.owner.compareAndSet(true, false);
+        if (!owned && this.pooled) {
+            // a sibling sharing the segments could release them under us
+            throw new IllegalStateException("pooled segments are not owned");
+        }
         final int aligned = 32 - numberOfLeadingZeros(Math.max(size - 1, 1));
         final ModifiableMemory<E>[] prev = this.segments;
         final ModifiableMemory<E>[] copy = Arrays.copyOf(prev, aligned);
         for (int p = prev.length; p < aligned; ++p) {
-            copy[p] = new ArrayMemory<>(1 << p);
+            copy[p] = this.allocator.apply(1 << p);
+        }
+        if (owned) {
+            for (int p = aligned; p < prev.length; ++p) {
+                release(prev[p]);
+            }
+        }
+        return new SegmentsMemory<>(copy, this.allocator, this.flat, owned, this.pooled);
+    }
+
+    /**
+     * Returns pooled segments to their pool if this memory owns them,
+     * at most once. The memory must not be used after the call
+     */
+    public void release() {
+        if (this.owner.compareAndSet(true, false)) {
+            for (final ModifiableMemory<E> segment : this.segments) {
+                release(segment);
+            }
         }
-        return new SegmentsMemory<>(copy);
     }
+
+    private static void release(final ModifiableMemory<?> segment) {
+        if (segment instanceof final ArrayMemory<?> array) {
+            array.release();
+        }
+    }
+
+    @Override
+    public SegmentsMemory<E> withMode(final AccessMode mode) {
+        final ModifiableMemory<E>[] prev = this.segments;
+        final ModifiableMemory<E>[] views = Arrays.copyOf(prev, prev.length);
+        for (int p = 0; p < views.length; ++p) {
+            views[p] = prev[p].withMode(mode);
+        }
+        final IntFunction<ModifiableMemory<E>> allocator = this.allocator;
+        return new SegmentsMemory<>(views,
+                len -> allocator.apply(len).withMode(mode), this.flat, false, this.pooled);
+    }
+
     @Override
     public int length() {
         return 1 << this.segments.length;
@@ -36,7 +229,11 @@ public final class SegmentsMemory<E> implements ModifiableMemory<E> {
         final int exponent = segmentForIndex(index);
         final ReadableMemory<E> segment = this.segments[exponent];
         final int i = this.indexForSegment(segment, index);
-        return segment.fetch(i);
+        final E value = segment.fetch(i);
+        // markers appear only after the flat memory is published
+        return this.flat.get() != null && value instanceof Marker
+                ? this.resolve(value, index)
+                : value;
     }
 
     @Override
@@ -46,7 +243,22 @@ public final class SegmentsMemory<E> implements ModifiableMemory<E> {
         final int exponent = segmentForIndex(index);
         final ModifiableMemory<E> segment = this.segments[exponent];
         final int i = this.indexForSegment(segment, index);
-        return segment.fetchAndStore(i, value);
+        return this.forwardingStore(segment, i, index, value);
+    }
+
+    // a CAS loop, a blind swap could overwrite a frozen slot
+    private E forwardingStore(final ModifiableMemory<E> segment,
+                              final int i,
+                              final int index,
+                              final E value) {
+        for (;;) {
+            final E prev = segment.fetch(i);
+            if (prev instanceof Marker) {
+                return this.forward(segment, i, index).fetchAndStore(index, value);
+            } else if (segment.compareAndStore(i, prev, value)) {
+                return prev;
+            }
+        }
     }
 
     @Override
@@ -57,7 +269,10 @@ public final class SegmentsMemory<E> implements ModifiableMemory<E> {
         final int exponent = segmentForIndex(index);
         final ModifiableMemory<E> segment = this.segments[exponent];
         final int i = this.indexForSegment(segment, index);
-        return segment.compareAndExchange(i, expected, newValue);
+        final E witness = segment.compareAndExchange(i, expected, newValue);
+        return this.flat.get() != null && witness instanceof Marker
+                ? this.forward(segment, i, index).compareAndExchange(index, expected, newValue)
+                : witness;
     }
 
     @Override
@@ -65,7 +280,97 @@ public final class SegmentsMemory<E> implements ModifiableMemory<E> {
         final int exponent = segmentForIndex(index);
         final ModifiableMemory<E> segment = this.segments[exponent];
         final int i = this.indexForSegment(segment, index);
-        segment.store(i, val);
+        this.forwardingStore(segment, i, index, val);
+    }
+
+    @Override
+    public void fetchRange(final int from,
+                           final E[] dst,
+                           final int offset,
+                           final int length
+    ) throws IndexOutOfBoundsException {
+        Objects.checkFromIndexSize(offset, length, dst.length);
+        if (this.flat.get() != null) {
+            ModifiableMemory.super.fetchRange(from, dst, offset, length);
+            return;
+        }
+        this.ranges(from, length, (segment, start, done, n) -> {
+            try {
+                segment.fetchRange(start, dst, offset + done, n);
+            } catch (final ArrayStoreException e) {
+                // a marker does not fit a typed array, a wrong dst type fails again
+                for (int k = 0; k < n; ++k) {
+                    dst[offset + done + k] = this.fetch(from + done + k);
+                }
+            }
+        });
+        // a compaction started during the copy, markers are published after flat
+        if (this.flat.get() != null) {
+            for (int k = 0; k < length; ++k) {
+                final Object value = dst[offset + k];
+                if (value instanceof Marker) {
+                    dst[offset + k] = this.resolve(value, from + k);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void storeRange(final int from,
+                           final E[] src,
+                           final int offset,
+                           final int length
+    ) throws IndexOutOfBoundsException {
+        Objects.checkFromIndexSize(offset, length, src.length);
+        // slot by slot, a bulk copy could overwrite markers
+        ModifiableMemory.super.storeRange(from, src, offset, length);
+    }
+
+    @Override
+    public void fill(final int from,
+                     final int to,
+                     final E value
+    ) throws IndexOutOfBoundsException {
+        Objects.checkFromToIndex(from, to, this.length());
+        // slot by slot, a bulk fill could overwrite markers
+        ModifiableMemory.super.fill(from, to, value);
+    }
+
+    @Override
+    public void forEachIndexed(final int from,
+                               final int to,
+                               final ObjIntConsumer<? super E> action) {
+        Objects.requireNonNull(action);
+        Objects.checkFromToIndex(from, to, this.length());
+        this.ranges(from, to - from, (segment, start, done, n) -> {
+            final int shift = from + done - start;
+            for (int i = start, end = start + n; i < end; ++i) {
+                final E value = segment.fetch(i);
+                action.accept(this.flat.get() != null && value instanceof Marker
+                        ? this.resolve(value, shift + i)
+                        : value, shift + i);
+            }
+        });
+    }
+
+    // splits [from, from + length) at segment boundaries
+    private void ranges(final int from,
+                        final int length,
+                        final RangeAction<E> action) {
+        Objects.checkFromIndexSize(from, length, this.length());
+        for (int done = 0; done < length; ) {
+            final int index = from + done;
+            final ModifiableMemory<E> segment = this.segments[segmentForIndex(index)];
+            final int start = this.indexForSegment(segment, index);
+            final int n = Math.min(segment.length() - start, length - done);
+            action.apply(segment, start, done, n);
+            done += n;
+        }
+    }
+
+    @FunctionalInterface
+    private interface RangeAction<E> {
+        void apply(ModifiableMemory<E> segment, int start, int done, int n);
     }
 
     @Override
@@ -88,13 +393,26 @@ public final class SegmentsMemory<E> implements ModifiableMemory<E> {
         return index < 2 ? index : index - segment.length();
     }
 
-    private static <E> ModifiableMemory<E>[] make(final int size) {
+    // a frozen or a moved slot
+    private static class Marker { }
+
+    private static final class Frozen extends Marker {
+        final Object value;
+
+        Frozen(final Object value) {
+            this.value = value;
+        }
+    }
+
+    private static <E> ModifiableMemory<E>[] make(
+            final int size,
+            final IntFunction<ModifiableMemory<E>> allocator) {
         final int segments = 32 - numberOfLeadingZeros(Math.max(size - 1, 1));
         @SuppressWarnings("unchecked")
         final ModifiableMemory<E>[] alloc = new ModifiableMemory[segments];
-        alloc[0] = new ArrayMemory<>(2);
+        alloc[0] = allocator.apply(2);
         for (int segment = 1; segment < segments; ++segment) {
-            alloc[segment] = new ArrayMemory<>(1 << segment);
+            alloc[segment] = allocator.apply(1 << segment);
         }
         return alloc;
     }
@@ -0,0 +1,121 @@
+package sunmisc.utils.concurrent.memory;
+
+import java.util.Objects;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Primitive {@code short} access to a memory, without boxing
+ * of indexes or values
+ *
+ * @author Sunmisc Unsafe
+ * @see BitwiseModifiableMemory
+ */
+public interface ShortMemory {
+
+    int length();
+
+    short fetchShort(int index) throws IndexOutOfBoundsException;
+
+    void storeShort(int index, short value) throws IndexOutOfBoundsException;
+
+    short fetchAndStoreShort(int index, short value) throws IndexOutOfBoundsException;
+
+    short compareAndExchangeShort(int index,
+                                  short expectedValue,
+                                  short newValue
+    ) throws IndexOutOfBoundsException;
+
+    default boolean compareAndStoreShort(final int index,
+                                         final short expectedValue,
+                                         final short newValue
+    ) throws IndexOutOfBoundsException {
+        return this.compareAndExchangeShort(index,
+                expectedValue,
+                newValue
+        ) == expectedValue;
+    }
+
+    short fetchAndAddShort(int index, short value) throws IndexOutOfBoundsException;
+
+    short fetchAndBitwiseOrShort(int index, short mask) throws IndexOutOfBoundsException;
+
+    short fetchAndBitwiseAndShort(int index, short mask) throws IndexOutOfBoundsException;
+
+    short fetchAndBitwiseXorShort(int index, short mask) throws IndexOutOfBoundsException;
+
+    /**
+     * Primitive counterpart of {@link ReadableMemory#fetchRange}
+     */
+    default void fetchRangeShort(final int from,
+                                 final short[] dst,
+                                 final int offset,
+                                 final int length
+    ) throws IndexOutOfBoundsException {
+        Objects.checkFromIndexSize(from, length, this.length());
+        Objects.checkFromIndexSize(offset, length, dst.length);
+        for (int i = 0; i < length; ++i) {
+            dst[offset + i] = this.fetchShort(from + i);
+        }
+    }
+
+    /**
+     * Primitive counterpart of {@link ModifiableMemory#storeRange}
+     */
+    default void storeRangeShort(final int from,
+                                 final short[] src,
+                                 final int offset,
+                                 final int length
+    ) throws IndexOutOfBoundsException {
+        Objects.checkFromIndexSize(from, length, this.length());
+        Objects.checkFromIndexSize(offset, length, src.length);
+        for (int i = 0; i < length; ++i) {
+            this.storeShort(from + i, src[offset + i]);
+        }
+    }
+
+    /**
+     * Primitive counterpart of {@link ModifiableMemory#fill}
+     */
+    default void fillShort(final int from,
+                           final int to,
+                           final short value
+    ) throws IndexOutOfBoundsException {
+        Objects.checkFromToIndex(from, to, this.length());
+        for (int i = from; i < to; ++i) {
+            this.storeShort(i, value);
+        }
+    }
+
+    /**
+     * Primitive counterpart of {@link ReadableMemory#forEachIndexed},
+     * passes the values of the slots {@code [from, to)} in index order, widened to {@code int}
+     *
+     * @param from index of the first slot, inclusive
+     * @param to index of the last slot, exclusive
+     * @param action the action
+     * @throws IndexOutOfBoundsException if the range is out of bounds
+     */
+    default void forEachShort(final int from,
+                              final int to,
+                              final IntConsumer action
+    ) throws IndexOutOfBoundsException {
+        Objects.requireNonNull(action);
+        Objects.checkFromToIndex(from, to, this.length());
+        for (int i = from; i < to; ++i) {
+            action.accept(this.fetchShort(i));
+        }
+    }
+
+    /**
+     * Primitive counterpart of {@link ReadableMemory#stream()}, widened to {@code int},
+     * splits the same way, {@code parallel()} makes it parallel
+     *
+     * @return sequential stream over the current length of the memory
+     */
+    default IntStream intStream() {
+        return StreamSupport.intStream(new MemorySpliterator.Ints(
+                this::fetchShort, this::forEachShort, 0, this.length()), false);
+    }
+}
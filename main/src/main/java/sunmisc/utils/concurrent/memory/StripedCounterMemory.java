@@ -0,0 +1,239 @@
+package sunmisc.utils.concurrent.memory;
+
+import java.util.Objects;
+import java.util.StringJoiner;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import static java.lang.Integer.numberOfLeadingZeros;
+
+/**
+ * Counters for write-heavy workloads, a {@link java.util.concurrent.atomic.LongAdder}
+ * per slot: every slot has a base value and, once an update of the base
+ * fails under contention, a lazily inflated set of padded cells,
+ * additions are then spread over the cells
+ * <p>{@link #add(int, long)} is the contention-free update,
+ * {@link #fetchAndAdd} is exact only while the slot is not inflated,
+ * after that it returns a weakly consistent estimate of the previous value.
+ * {@link #fetch} sums the base and the cells, concurrent updates may or may not
+ * be reflected in the sum
+ * <p>The other updates ({@code store}, compare-and-exchange, bitwise ones)
+ * first fold the cells into the base and then update the base atomically,
+ * so no addition is lost, but like the sum they are only weakly
+ * consistent with additions racing with them
+ *
+ * @author Sunmisc Unsafe
+ */
+public final class StripedCounterMemory
+        implements BitwiseModifiableMemory<Long>, LongMemory {
+    /**
+     * Number of CPUS, to place bounds on some sizing's
+     */
+    private static final int NCPU = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Cells per inflated slot, the power of two at least NCPU
+     */
+    private static final int STRIPES = 1 << (32 - numberOfLeadingZeros(NCPU - 1));
+
+    /**
+     * Cell k lives at (k + 1) << PAD, 128 bytes apart
+     */
+    private static final int PAD = 4;
+
+    private final AtomicLongArray base;
+    private final AtomicReferenceArray<AtomicLongArray> cells;
+
+    public StripedCounterMemory(final int size) {
+        this.base = new AtomicLongArray(size);
+        this.cells = new AtomicReferenceArray<>(size);
+    }
+
+    @Override
+    public int length() {
+        return this.base.length();
+    }
+
+    /**
+     * Adds the value without reading the counter
+     *
+     * @param index the index
+     * @param value the addend
+     */
+    public void add(final int index, final long value) {
+        AtomicLongArray stripes = this.cells.get(index);
+        if (stripes == null) {
+            final long prev = this.base.get(index);
+            if (this.base.compareAndSet(index, prev, prev + value)) {
+                return;
+            }
+            stripes = this.inflate(index);
+        }
+        stripe(stripes, value);
+    }
+
+    @Override
+    public long fetchAndAddLong(final int index, final long value) {
+        AtomicLongArray stripes = this.cells.get(index);
+        if (stripes == null) {
+            final long prev = this.base.get(index);
+            if (this.base.compareAndSet(index, prev, prev + value)) {
+                return prev;
+            }
+            stripes = this.inflate(index);
+        }
+        stripe(stripes, value);
+        return this.fetchLong(index) - value;
+    }
+
+    @Override
+    public long fetchLong(final int index) {
+        long sum = this.base.get(index);
+        final AtomicLongArray stripes = this.cells.get(index);
+        if (stripes != null) {
+            for (int k = 0; k < STRIPES; ++k) {
+                sum += stripes.get((k + 1) << PAD);
+            }
+        }
+        return sum;
+    }
+
+    @Override
+    public void storeLong(final int index, final long value) {
+        this.fold(index);
+        this.base.set(index, value);
+    }
+
+    @Override
+    public long fetchAndStoreLong(final int index, final long value) {
+        this.fold(index);
+        return this.base.getAndSet(index, value);
+    }
+
+    @Override
+    public long compareAndExchangeLong(final int index,
+                                       final long expectedValue,
+                                       final long newValue) {
+        this.fold(index);
+        return this.base.compareAndExchange(index, expectedValue, newValue);
+    }
+
+    @Override
+    public long fetchAndBitwiseOrLong(final int index, final long mask) {
+        this.fold(index);
+        return this.base.getAndAccumulate(index, mask, (x, m) -> x | m);
+    }
+
+    @Override
+    public long fetchAndBitwiseAndLong(final int index, final long mask) {
+        this.fold(index);
+        return this.base.getAndAccumulate(index, mask, (x, m) -> x & m);
+    }
+
+    @Override
+    public long fetchAndBitwiseXorLong(final int index, final long mask) {
+        this.fold(index);
+        return this.base.getAndAccumulate(index, mask, (x, m) -> x ^ m);
+    }
+
+    private AtomicLongArray inflate(final int index) {
+        final AtomicLongArray created = new AtomicLongArray((STRIPES + 1) << PAD);
+        final AtomicLongArray witness = this.cells.compareAndExchange(index, null, created);
+        return witness == null ? created : witness;
+    }
+
+    // moves the cells into the base, the cells stay inflated
+    private void fold(final int index) {
+        final AtomicLongArray stripes = this.cells.get(index);
+        if (stripes != null) {
+            for (int k = 0; k < STRIPES; ++k) {
+                final long x = stripes.getAndSet((k + 1) << PAD, 0L);
+                if (x != 0L) {
+                    this.base.getAndAdd(index, x);
+                }
+            }
+        }
+    }
+
+    /*
+     * The starting cell is chosen by the thread id,
+     * a failed CAS moves the thread to another cell (xorshift)
+     */
+    private static void stripe(final AtomicLongArray stripes, final long value) {
+        final long id = Thread.currentThread().threadId();
+        int h = (int) ((id * 0x9E3779B97F4A7C15L) >>> 32) | 1;
+        for (;;) {
+            final int slot = ((h & (STRIPES - 1)) + 1) << PAD;
+            final long prev = stripes.get(slot);
+            if (stripes.weakCompareAndSetVolatile(slot, prev, prev + value)) {
+                return;
+            }
+            h ^= h << 13; h ^= h >>> 17; h ^= h << 5;
+        }
+    }
+
+    @Override
+    public Long fetch(final int index) {
+        return this.fetchLong(index);
+    }
+
+    @Override
+    public void store(final int index, final Long value) {
+        this.storeLong(index, value);
+    }
+
+    @Override
+    public Long fetchAndStore(final int index, final Long value) {
+        return this.fetchAndStoreLong(index, value);
+    }
+
+    @Override
+    public Long compareAndExchange(final int index, final Long expected, final Long value) {
+        return this.compareAndExchangeLong(index, expected, value);
+    }
+
+    @Override
+    public boolean compareAndStore(final int index, final Long expected, final Long value) {
+        return this.compareAndStoreLong(index, expected, value);
+    }
+
+    @Override
+    public Long fetchAndAdd(final int index, final Long value) {
+        return this.fetchAndAddLong(index, value);
+    }
+
+    @Override
+    public Long fetchAndBitwiseOr(final int index, final Long mask) {
+        return this.fetchAndBitwiseOrLong(index, mask);
+    }
+
+    @Override
+    public Long fetchAndBitwiseAnd(final int index, final Long mask) {
+        return this.fetchAndBitwiseAndLong(index, mask);
+    }
+
+    @Override
+    public Long fetchAndBitwiseXor(final int index, final Long mask) {
+        return this.fetchAndBitwiseXorLong(index, mask);
+    }
+
+    /**
+     * The new memory starts with the current sums, uninflated
+     */
+    @Override
+    public StripedCounterMemory realloc(final int size) {
+        final StripedCounterMemory next = new StripedCounterMemory(size);
+        for (int i = 0, n = Math.min(size, this.length()); i < n; ++i) {
+            next.base.set(i, this.fetchLong(i));
+        }
+        return next;
+    }
+
+    @Override
+    public String toString() {
+        final StringJoiner joiner = new StringJoiner(
+                ", ", "[", "]");
+        this.forEach(x -> joiner.add(Objects.toString(x)));
+        return joiner.toString();
+    }
+}
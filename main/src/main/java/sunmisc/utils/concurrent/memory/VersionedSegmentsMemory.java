@@ -0,0 +1,303 @@
+package sunmisc.utils.concurrent.memory;
+
+import java.util.Objects;
+import java.util.StringJoiner;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.ObjIntConsumer;
+
+import static java.lang.Integer.numberOfLeadingZeros;
+
+/**
+ * The power-of-two layout of {@link SegmentsMemory} with copy-on-write
+ * snapshots: {@link #snapshot()} freezes the current segments in
+ * {@code O(segments)}, a frozen segment is copied by the first write
+ * that touches it after the snapshot
+ * <p>Reads never wait. Writes register in the current epoch,
+ * a snapshot waits until the writes of the previous epoch finish
+ * (a single operation each), and the first write to a frozen
+ * segment waits until the snapshot has captured the segments
+ *
+ * @author Sunmisc Unsafe
+ * @param <E> the type of elements
+ */
+public final class VersionedSegmentsMemory<E> implements ModifiableMemory<E> {
+    /*
+     * Epochs:
+     *
+     * Every segment is tagged with the epoch it was copied in,
+     * a writer of epoch e writes only into a segment tagged e,
+     * a segment with an older tag is frozen and is copied first
+     *
+     * snapshot: epoch e -> e + 1, wait until the writers of e drain,
+     * capture the segments, publish stable = e + 1.
+     * Writers of e + 1 copy a frozen segment only after stable reaches e + 1,
+     * so the captured segments are never modified afterwards.
+     * The next snapshot starts only once stable == epoch,
+     * so at most two epochs (two parities) have active writers
+     *
+     * Writers of a parity are counted in padded stripes, a thread
+     * always enters and exits through the stripe of its id, so
+     * no stripe goes negative and a zero sum means no active writer
+     */
+    /**
+     * Number of CPUS, to place bounds on some sizing's
+     */
+    private static final int NCPU = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Writer stripes per parity, the power of two at least NCPU
+     */
+    private static final int STRIPES = 1 << (32 - numberOfLeadingZeros(NCPU - 1));
+
+    /**
+     * Stripe k lives at (k + 1) << PAD, 128 bytes apart
+     */
+    private static final int PAD = 4;
+
+    private final AtomicReferenceArray<Segment<E>> segments;
+    private final AtomicLong epoch = new AtomicLong();
+    private final AtomicLong stable = new AtomicLong();
+    private final AtomicLongArray writers = new AtomicLongArray((2 * STRIPES + 1) << PAD);
+
+    public VersionedSegmentsMemory(final int size) {
+        final int n = 32 - numberOfLeadingZeros(Math.max(size - 1, 1));
+        final AtomicReferenceArray<Segment<E>> segments = new AtomicReferenceArray<>(n);
+        segments.set(0, new Segment<>(new ArrayMemory<>(2), 0));
+        for (int p = 1; p < n; ++p) {
+            segments.set(p, new Segment<>(new ArrayMemory<>(1 << p), 0));
+        }
+        this.segments = segments;
+    }
+
+    // a new memory over frozen segments, every one is copied on its first write
+    private VersionedSegmentsMemory(final ReadableMemory<E>[] frozen, final int size) {
+        final int n = Math.max(frozen.length,
+                32 - numberOfLeadingZeros(Math.max(size - 1, 1)));
+        final AtomicReferenceArray<Segment<E>> segments = new AtomicReferenceArray<>(n);
+        for (int p = 0; p < n; ++p) {
+            segments.set(p, p < frozen.length
+                    ? new Segment<>(frozen[p], -1)
+                    : new Segment<>(new ArrayMemory<>(1 << p), 0));
+        }
+        this.segments = segments;
+    }
+
+    /**
+     * Point-in-time view of the memory: it reflects every write
+     * completed before the call and no write started after it
+     *
+     * @return the immutable view
+     */
+    public ReadableMemory<E> snapshot() {
+        for (long e;;) {
+            e = this.stable.get();
+            if (this.epoch.compareAndSet(e, e + 1)) {
+                final int prev = (int) e & 1;
+                // the writers may be descheduled, do not burn their slice
+                while (this.active(prev) != 0) {
+                    Thread.yield();
+                }
+                final AtomicReferenceArray<Segment<E>> segments = this.segments;
+                @SuppressWarnings("unchecked")
+                final ReadableMemory<E>[] frozen = new ReadableMemory[segments.length()];
+                for (int p = 0; p < frozen.length; ++p) {
+                    frozen[p] = segments.get(p).memory();
+                }
+                this.stable.set(e + 1);
+                return new Snapshot<>(frozen);
+            }
+            Thread.yield();
+        }
+    }
+
+    /**
+     * The new memory shares the segments of a snapshot of this one,
+     * both copy them on write
+     */
+    @Override
+    public VersionedSegmentsMemory<E> realloc(final int size) {
+        return new VersionedSegmentsMemory<>(
+                ((Snapshot<E>) this.snapshot()).segments(), size);
+    }
+
+    @Override
+    public int length() {
+        return 1 << this.segments.length();
+    }
+
+    @Override
+    public E fetch(final int index) {
+        final int p = segmentForIndex(index);
+        final int i = indexForSegment(p, index);
+        for (;;) {
+            final Segment<E> segment = this.segments.get(p);
+            final E value = segment.memory().fetch(i);
+            // a replaced segment is frozen, its value may be stale
+            if (this.segments.get(p) == segment) {
+                return value;
+            }
+        }
+    }
+
+    @Override
+    public void store(final int index, final E value) {
+        final int p = segmentForIndex(index);
+        final long e = this.enter();
+        try {
+            this.own(p, e).store(indexForSegment(p, index), value);
+        } finally {
+            this.exit(e);
+        }
+    }
+
+    @Override
+    public E fetchAndStore(final int index, final E value) {
+        final int p = segmentForIndex(index);
+        final long e = this.enter();
+        try {
+            return this.own(p, e).fetchAndStore(indexForSegment(p, index), value);
+        } finally {
+            this.exit(e);
+        }
+    }
+
+    @Override
+    public E compareAndExchange(final int index,
+                                final E expectedValue,
+                                final E newValue) {
+        final int p = segmentForIndex(index);
+        final long e = this.enter();
+        try {
+            return this.own(p, e).compareAndExchange(
+                    indexForSegment(p, index), expectedValue, newValue);
+        } finally {
+            this.exit(e);
+        }
+    }
+
+    @Override
+    public boolean compareAndStore(final int index,
+                                   final E expectedValue,
+                                   final E newValue) {
+        final int p = segmentForIndex(index);
+        final long e = this.enter();
+        try {
+            return this.own(p, e).compareAndStore(
+                    indexForSegment(p, index), expectedValue, newValue);
+        } finally {
+            this.exit(e);
+        }
+    }
+
+    private long enter() {
+        for (;;) {
+            final long e = this.epoch.get();
+            final int stripe = stripe((int) e & 1);
+            this.writers.getAndIncrement(stripe);
+            if (this.epoch.get() == e) {
+                return e;
+            }
+            this.writers.getAndDecrement(stripe);
+        }
+    }
+
+    private void exit(final long epoch) {
+        this.writers.getAndDecrement(stripe((int) epoch & 1));
+    }
+
+    // the stripe of the current thread for the parity
+    private static int stripe(final int parity) {
+        final long id = Thread.currentThread().threadId();
+        final int h = (int) ((id * 0x9E3779B97F4A7C15L) >>> 32);
+        return ((parity * STRIPES + (h & (STRIPES - 1))) + 1) << PAD;
+    }
+
+    // writers of the parity, exact once no writer can enter it
+    private long active(final int parity) {
+        long sum = 0;
+        for (int k = 0; k < STRIPES; ++k) {
+            sum += this.writers.get(((parity * STRIPES + k) + 1) << PAD);
+        }
+        return sum;
+    }
+
+    // the segment p owned by the epoch e, copied if it is frozen
+    private ModifiableMemory<E> own(final int p, final long e) {
+        final Segment<E> segment = this.segments.get(p);
+        if (segment.epoch() == e) {
+            return (ModifiableMemory<E>) segment.memory();
+        }
+        while (this.stable.get() < e) {
+            Thread.yield();
+        }
+        final ReadableMemory<E> frozen = segment.memory();
+        final ModifiableMemory<E> copy = new ArrayMemory<>(frozen.length());
+        frozen.copyTo(copy);
+        final Segment<E> owned = new Segment<>(copy, e);
+        final Segment<E> witness = this.segments.compareAndExchange(p, segment, owned);
+        return (ModifiableMemory<E>) (witness == segment ? owned : witness).memory();
+    }
+
+    // log2
+    private static int segmentForIndex(final int index) {
+        return index < 2 ? 0 : 31 - numberOfLeadingZeros(index);
+    }
+
+    private static int indexForSegment(final int segment, final int index) {
+        return index < 2 ? index : index - (1 << segment);
+    }
+
+    @Override
+    public String toString() {
+        final StringJoiner joiner = new StringJoiner(
+                ", ", "[", "]");
+        this.forEach(x -> joiner.add(Objects.toString(x)));
+        return joiner.toString();
+    }
+
+    // a writable memory tagged with its epoch, or a frozen one tagged -1
+    private record Segment<E>(ReadableMemory<E> memory, long epoch) { }
+
+    private record Snapshot<E>(ReadableMemory<E>[] segments)
+            implements ReadableMemory<E> {
+
+        @Override
+        public int length() {
+            return 1 << this.segments.length;
+        }
+
+        @Override
+        public E fetch(final int index) {
+            final int p = segmentForIndex(index);
+            return this.segments[p].fetch(indexForSegment(p, index));
+        }
+
+        @Override
+        public void forEachIndexed(final int from,
+                                   final int to,
+                                   final ObjIntConsumer<? super E> action) {
+            Objects.requireNonNull(action);
+            Objects.checkFromToIndex(from, to, this.length());
+            for (int index = from; index < to; ) {
+                final int p = segmentForIndex(index);
+                final int start = indexForSegment(p, index);
+                final ReadableMemory<E> segment = this.segments[p];
+                final int n = Math.min(segment.length() - start, to - index);
+                for (int i = start, end = start + n; i < end; ++i) {
+                    action.accept(segment.fetch(i), index + i - start);
+                }
+                index += n;
+            }
+        }
+
+        @Override
+        public String toString() {
+            final StringJoiner joiner = new StringJoiner(
+                    ", ", "[", "]");
+            this.forEach(x -> joiner.add(Objects.toString(x)));
+            return joiner.toString();
+        }
+    }
+}
@@ -1,46 +1,503 @@
 package sunmisc.utils.concurrent.sets;
 
 import sunmisc.utils.Cursor;
-import sunmisc.utils.concurrent.memory.BitwiseModifiableMemory;
 import sunmisc.utils.concurrent.memory.BitwiseSegmentsMemory;
 
 import java.util.AbstractSet;
+import java.util.BitSet;
 import java.util.Iterator;
 import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import static sunmisc.utils.concurrent.memory.BitwiseSegmentsMemory.longs;
 
 public final class ConcurrentBitSet extends AbstractSet<Integer> implements Set<Integer> {
     private static final int ADDRESS_BITS_PER_CELL
             = Integer.numberOfTrailingZeros(Long.SIZE);
     private static final int BITS_PER_CELL =
             1 << ADDRESS_BITS_PER_CELL;
-    private final AtomicReference<BitwiseModifiableMemory<Long>> memory =
+    /**
+     * Words per bulk read of the intersection scans
+     */
+    private static final int SCAN_CHUNK = 1 << 8;
+    /**
+     * Levels of the summary above the words, with 2^25 words
+     * at most the top level has 128 words
+     */
+    private static final int SUMMARY_LEVELS = 3;
+    private final AtomicReference<BitwiseSegmentsMemory<Long>> memory =
             new AtomicReference<>(
                     new BitwiseSegmentsMemory<>(long.class, 4)
             );
+    /*
+     * Summary: bit i of level k + 1 is set if word i of level k
+     * may be non-zero, level 0 being the words. Scans skip
+     * 64 empty words per clear bit and check the words under set ones.
+     * Every update that leaves a word non-zero sets all the bits above it
+     * before it returns. The bits are sticky: removals leave them set,
+     * only clear() resets them, before it empties the words,
+     * so an element added after its word is emptied marks it again
+     */
+    private final AtomicReferenceArray<BitwiseSegmentsMemory<Long>> summary =
+            new AtomicReferenceArray<>(SUMMARY_LEVELS);
+    // element count, every update adds the bits it actually flipped
+    private final LongAdder counter = new LongAdder();
+
+    public ConcurrentBitSet() {
+        for (int level = 0; level < SUMMARY_LEVELS; ++level) {
+            this.summary.set(level, new BitwiseSegmentsMemory<>(long.class, 1));
+        }
+    }
 
     @Override
     public boolean add(final Integer value) {
         final int index = cellIndex(value);
-        if (this.memory.get().length() <= value) {
-            this.memory.updateAndGet(old -> {
-                final int len = Math.max(old.length(), value + 1);
-                return old.realloc(len);
-            });
+        if (this.or(this.grow(index + 1), index, 1L << value) != 0) {
+            this.counter.increment();
+            return true;
+        }
+        return false;
+    }
+
+    private void addCount(final long c) {
+        if (c != 0L) {
+            this.counter.add(c);
+        }
+    }
+
+    // the change of the cardinality of a word from prev to next
+    private static int delta(final long prev, final long next) {
+        return Long.bitCount(next) - Long.bitCount(prev);
+    }
+
+    // the memory of at least the given number of words
+    private BitwiseSegmentsMemory<Long> grow(final int words) {
+        final BitwiseSegmentsMemory<Long> mem = this.memory.get();
+        // the length is in words, not in bits
+        if (mem.length() >= words) {
+            return mem;
+        }
+        // the summary first, every word has its summary bit
+        for (int level = SUMMARY_LEVELS; level > 0; --level) {
+            final int n = ((words - 1) >> (ADDRESS_BITS_PER_CELL * level)) + 1;
+            this.summary.updateAndGet(level - 1, old ->
+                    old.length() >= n ? old : old.realloc(n));
+        }
+        return this.memory.updateAndGet(old ->
+                old.length() >= words ? old : old.realloc(words));
+    }
+
+    // the words of the level, 0 is the set itself
+    private BitwiseSegmentsMemory<Long> level(final int level) {
+        return level == 0 ? this.memory.get() : this.summary.get(level - 1);
+    }
+
+    /*
+     * Sets the summary bits above the word, every level is checked:
+     * an update that set a lower bit may not have reached the upper yet
+     */
+    private void mark(final int word) {
+        for (int level = 1, bit = word; level <= SUMMARY_LEVELS; ++level) {
+            final BitwiseSegmentsMemory<Long> mem = this.summary.get(level - 1);
+            final int index = cellIndex(bit);
+            final long mask = 1L << bit;
+            if ((longs(mem).fetchLong(index) & mask) == 0L) {
+                longs(mem).fetchAndBitwiseOrLong(index, mask);
+            }
+            bit = index;
+        }
+    }
+
+    /*
+     * Atomic word updates, maintain the summary
+     * and return the change of the cardinality
+     */
+
+    private int or(final BitwiseSegmentsMemory<Long> mem,
+                   final int index,
+                   final long mask) {
+        final long prev = longs(mem).fetchAndBitwiseOrLong(index, mask);
+        this.mark(index);
+        return delta(prev, prev | mask);
+    }
+
+    private int and(final BitwiseSegmentsMemory<Long> mem,
+                    final int index,
+                    final long mask) {
+        final long prev = longs(mem).fetchAndBitwiseAndLong(index, mask);
+        return delta(prev, prev & mask);
+    }
+
+    private int xor(final BitwiseSegmentsMemory<Long> mem,
+                    final int index,
+                    final long mask) {
+        final long prev = longs(mem).fetchAndBitwiseXorLong(index, mask);
+        if ((prev ^ mask) != 0L) {
+            this.mark(index);
+        }
+        return delta(prev, prev ^ mask);
+    }
+
+    private int swap(final BitwiseSegmentsMemory<Long> mem,
+                     final int index,
+                     final long word) {
+        final long prev = longs(mem).fetchAndStoreLong(index, word);
+        if (word != 0L) {
+            this.mark(index);
+        }
+        return delta(prev, word);
+    }
+
+    /*
+     * Ranges: the edge words are masked and updated atomically,
+     * the words in between are swapped (or flipped) whole
+     */
+
+    /**
+     * Adds the values of {@code [from, to)}
+     *
+     * @param from the first value
+     * @param to the value after the last one
+     */
+    public void set(final int from, final int to) {
+        Objects.checkFromToIndex(from, to, Integer.MAX_VALUE);
+        if (from == to) {
+            return;
+        }
+        final int first = cellIndex(from), last = cellIndex(to - 1);
+        final BitwiseSegmentsMemory<Long> mem = this.grow(last + 1);
+        final long head = -1L << from, tail = -1L >>> -to;
+        long c;
+        if (first == last) {
+            c = this.or(mem, first, head & tail);
+        } else {
+            c = this.or(mem, first, head);
+            for (int i = first + 1; i < last; ++i) {
+                c += this.swap(mem, i, -1L);
+            }
+            c += this.or(mem, last, tail);
+        }
+        this.addCount(c);
+    }
+
+    /**
+     * Removes the values of {@code [from, to)}
+     *
+     * @param from the first value
+     * @param to the value after the last one
+     */
+    public void clear(final int from, final int to) {
+        Objects.checkFromToIndex(from, to, Integer.MAX_VALUE);
+        final BitwiseSegmentsMemory<Long> mem = this.memory.get();
+        // in long, 2^25 words hold 2^31 bits
+        final int end = (int) Math.min(to, (long) mem.length() << ADDRESS_BITS_PER_CELL);
+        if (from >= end) {
+            return;
+        }
+        final int first = cellIndex(from), last = cellIndex(end - 1);
+        final long head = -1L << from, tail = -1L >>> -end;
+        long c;
+        if (first == last) {
+            c = this.and(mem, first, ~(head & tail));
+        } else {
+            c = this.and(mem, first, ~head);
+            for (int i = first + 1; i < last; ++i) {
+                c += this.swap(mem, i, 0L);
+            }
+            c += this.and(mem, last, ~tail);
+        }
+        this.addCount(c);
+    }
+
+    /**
+     * Adds the absent and removes the present values of {@code [from, to)}
+     *
+     * @param from the first value
+     * @param to the value after the last one
+     */
+    public void flip(final int from, final int to) {
+        Objects.checkFromToIndex(from, to, Integer.MAX_VALUE);
+        if (from == to) {
+            return;
+        }
+        final int first = cellIndex(from), last = cellIndex(to - 1);
+        final BitwiseSegmentsMemory<Long> mem = this.grow(last + 1);
+        final long head = -1L << from, tail = -1L >>> -to;
+        long c;
+        if (first == last) {
+            c = this.xor(mem, first, head & tail);
+        } else {
+            c = this.xor(mem, first, head);
+            for (int i = first + 1; i < last; ++i) {
+                c += this.xor(mem, i, -1L);
+            }
+            c += this.xor(mem, last, tail);
+        }
+        this.addCount(c);
+    }
+
+    /**
+     * @param fromIndex the value to start from
+     * @return the least absent value at or after {@code fromIndex},
+     *         or -1 if every value from there to {@code Integer.MAX_VALUE} is present
+     */
+    public int nextClearBit(final int fromIndex) {
+        Objects.checkIndex(fromIndex, Integer.MAX_VALUE);
+        int u = cellIndex(fromIndex);
+        final BitwiseSegmentsMemory<Long> mem = this.memory.get();
+        final int n = mem.length();
+        if (u >= n) {
+            return fromIndex;
+        }
+        for (long word = ~longs(mem).fetchLong(u) & (-1L << fromIndex);;) {
+            if (word != 0) {
+                return (u * BITS_PER_CELL) + Long.numberOfTrailingZeros(word);
+            } else if (++u >= n) {
+                final long end = (long) n << ADDRESS_BITS_PER_CELL;
+                return end > Integer.MAX_VALUE ? -1 : (int) end;
+            }
+            word = ~longs(mem).fetchLong(u);
+        }
+    }
+
+    /**
+     * @param fromIndex the value to start from, {@code -1} is allowed
+     * @return the greatest present value at or before {@code fromIndex}, or -1
+     */
+    public int previousSetBit(final int fromIndex) {
+        if (fromIndex < -1) {
+            throw new IndexOutOfBoundsException("fromIndex < -1: " + fromIndex);
+        }
+        final BitwiseSegmentsMemory<Long> mem = this.memory.get();
+        int u = cellIndex(fromIndex);
+        long word;
+        if (fromIndex < 0) {
+            return -1;
+        } else if (u >= mem.length()) {
+            u = mem.length() - 1;
+            word = longs(mem).fetchLong(u);
+        } else {
+            word = longs(mem).fetchLong(u) & (-1L >>> ~fromIndex);
+        }
+        for (;;) {
+            if (word != 0) {
+                return (u * BITS_PER_CELL) + (BITS_PER_CELL - 1) - Long.numberOfLeadingZeros(word);
+            } else if (--u < 0) {
+                return -1;
+            }
+            word = longs(mem).fetchLong(u);
+        }
+    }
+
+    /*
+     * Bulk set algebra, word by word: every word of this set
+     * is updated atomically, the set as a whole is not
+     */
+
+    /**
+     * Adds all the elements of {@code other}
+     *
+     * @param other the set to or with
+     */
+    public void or(final ConcurrentBitSet other) {
+        final BitwiseSegmentsMemory<Long> src = other.memory.get();
+        final BitwiseSegmentsMemory<Long> mem = this.grow(src.length());
+        long c = 0;
+        for (int i = 0, n = src.length(); i < n; ++i) {
+            final long word = longs(src).fetchLong(i);
+            if (word != 0L) {
+                c += this.or(mem, i, word);
+            }
+        }
+        this.addCount(c);
+    }
+
+    /**
+     * Retains only the elements of {@code other}
+     *
+     * @param other the set to and with
+     */
+    public void and(final ConcurrentBitSet other) {
+        final BitwiseSegmentsMemory<Long> src = other.memory.get();
+        final BitwiseSegmentsMemory<Long> mem = this.memory.get();
+        long c = 0;
+        for (int i = 0, n = mem.length(), k = src.length(); i < n; ++i) {
+            final long word = i < k ? longs(src).fetchLong(i) : 0L;
+            if (word != -1L) {
+                c += this.and(mem, i, word);
+            }
+        }
+        this.addCount(c);
+    }
+
+    /**
+     * Removes all the elements of {@code other}
+     *
+     * @param other the set to subtract
+     */
+    public void andNot(final ConcurrentBitSet other) {
+        final BitwiseSegmentsMemory<Long> src = other.memory.get();
+        final BitwiseSegmentsMemory<Long> mem = this.memory.get();
+        long c = 0;
+        for (int i = 0, n = Math.min(mem.length(), src.length()); i < n; ++i) {
+            final long word = longs(src).fetchLong(i);
+            if (word != 0L) {
+                c += this.and(mem, i, ~word);
+            }
+        }
+        this.addCount(c);
+    }
+
+    /**
+     * Keeps the elements contained in exactly one of the sets
+     *
+     * @param other the set to xor with
+     */
+    public void xor(final ConcurrentBitSet other) {
+        final BitwiseSegmentsMemory<Long> src = other.memory.get();
+        final BitwiseSegmentsMemory<Long> mem = this.grow(src.length());
+        long c = 0;
+        for (int i = 0, n = src.length(); i < n; ++i) {
+            final long word = longs(src).fetchLong(i);
+            if (word != 0L) {
+                c += this.xor(mem, i, word);
+            }
+        }
+        this.addCount(c);
+    }
+
+    public void or(final BitSet other) {
+        final long[] words = other.toLongArray();
+        final BitwiseSegmentsMemory<Long> mem = this.grow(words.length);
+        long c = 0;
+        for (int i = 0; i < words.length; ++i) {
+            if (words[i] != 0L) {
+                c += this.or(mem, i, words[i]);
+            }
+        }
+        this.addCount(c);
+    }
+
+    public void and(final BitSet other) {
+        final long[] words = other.toLongArray();
+        final BitwiseSegmentsMemory<Long> mem = this.memory.get();
+        long c = 0;
+        for (int i = 0, n = mem.length(); i < n; ++i) {
+            final long word = i < words.length ? words[i] : 0L;
+            if (word != -1L) {
+                c += this.and(mem, i, word);
+            }
+        }
+        this.addCount(c);
+    }
+
+    public void andNot(final BitSet other) {
+        final long[] words = other.toLongArray();
+        final BitwiseSegmentsMemory<Long> mem = this.memory.get();
+        long c = 0;
+        for (int i = 0, n = Math.min(mem.length(), words.length); i < n; ++i) {
+            if (words[i] != 0L) {
+                c += this.and(mem, i, ~words[i]);
+            }
+        }
+        this.addCount(c);
+    }
+
+    public void xor(final BitSet other) {
+        final long[] words = other.toLongArray();
+        final BitwiseSegmentsMemory<Long> mem = this.grow(words.length);
+        long c = 0;
+        for (int i = 0; i < words.length; ++i) {
+            if (words[i] != 0L) {
+                c += this.xor(mem, i, words[i]);
+            }
+        }
+        this.addCount(c);
+    }
+
+    /**
+     * @param other the other set
+     * @return true if the sets have a common element
+     */
+    public boolean intersects(final ConcurrentBitSet other) {
+        return intersection(this.memory.get(), other.memory.get(), true) != 0;
+    }
+
+    public boolean intersects(final BitSet other) {
+        return intersection(this.memory.get(), other.toLongArray(), true) != 0;
+    }
+
+    /**
+     * The size of the intersection, without materializing it
+     *
+     * @param other the other set
+     * @return the number of common elements
+     */
+    public long andCardinality(final ConcurrentBitSet other) {
+        return intersection(this.memory.get(), other.memory.get(), false);
+    }
+
+    public long andCardinality(final BitSet other) {
+        return intersection(this.memory.get(), other.toLongArray(), false);
+    }
+
+    /*
+     * Words are read in bulk into plain arrays, so the counting loop
+     * runs over arrays and is a candidate for auto-vectorization
+     */
+    private static long intersection(final BitwiseSegmentsMemory<Long> a,
+                                     final BitwiseSegmentsMemory<Long> b,
+                                     final boolean any) {
+        final int n = Math.min(a.length(), b.length());
+        final long[] x = new long[Math.min(n, SCAN_CHUNK)], y = new long[x.length];
+        long count = 0;
+        for (int from = 0; from < n && (count == 0 || !any); from += SCAN_CHUNK) {
+            final int k = Math.min(SCAN_CHUNK, n - from);
+            longs(a).fetchRangeLong(from, x, 0, k);
+            longs(b).fetchRangeLong(from, y, 0, k);
+            count += andCount(x, y, 0, k);
+        }
+        return count;
+    }
+
+    private static long intersection(final BitwiseSegmentsMemory<Long> a,
+                                     final long[] words,
+                                     final boolean any) {
+        final int n = Math.min(a.length(), words.length);
+        final long[] x = new long[Math.min(n, SCAN_CHUNK)];
+        long count = 0;
+        for (int from = 0; from < n && (count == 0 || !any); from += SCAN_CHUNK) {
+            final int k = Math.min(SCAN_CHUNK, n - from);
+            longs(a).fetchRangeLong(from, x, 0, k);
+            count += andCount(x, words, from, k);
+        }
+        return count;
+    }
+
+    private static long andCount(final long[] x,
+                                 final long[] y,
+                                 final int offset,
+                                 final int n) {
+        long count = 0;
+        for (int i = 0; i < n; ++i) {
+            count += Long.bitCount(x[i] & y[offset + i]);
         }
-        final long mask = 1L << value;
-        return (this.memory.get().fetchAndBitwiseOr(index, mask) & mask) == 0;
+        return count;
     }
 
     @Override
     public boolean remove(final Object value) {
         final int bitIndex = (int) value;
         final int index = cellIndex(bitIndex);
-        final BitwiseModifiableMemory<Long> mem = this.memory.get();
+        final BitwiseSegmentsMemory<Long> mem = this.memory.get();
         if (index < mem.length()) {
-            final long mask = 1L << bitIndex;
-            return (mem.fetchAndBitwiseAnd(index, ~mask) & mask) != 0;
+            if (this.and(mem, index, ~(1L << bitIndex)) != 0) {
+                this.counter.decrement();
+                return true;
+            }
         }
         return false;
     }
@@ -49,40 +506,54 @@ public final class ConcurrentBitSet extends AbstractSet<Integer> implements Set<
     public boolean contains(final Object o) {
         final int bitIndex = (int) o;
         final int index = cellIndex(bitIndex);
-        final BitwiseModifiableMemory<Long> mem = this.memory.get();
-        return index < mem.length() && (mem.fetch(index) & (1L << bitIndex)) != 0;
+        final BitwiseSegmentsMemory<Long> mem = this.memory.get();
+        return index < mem.length() && (longs(mem).fetchLong(index) & (1L << bitIndex)) != 0;
     }
 
+    /**
+     * The sum of the striped counter, does not touch the words.
+     * Exact when no update is in progress, under updates it may lag
+     * behind the words briefly, see {@link #cardinality()}
+     */
     @Override
     public int size() {
-        final BitwiseModifiableMemory<Long> mem = this.memory.get();
-        final int n = mem.length();
-        int sum = 0;
-        for (int i = 0; i < n; ++i) {
-            sum += Long.bitCount(mem.fetch(i));
-        }
-        return sum;
+        // let's handle the overflow
+        return Math.clamp(this.counter.sum(), 0, Integer.MAX_VALUE);
     }
 
     @Override
     public boolean isEmpty() {
-        final BitwiseModifiableMemory<Long> mem = this.memory.get();
+        return this.counter.sum() <= 0L;
+    }
+
+    /**
+     * Counts the elements by scanning every word
+     *
+     * @return the number of elements
+     */
+    public int cardinality() {
+        final BitwiseSegmentsMemory<Long> mem = this.memory.get();
         final int n = mem.length();
+        int sum = 0;
         for (int i = 0; i < n; ++i) {
-            if (mem.fetch(i) != 0) {
-                return false;
-            }
+            sum += Long.bitCount(longs(mem).fetchLong(i));
         }
-        return true;
+        return sum;
     }
 
     @Override
     public void clear() {
-        final BitwiseModifiableMemory<Long> mem = this.memory.get();
+        for (int level = 0; level < SUMMARY_LEVELS; ++level) {
+            final BitwiseSegmentsMemory<Long> bits = this.summary.get(level);
+            longs(bits).fillLong(0, bits.length(), 0L);
+        }
+        final BitwiseSegmentsMemory<Long> mem = this.memory.get();
         final int n = mem.length();
+        long c = 0;
         for (int i = 0; i < n; ++i) {
-            mem.store(i,0L);
+            c += this.swap(mem, i, 0L);
         }
+        this.addCount(c);
     }
 
     private static int cellIndex(final int bitIndex) {
@@ -104,28 +575,38 @@ public final class ConcurrentBitSet extends AbstractSet<Integer> implements Set<
         );
     }
 
+    // -1 past the last word, fromIndex overflows past the last bit
     private int nextSetBit(final int fromIndex) {
+        return fromIndex < 0 ? -1 : this.nextSetBit(0, fromIndex);
+    }
+
+    // the least set bit of the level at or after fromIndex, or -1
+    private int nextSetBit(final int level, final int fromIndex) {
+        final BitwiseSegmentsMemory<Long> mem = this.level(level);
+        final int n = mem.length();
         int u = cellIndex(fromIndex);
-        final BitwiseModifiableMemory<Long> mem = this.memory.get();
-        if (u >= mem.length()) {
-            throw new IndexOutOfBoundsException();
+        if (u >= n) {
+            return -1;
         }
-        for (long word = mem.fetch(u) & (-1L << fromIndex);;) {
+        for (long word = longs(mem).fetchLong(u) & (-1L << fromIndex);;) {
             if (word != 0) {
                 return (u * BITS_PER_CELL) + Long.numberOfTrailingZeros(word);
-            } else if (++u >= mem.length()) {
+            }
+            // the next non-empty word by the level above
+            u = level == SUMMARY_LEVELS ? u + 1 : this.nextSetBit(level + 1, u + 1);
+            if (u < 0 || u >= n) {
                 return -1;
             }
-            word = mem.fetch(u);
+            word = longs(mem).fetchLong(u);
         }
     }
 
     @Override
     public int hashCode() {
-        final BitwiseModifiableMemory<Long> mem = this.memory.get();
+        final BitwiseSegmentsMemory<Long> mem = this.memory.get();
         long h = 1234;
         for (int i = mem.length(); --i >= 0; ) {
-            h ^= mem.fetch(i) * (i + 1);
+            h ^= longs(mem).fetchLong(i) * (i + 1);
         }
         return Long.hashCode(h);
     }
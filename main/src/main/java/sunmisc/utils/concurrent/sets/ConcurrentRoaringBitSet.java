@@ -0,0 +1,646 @@
+package sunmisc.utils.concurrent.sets;
+
+import sunmisc.utils.Cursor;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A compressed concurrent set of non-negative integers in the manner
+ * of Roaring bitmaps: values are split into chunks of 2^16 by their
+ * high bits, every chunk is a sorted array, a bitmap or a list of runs,
+ * whichever is smaller, so sparse sets take space proportional
+ * to the number of values rather than to the largest value
+ * <p>Reads are lock-free. Writes to different chunks never contend:
+ * array and run chunks are immutable and replaced by CAS,
+ * bitmap chunks are updated in place word by word.
+ * A bitmap that shrinks is converted back, writers to that chunk
+ * wait for the conversion (a single copy of the chunk), run lists
+ * that outgrow an array or a bitmap are converted on the update
+ * <p>Iteration and {@link #size()} are weakly consistent
+ *
+ * @author Sunmisc Unsafe
+ */
+public final class ConcurrentRoaringBitSet
+        extends AbstractSet<Integer> implements Set<Integer> {
+    /*
+     * Thresholds (in values of a chunk):
+     * an array holds at most 4096 values (8 KiB, the size of a bitmap),
+     * a bitmap converts back to an array below 2048 values,
+     * the gap keeps a chunk from flipping on every update
+     */
+    private static final int CHUNK_BITS = 16;
+    private static final int ARRAY_MAX = 1 << 12;
+    private static final int BITMAP_MIN = 1 << 11;
+    private static final int BITMAP_WORDS = (1 << CHUNK_BITS) / Long.SIZE;
+    // two levels of chunk tables: 128 x 256 chunks cover [0, 2^31)
+    private static final int TABLE_BITS = 8;
+    private static final int TABLE_SIZE = 1 << TABLE_BITS;
+    private static final int TABLES = 1 << (31 - CHUNK_BITS - TABLE_BITS);
+
+    private final AtomicReferenceArray<AtomicReferenceArray<Container>> tables
+            = new AtomicReferenceArray<>(TABLES);
+
+    @Override
+    public boolean add(final Integer value) {
+        final int v = checkValue(value), low = v & 0xFFFF;
+        final AtomicReferenceArray<Container> table = this.table(v, true);
+        final int slot = slotOf(v);
+        for (;;) {
+            final Container c = table.get(slot);
+            if (c instanceof final Bitmap b) {
+                final int r = b.add(low);
+                if (r >= 0) {
+                    return r > 0;
+                }
+                Thread.yield(); // frozen, the chunk is being converted
+            } else if (c == null) {
+                if (table.compareAndSet(slot, null, new Array(new char[]{(char) low}))) {
+                    return true;
+                }
+            } else if (c.contains(low)) {
+                return false;
+            } else if (table.compareAndSet(slot, c, c.with(low))) {
+                return true;
+            }
+        }
+    }
+
+    @Override
+    public boolean remove(final Object o) {
+        if (!(o instanceof final Integer value) || value < 0) {
+            return false;
+        }
+        final int v = value, low = v & 0xFFFF;
+        final AtomicReferenceArray<Container> table = this.table(v, false);
+        if (table == null) {
+            return false;
+        }
+        final int slot = slotOf(v);
+        for (;;) {
+            final Container c = table.get(slot);
+            if (c == null || !c.contains(low)) {
+                return false;
+            } else if (c instanceof final Bitmap b) {
+                final int r = b.remove(low);
+                if (r >= 0) {
+                    if (r > 0 && b.cardinality() < BITMAP_MIN) {
+                        convert(table, slot, b);
+                    }
+                    return r > 0;
+                }
+                Thread.yield();
+            } else if (table.compareAndSet(slot, c, c.without(low))) {
+                return true;
+            }
+        }
+    }
+
+    @Override
+    public boolean contains(final Object o) {
+        if (!(o instanceof final Integer value) || value < 0) {
+            return false;
+        }
+        final AtomicReferenceArray<Container> table = this.table(value, false);
+        if (table == null) {
+            return false;
+        }
+        final Container c = table.get(slotOf(value));
+        return c != null && c.contains(value & 0xFFFF);
+    }
+
+    @Override
+    public int size() {
+        long sum = 0;
+        for (int t = 0; t < TABLES; ++t) {
+            final AtomicReferenceArray<Container> table = this.tables.get(t);
+            if (table != null) {
+                for (int s = 0; s < TABLE_SIZE; ++s) {
+                    final Container c = table.get(s);
+                    if (c != null) {
+                        sum += c.cardinality();
+                    }
+                }
+            }
+        }
+        return (int) Math.min(sum, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return this.nextSetBit(0) < 0;
+    }
+
+    @Override
+    public void clear() {
+        for (int t = 0; t < TABLES; ++t) {
+            this.tables.set(t, null);
+        }
+    }
+
+    /**
+     * Converts every chunk to its smallest form, for example
+     * long runs of consecutive values to a run list
+     */
+    public void optimize() {
+        for (int t = 0; t < TABLES; ++t) {
+            final AtomicReferenceArray<Container> table = this.tables.get(t);
+            if (table == null) {
+                continue;
+            }
+            for (int s = 0; s < TABLE_SIZE; ++s) {
+                final Container c = table.get(s);
+                if (c instanceof final Bitmap b) {
+                    if (b.runs() * 4 < Bitmap.BYTES || b.cardinality() < ARRAY_MAX) {
+                        convert(table, s, b);
+                    }
+                } else if (c != null) {
+                    final Container best = compress(c.values(), c.cardinality());
+                    table.compareAndSet(s, c, best);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the bytes taken by the chunks, without the object headers
+     */
+    public long footprint() {
+        long bytes = 0;
+        for (int t = 0; t < TABLES; ++t) {
+            final AtomicReferenceArray<Container> table = this.tables.get(t);
+            if (table != null) {
+                bytes += (long) TABLE_SIZE * Integer.BYTES;
+                for (int s = 0; s < TABLE_SIZE; ++s) {
+                    final Container c = table.get(s);
+                    if (c != null) {
+                        bytes += c.footprint();
+                    }
+                }
+            }
+        }
+        return bytes;
+    }
+
+    // freezes the bitmap and replaces it with its smallest form
+    private static void convert(final AtomicReferenceArray<Container> table,
+                                final int slot,
+                                final Bitmap bitmap) {
+        if (bitmap.freeze()) {
+            final int n = bitmap.cardinality();
+            table.compareAndSet(slot, bitmap, n == 0 ? null : compress(bitmap.values(), n));
+        }
+    }
+
+    // the smallest container for the sorted values
+    private static Container compress(final char[] values, final int n) {
+        int runs = 0;
+        for (int i = 0; i < n; ++i) {
+            if (i == 0 || values[i] != values[i - 1] + 1) {
+                ++runs;
+            }
+        }
+        final int array = n * Character.BYTES, run = runs * 2 * Character.BYTES;
+        if (run < array && run < Bitmap.BYTES) {
+            final char[] pairs = new char[runs * 2];
+            for (int i = 0, r = -1; i < n; ++i) {
+                if (i == 0 || values[i] != values[i - 1] + 1) {
+                    pairs[++r * 2] = values[i];
+                }
+                pairs[r * 2 + 1] = values[i];
+            }
+            return new Runs(pairs);
+        } else if (n <= ARRAY_MAX) {
+            return new Array(Arrays.copyOf(values, n));
+        }
+        return Bitmap.of(values, n);
+    }
+
+    private AtomicReferenceArray<Container> table(final int value, final boolean create) {
+        final int t = value >>> (CHUNK_BITS + TABLE_BITS);
+        final AtomicReferenceArray<Container> table = this.tables.get(t);
+        if (table != null || !create) {
+            return table;
+        }
+        final AtomicReferenceArray<Container> created = new AtomicReferenceArray<>(TABLE_SIZE);
+        final AtomicReferenceArray<Container> witness = this.tables.compareAndExchange(t, null, created);
+        return witness == null ? created : witness;
+    }
+
+    private static int slotOf(final int value) {
+        return (value >>> CHUNK_BITS) & (TABLE_SIZE - 1);
+    }
+
+    private static int checkValue(final Integer value) {
+        if (value < 0) {
+            throw new IndexOutOfBoundsException("negative value: " + value);
+        }
+        return value;
+    }
+
+    private int nextSetBit(final int fromIndex) {
+        for (int chunk = fromIndex >>> CHUNK_BITS,
+             low = fromIndex & 0xFFFF,
+             n = TABLES << TABLE_BITS; chunk < n; ++chunk, low = 0) {
+            final AtomicReferenceArray<Container> table = this.tables.get(chunk >>> TABLE_BITS);
+            if (table == null) {
+                chunk |= TABLE_SIZE - 1; // skip the whole table
+                continue;
+            }
+            final Container c = table.get(chunk & (TABLE_SIZE - 1));
+            final int next;
+            if (c != null && (next = c.nextSetBit(low)) >= 0) {
+                return chunk << CHUNK_BITS | next;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public Iterator<Integer> iterator() {
+        final int i = this.nextSetBit(0);
+        return new Cursor.CursorAsIterator<>(i < 0
+                ? Cursor.empty()
+                : new CursorImpl(this, i)
+        );
+    }
+
+    private sealed interface Container permits Array, Runs, Bitmap {
+
+        boolean contains(int low);
+
+        int cardinality();
+
+        // the least value >= low or -1
+        int nextSetBit(int low);
+
+        // copy-on-write updates of immutable containers
+        default Container with(final int low) {
+            throw new UnsupportedOperationException();
+        }
+
+        default Container without(final int low) {
+            throw new UnsupportedOperationException();
+        }
+
+        // the sorted values, the first cardinality() are valid
+        char[] values();
+
+        long footprint();
+    }
+
+    private record Array(char[] array) implements Container {
+
+        @Override
+        public boolean contains(final int low) {
+            return Arrays.binarySearch(this.array, (char) low) >= 0;
+        }
+
+        @Override
+        public int cardinality() {
+            return this.array.length;
+        }
+
+        @Override
+        public int nextSetBit(final int low) {
+            final int i = Arrays.binarySearch(this.array, (char) low);
+            final int next = i >= 0 ? i : -i - 1;
+            return next < this.array.length ? this.array[next] : -1;
+        }
+
+        @Override
+        public Container with(final int low) {
+            final char[] a = this.array;
+            final int i = -Arrays.binarySearch(a, (char) low) - 1;
+            final char[] next = new char[a.length + 1];
+            System.arraycopy(a, 0, next, 0, i);
+            next[i] = (char) low;
+            System.arraycopy(a, i, next, i + 1, a.length - i);
+            return next.length > ARRAY_MAX ? Bitmap.of(next, next.length) : new Array(next);
+        }
+
+        @Override
+        public Container without(final int low) {
+            final char[] a = this.array;
+            if (a.length == 1) {
+                return null;
+            }
+            final int i = Arrays.binarySearch(a, (char) low);
+            final char[] next = new char[a.length - 1];
+            System.arraycopy(a, 0, next, 0, i);
+            System.arraycopy(a, i + 1, next, i, a.length - i - 1);
+            return new Array(next);
+        }
+
+        @Override
+        public char[] values() {
+            return this.array;
+        }
+
+        @Override
+        public long footprint() {
+            return (long) this.array.length * Character.BYTES;
+        }
+    }
+
+    // inclusive [start, end] pairs, sorted and not adjacent
+    private record Runs(char[] runs) implements Container {
+
+        // the last run starting at or before low, or -1
+        private int runOf(final int low) {
+            int lo = 0, hi = this.runs.length / 2 - 1;
+            while (lo <= hi) {
+                final int mid = (lo + hi) >>> 1;
+                if (this.runs[mid * 2] <= low) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            return hi;
+        }
+
+        private int start(final int run) {
+            return this.runs[run * 2];
+        }
+
+        private int end(final int run) {
+            return this.runs[run * 2 + 1];
+        }
+
+        @Override
+        public boolean contains(final int low) {
+            final int r = this.runOf(low);
+            return r >= 0 && low <= this.end(r);
+        }
+
+        @Override
+        public int cardinality() {
+            int sum = 0;
+            for (int r = 0, n = this.runs.length / 2; r < n; ++r) {
+                sum += this.end(r) - this.start(r) + 1;
+            }
+            return sum;
+        }
+
+        @Override
+        public int nextSetBit(final int low) {
+            final int r = this.runOf(low);
+            if (r >= 0 && low <= this.end(r)) {
+                return low;
+            }
+            return r + 1 < this.runs.length / 2 ? this.start(r + 1) : -1;
+        }
+
+        @Override
+        public Container with(final int low) {
+            final int r = this.runOf(low), n = this.runs.length / 2;
+            final boolean left = r >= 0 && this.end(r) + 1 == low;
+            final boolean right = r + 1 < n && this.start(r + 1) - 1 == low;
+            final char[] next;
+            if (left && right) {
+                // the value joins two runs
+                next = new char[this.runs.length - 2];
+                System.arraycopy(this.runs, 0, next, 0, r * 2 + 1);
+                next[r * 2 + 1] = this.runs[(r + 1) * 2 + 1];
+                System.arraycopy(this.runs, (r + 2) * 2, next, (r + 1) * 2, (n - r - 2) * 2);
+            } else if (left) {
+                next = this.runs.clone();
+                next[r * 2 + 1] = (char) low;
+            } else if (right) {
+                next = this.runs.clone();
+                next[(r + 1) * 2] = (char) low;
+            } else {
+                next = new char[this.runs.length + 2];
+                System.arraycopy(this.runs, 0, next, 0, (r + 1) * 2);
+                next[(r + 1) * 2] = next[(r + 1) * 2 + 1] = (char) low;
+                System.arraycopy(this.runs, (r + 1) * 2, next, (r + 2) * 2, (n - r - 1) * 2);
+            }
+            return fit(next, this.cardinality() + 1);
+        }
+
+        @Override
+        public Container without(final int low) {
+            final int r = this.runOf(low), n = this.runs.length / 2;
+            final int start = this.start(r), end = this.end(r);
+            final char[] next;
+            if (start == end) {
+                if (n == 1) {
+                    return null;
+                }
+                next = new char[this.runs.length - 2];
+                System.arraycopy(this.runs, 0, next, 0, r * 2);
+                System.arraycopy(this.runs, (r + 1) * 2, next, r * 2, (n - r - 1) * 2);
+            } else if (low == start) {
+                next = this.runs.clone();
+                next[r * 2] = (char) (low + 1);
+            } else if (low == end) {
+                next = this.runs.clone();
+                next[r * 2 + 1] = (char) (low - 1);
+            } else {
+                // splits the run
+                next = new char[this.runs.length + 2];
+                System.arraycopy(this.runs, 0, next, 0, r * 2 + 1);
+                next[r * 2 + 1] = (char) (low - 1);
+                next[(r + 1) * 2] = (char) (low + 1);
+                System.arraycopy(this.runs, r * 2 + 1, next, (r + 1) * 2 + 1, (n - r) * 2 - 1);
+            }
+            return fit(next, this.cardinality() - 1);
+        }
+
+        // converts back once the runs take more than an array or a bitmap
+        private static Container fit(final char[] runs, final int cardinality) {
+            final int bytes = runs.length * Character.BYTES;
+            final Runs next = new Runs(runs);
+            return bytes > cardinality * Character.BYTES || bytes > Bitmap.BYTES
+                    ? compress(next.values(), cardinality)
+                    : next;
+        }
+
+        @Override
+        public char[] values() {
+            final char[] values = new char[this.cardinality()];
+            for (int r = 0, i = 0, n = this.runs.length / 2; r < n; ++r) {
+                for (int v = this.start(r), end = this.end(r); v <= end; ++v) {
+                    values[i++] = (char) v;
+                }
+            }
+            return values;
+        }
+
+        @Override
+        public long footprint() {
+            return (long) this.runs.length * Character.BYTES;
+        }
+    }
+
+    /*
+     * The only mutable container: words are updated atomically,
+     * state packs the cardinality (high 32 bits), the freeze bit
+     * and the writers in progress (low 31 bits). A writer enters
+     * with one increment and exits with one addition that also
+     * applies its change of the cardinality. The freeze bit stops
+     * the bitmap before a conversion, frozen writers retry
+     * on the container that replaces it
+     */
+    private static final class Bitmap implements Container {
+        static final int BYTES = BITMAP_WORDS * Long.BYTES;
+        static final long WRITERS = Integer.MAX_VALUE;
+        static final long FROZEN = 1L << 31;
+        static final long ONE = 1L << 32;
+
+        final AtomicLongArray words = new AtomicLongArray(BITMAP_WORDS);
+        final AtomicLong state = new AtomicLong();
+
+        static Bitmap of(final char[] values, final int n) {
+            final Bitmap bitmap = new Bitmap();
+            for (int i = 0; i < n; ++i) {
+                final int v = values[i];
+                bitmap.words.setPlain(v >>> 6, bitmap.words.getPlain(v >>> 6) | 1L << v);
+            }
+            bitmap.state.set(n * ONE);
+            return bitmap;
+        }
+
+        // 1 if added, 0 if present, -1 if frozen
+        int add(final int low) {
+            final long mask = 1L << low;
+            // a present value needs no write
+            if ((this.words.get(low >>> 6) & mask) != 0) {
+                return 0;
+            } else if ((this.state.getAndIncrement() & FROZEN) != 0) {
+                this.state.getAndDecrement();
+                return -1;
+            }
+            final boolean added =
+                    (this.words.getAndAccumulate(low >>> 6, mask, (x, m) -> x | m) & mask) == 0;
+            this.state.getAndAdd(added ? ONE - 1 : -1);
+            return added ? 1 : 0;
+        }
+
+        // 1 if removed, 0 if absent, -1 if frozen
+        int remove(final int low) {
+            final long mask = 1L << low;
+            if ((this.words.get(low >>> 6) & mask) == 0) {
+                return 0;
+            } else if ((this.state.getAndIncrement() & FROZEN) != 0) {
+                this.state.getAndDecrement();
+                return -1;
+            }
+            final boolean removed =
+                    (this.words.getAndAccumulate(low >>> 6, ~mask, (x, m) -> x & m) & mask) != 0;
+            this.state.getAndAdd(removed ? -ONE - 1 : -1);
+            return removed ? 1 : 0;
+        }
+
+        // true if this thread froze the bitmap, once the writers drain
+        boolean freeze() {
+            for (long s; ((s = this.state.get()) & FROZEN) == 0;) {
+                if (this.state.compareAndSet(s, s | FROZEN)) {
+                    while ((this.state.get() & WRITERS) != 0) {
+                        Thread.yield();
+                    }
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        int runs() {
+            int runs = 0;
+            long prev = 0;
+            for (int i = 0; i < BITMAP_WORDS; ++i) {
+                final long word = this.words.get(i);
+                // run starts: a set bit whose predecessor is clear
+                runs += Long.bitCount(word & ~(word << 1 | prev >>> 63));
+                prev = word;
+            }
+            return runs;
+        }
+
+        @Override
+        public boolean contains(final int low) {
+            return (this.words.get(low >>> 6) & (1L << low)) != 0;
+        }
+
+        @Override
+        public int cardinality() {
+            // a removal may exit before the addition it undoes
+            return (int) Math.max(this.state.get() >> 32, 0);
+        }
+
+        @Override
+        public int nextSetBit(final int low) {
+            int u = low >>> 6;
+            for (long word = this.words.get(u) & (-1L << low);;) {
+                if (word != 0) {
+                    return u * Long.SIZE + Long.numberOfTrailingZeros(word);
+                } else if (++u >= BITMAP_WORDS) {
+                    return -1;
+                }
+                word = this.words.get(u);
+            }
+        }
+
+        @Override
+        public char[] values() {
+            final char[] values = new char[this.cardinality()];
+            int i = 0;
+            for (int u = 0; u < BITMAP_WORDS && i < values.length; ++u) {
+                for (long word = this.words.get(u); word != 0 && i < values.length; word &= word - 1) {
+                    values[i++] = (char) (u * Long.SIZE + Long.numberOfTrailingZeros(word));
+                }
+            }
+            return values;
+        }
+
+        @Override
+        public long footprint() {
+            return BYTES;
+        }
+    }
+
+    private record CursorImpl(
+            ConcurrentRoaringBitSet bitSet,
+            int nextSetBit
+    ) implements Cursor<Integer> {
+
+        @Override
+        public boolean exists() {
+            return this.nextSetBit >= 0;
+        }
+
+        @Override
+        public Cursor<Integer> next() {
+            final int p = this.nextSetBit;
+            if (p < 0) {
+                throw new IllegalStateException();
+            }
+            return new CursorImpl(this.bitSet,
+                    p == Integer.MAX_VALUE ? -1 : this.bitSet.nextSetBit(p + 1));
+        }
+
+        @Override
+        public Integer element() {
+            final int p = this.nextSetBit;
+            if (p < 0) {
+                throw new IllegalStateException();
+            }
+            return p;
+        }
+
+        @Override
+        public void remove() {
+            final int p = this.nextSetBit;
+            if (p < 0) {
+                throw new IllegalStateException();
+            }
+            this.bitSet.remove(p);
+        }
+    }
+}
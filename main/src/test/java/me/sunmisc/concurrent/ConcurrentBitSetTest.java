@@ -5,6 +5,7 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import sunmisc.utils.concurrent.sets.ConcurrentBitSet;
 
+import java.util.BitSet;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
@@ -60,4 +61,204 @@ public class ConcurrentBitSetTest {
                 "Collections should match"
         );
     }
+
+    @Test
+    public void largeBit() {
+        // the memory grows by words, not by bits
+        final int large = 1 << 26;
+        Assertions.assertTrue(this.bits.add(large));
+        Assertions.assertTrue(this.bits.contains(large));
+        Assertions.assertFalse(this.bits.contains(large - 1));
+    }
+
+    @Test
+    public void lastBitOfMemory() {
+        // the highest bit of the last word, 64 * length - 1
+        final ConcurrentBitSet last = new ConcurrentBitSet();
+        Assertions.assertTrue(last.add(255));
+        int count = 0;
+        for (final int value : last) {
+            Assertions.assertEquals(255, value);
+            ++count;
+        }
+        Assertions.assertEquals(1, count);
+        Assertions.assertEquals("[255]", last.toString());
+
+        final ConcurrentBitSet range = new ConcurrentBitSet();
+        range.set(0, 512);
+        count = 0;
+        for (final int value : range) {
+            Assertions.assertEquals(count++, value);
+        }
+        Assertions.assertEquals(512, count);
+    }
+
+    @Test
+    public void setAlgebra() {
+        final ConcurrentBitSet evens = new ConcurrentBitSet();
+        final BitSet odds = new BitSet();
+        for (int i = 0; i < 1 << 12; i += 2) {
+            evens.add(i);
+            odds.set(i + 1);
+        }
+        // bits holds [0, 16)
+        Assertions.assertEquals(8, this.bits.andCardinality(evens));
+        Assertions.assertEquals(8, this.bits.andCardinality(odds));
+        Assertions.assertTrue(this.bits.intersects(odds));
+        Assertions.assertFalse(evens.intersects(odds));
+
+        final ConcurrentBitSet union = new ConcurrentBitSet();
+        union.or(evens);
+        union.or(odds);
+        Assertions.assertEquals(1 << 12, union.size());
+        union.andNot(odds);
+        Assertions.assertEquals(evens, union);
+        union.xor(this.bits);
+        // 8 evens out, 8 odds in
+        Assertions.assertEquals(1 << 11, union.size());
+        Assertions.assertTrue(union.contains(1) && !union.contains(0) && union.contains(16));
+
+        this.bits.and(evens);
+        Assertions.assertEquals(8, this.bits.size());
+        this.bits.xor(odds);
+        Assertions.assertEquals(8 + (1 << 11), this.bits.size());
+        this.bits.and(odds);
+        Assertions.assertEquals(1 << 11, this.bits.size());
+        Assertions.assertEquals(1 << 11, this.bits.andCardinality(odds));
+    }
+
+    @Test
+    public void rangeBits() {
+        final BitSet expected = new BitSet();
+        expected.set(0, 16);
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < 64; ++i) {
+            final int from = random.nextInt(1 << 12);
+            final int to = from + random.nextInt(1 << 10);
+            switch (i % 3) {
+                case 0 -> {
+                    this.bits.set(from, to);
+                    expected.set(from, to);
+                }
+                case 1 -> {
+                    this.bits.clear(from, to);
+                    expected.clear(from, to);
+                }
+                default -> {
+                    this.bits.flip(from, to);
+                    expected.flip(from, to);
+                }
+            }
+        }
+        Assertions.assertEquals(expected.cardinality(), this.bits.size());
+        for (int i = 0; i < (1 << 13); i += 7) {
+            Assertions.assertEquals(expected.nextClearBit(i), this.bits.nextClearBit(i));
+            Assertions.assertEquals(expected.previousSetBit(i), this.bits.previousSetBit(i));
+        }
+        this.bits.set(0, 1 << 20);
+        Assertions.assertEquals(1 << 20, this.bits.size());
+        Assertions.assertEquals(1 << 20, this.bits.nextClearBit(5));
+        Assertions.assertEquals(-1, this.bits.previousSetBit(-1));
+        this.bits.clear(1, (1 << 20) - 1);
+        Assertions.assertEquals(2, this.bits.size());
+        Assertions.assertEquals(0, this.bits.previousSetBit((1 << 20) - 2));
+        Assertions.assertThrows(IndexOutOfBoundsException.class, () -> this.bits.set(5, 4));
+    }
+
+    @Test
+    public void countedSize() {
+        final int size = 1 << 14;
+        try (final ExecutorService executor = Executors.newWorkStealingPool()) {
+            for (int a = 0; a < size; ++a) {
+                executor.execute(() -> {
+                    final ThreadLocalRandom random = ThreadLocalRandom.current();
+                    final int from = random.nextInt(size);
+                    switch (random.nextInt(4)) {
+                        case 0 -> this.bits.add(from);
+                        case 1 -> this.bits.remove(from);
+                        case 2 -> this.bits.flip(from, from + random.nextInt(256));
+                        default -> this.bits.set(from, from + random.nextInt(256));
+                    }
+                });
+            }
+        }
+        Assertions.assertEquals(this.bits.cardinality(), this.bits.size());
+        this.bits.clear();
+        Assertions.assertTrue(this.bits.isEmpty());
+        Assertions.assertEquals(0, this.bits.cardinality());
+    }
+
+    @Test
+    public void sparseBits() {
+        final BitSet expected = new BitSet();
+        this.bits.clear();
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < 256; ++i) {
+            final int value = random.nextInt(1 << 26);
+            this.bits.add(value);
+            expected.set(value);
+        }
+        final int last = expected.length() - 1;
+        this.bits.remove(last);
+        expected.clear(last);
+        Assertions.assertEquals(expected.stream().boxed().toList(),
+                this.bits.stream().toList());
+
+        try (final ExecutorService executor = Executors.newWorkStealingPool()) {
+            for (int a = 0; a < 1 << 12; ++a) {
+                executor.execute(() -> {
+                    final int value = ThreadLocalRandom.current().nextInt(1 << 20);
+                    this.bits.add(value);
+                    this.bits.remove(value ^ 1);
+                });
+            }
+        }
+        int count = 0;
+        for (final int ignored : this.bits) {
+            ++count;
+        }
+        Assertions.assertEquals(this.bits.cardinality(), count);
+        this.bits.clear();
+        Assertions.assertFalse(this.bits.iterator().hasNext());
+    }
+
+    @Test
+    public void hugeRange() {
+        // 2^25 words, the bit count no longer fits in an int
+        final int huge = 1 << 30;
+        this.bits.add(huge);
+        this.bits.clear(0, 10);
+        Assertions.assertFalse(this.bits.contains(5));
+        Assertions.assertTrue(this.bits.contains(huge));
+        Assertions.assertEquals(16, this.bits.nextClearBit(10));
+        Assertions.assertEquals(huge + 1, this.bits.nextClearBit(huge));
+        Assertions.assertEquals(huge, this.bits.previousSetBit(Integer.MAX_VALUE));
+        this.bits.clear(huge, Integer.MAX_VALUE);
+        Assertions.assertEquals(15, this.bits.previousSetBit(Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void refilledWord() throws Exception {
+        this.bits.clear();
+        final int rounds = 1 << 14;
+        try (final ExecutorService executor = Executors.newFixedThreadPool(2)) {
+            // empties word 1 over and over
+            final var emptier = executor.submit(() -> {
+                for (int i = 0; i < rounds; ++i) {
+                    this.bits.add(64);
+                    this.bits.remove(64);
+                }
+            });
+            // refills it and iterates straight away
+            final var refiller = executor.submit(() -> {
+                for (int i = 0; i < rounds; ++i) {
+                    this.bits.add(65);
+                    Assertions.assertTrue(this.bits.stream().anyMatch(x -> x == 65));
+                    this.bits.remove(65);
+                }
+            });
+            emptier.get();
+            refiller.get();
+        }
+    }
 }
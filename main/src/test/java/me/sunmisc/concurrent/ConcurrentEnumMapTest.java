@@ -13,6 +13,7 @@ import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public final class ConcurrentEnumMapTest {
     private ConcurrentMap<Letter, Integer> map;
@@ -52,6 +53,23 @@ public final class ConcurrentEnumMapTest {
         );
     }
 
+    @Test
+    public void computeBacksOff() {
+        final AtomicInteger pauses = new AtomicInteger();
+        final ConcurrentMap<Letter, Integer> backoff =
+                new ConcurrentEnumMap<>(Letter.class, failures -> pauses.incrementAndGet());
+        // the first remapping races with a put, its CAS fails once
+        final Integer value = backoff.compute(Letter.A, (letter, prev) -> {
+            if (prev == null) {
+                backoff.put(letter, 100);
+            }
+            return 1;
+        });
+        Assertions.assertEquals(1, value);
+        Assertions.assertEquals(1, backoff.get(Letter.A));
+        Assertions.assertEquals(1, pauses.get());
+    }
+
     public enum Letter {
         A, B, C, D, E, F, G, H, I, J, K, L, M, N, O, P, Q, R, S, T, U, V, W, X, Y, Z;
 
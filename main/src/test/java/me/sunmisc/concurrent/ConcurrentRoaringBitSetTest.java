@@ -0,0 +1,109 @@
+package me.sunmisc.concurrent;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import sunmisc.utils.concurrent.sets.ConcurrentRoaringBitSet;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+
+public class ConcurrentRoaringBitSetTest {
+
+    @Test
+    public void insertBit() {
+        final ConcurrentRoaringBitSet bits = new ConcurrentRoaringBitSet();
+        final Map<Integer, Boolean> hash = new ConcurrentHashMap<>();
+        final int size = 1 << 14;
+        try (final ExecutorService executor = Executors.newWorkStealingPool()) {
+            for (int a = 0; a < size; ++a) {
+                executor.execute(() -> {
+                    // a dense chunk (bitmap) and sparse ones (arrays)
+                    final ThreadLocalRandom random = ThreadLocalRandom.current();
+                    final int delta = random.nextBoolean()
+                            ? random.nextInt(0, 1 << 16)
+                            : random.nextInt(0, Integer.MAX_VALUE);
+                    bits.add(delta);
+                    hash.put(delta, true);
+                });
+            }
+        }
+        Assertions.assertEquals(hash.keySet(), bits, "Collections should match");
+        Assertions.assertEquals(hash.size(), bits.size());
+    }
+
+    @Test
+    public void deleteBit() {
+        final ConcurrentRoaringBitSet bits = new ConcurrentRoaringBitSet();
+        final int size = 1 << 14;
+        for (int i = 0; i < size; ++i) {
+            bits.add(i);
+        }
+        try (final ExecutorService executor = Executors.newWorkStealingPool()) {
+            for (int a = 0; a < size; a += 2) {
+                final int i = a;
+                // the bitmap shrinks and converts back under the writers
+                executor.execute(() -> Assertions.assertTrue(bits.remove(i)));
+            }
+        }
+        Assertions.assertEquals(size / 2, bits.size());
+        for (int i = 0; i < size; ++i) {
+            Assertions.assertEquals((i & 1) != 0, bits.contains(i));
+        }
+    }
+
+    @Test
+    public void compressBits() {
+        final ConcurrentRoaringBitSet bits = new ConcurrentRoaringBitSet();
+        final int large = Integer.MAX_VALUE - 1;
+        Assertions.assertTrue(bits.add(large));
+        Assertions.assertFalse(bits.add(large));
+        Assertions.assertTrue(bits.contains(large));
+        Assertions.assertTrue(bits.footprint() < 1 << 12);
+        Assertions.assertThrows(
+                IndexOutOfBoundsException.class,
+                () -> bits.add(-1)
+        );
+
+        // a long run takes a few bytes once optimized
+        for (int i = 1 << 20; i < (1 << 20) + (1 << 16); ++i) {
+            bits.add(i);
+        }
+        bits.optimize();
+        Assertions.assertTrue(bits.footprint() < 1 << 12);
+        Assertions.assertEquals((1 << 16) + 1, bits.size());
+        Assertions.assertTrue(bits.remove((1 << 20) + 7));
+        Assertions.assertTrue(bits.add((1 << 20) + 7));
+        Assertions.assertTrue(bits.remove(1 << 20));
+        Assertions.assertFalse(bits.contains(1 << 20));
+        Assertions.assertTrue(bits.contains((1 << 20) + 1));
+        Assertions.assertEquals(1 << 16, bits.size());
+
+        int prev = -1, count = 0;
+        for (final int value : bits) {
+            Assertions.assertTrue(value > prev);
+            prev = value;
+            ++count;
+        }
+        Assertions.assertEquals(1 << 16, count);
+        Assertions.assertEquals(large, prev);
+        bits.clear();
+        Assertions.assertTrue(bits.isEmpty());
+
+        // fragmented runs convert back to a bitmap, not 2 chars per value
+        final int base = 1 << 24;
+        for (int i = base; i < base + (1 << 16); ++i) {
+            bits.add(i);
+        }
+        bits.optimize();
+        for (int i = base; i < base + (1 << 16); i += 2) {
+            Assertions.assertTrue(bits.remove(i));
+        }
+        Assertions.assertEquals(1 << 15, bits.size());
+        Assertions.assertTrue(bits.footprint() <= (1 << 13) + (1 << 10));
+        Assertions.assertTrue(bits.contains(base + 1));
+        Assertions.assertFalse(bits.contains(base + 2));
+    }
+}
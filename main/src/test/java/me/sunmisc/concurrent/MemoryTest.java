@@ -2,19 +2,64 @@ package me.sunmisc.concurrent;
 
 import org.hamcrest.CoreMatchers;
 import org.hamcrest.MatcherAssert;
+import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
 import org.junit.jupiter.params.provider.ValueSource;
+import sunmisc.utils.concurrent.Backoff;
+import sunmisc.utils.concurrent.memory.AccessMode;
+import sunmisc.utils.concurrent.memory.ArrayMemory;
+import sunmisc.utils.concurrent.memory.BitwiseSegmentsMemory;
+import sunmisc.utils.concurrent.memory.DoubleMemory;
+import sunmisc.utils.concurrent.memory.FloatMemory;
+import sunmisc.utils.concurrent.memory.GrowableMemory;
+import sunmisc.utils.concurrent.memory.LazyMemory;
+import sunmisc.utils.concurrent.memory.LongIndexedMemory;
+import sunmisc.utils.concurrent.memory.LongIndexedNativeMemory;
+import sunmisc.utils.concurrent.memory.LongIndexedSegmentsMemory;
+import sunmisc.utils.concurrent.memory.LongMemory;
+import sunmisc.utils.concurrent.memory.MappedSegmentsMemory;
 import sunmisc.utils.concurrent.memory.ModifiableMemory;
+import sunmisc.utils.concurrent.memory.PackedMemory;
+import sunmisc.utils.concurrent.memory.PaddedArrayMemory;
+import sunmisc.utils.concurrent.memory.MultiCasMemory;
+import sunmisc.utils.concurrent.memory.NativeMemory;
+import sunmisc.utils.concurrent.memory.NumericSegmentsMemory;
+import sunmisc.utils.concurrent.memory.SegmentPool;
 import sunmisc.utils.concurrent.memory.SegmentsMemory;
+import sunmisc.utils.concurrent.memory.ReadableMemory;
+import sunmisc.utils.concurrent.memory.StripedCounterMemory;
+import sunmisc.utils.concurrent.memory.VersionedSegmentsMemory;
 
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.List;
 import java.util.Queue;
+import java.util.Spliterator;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static sunmisc.utils.concurrent.memory.BitwiseSegmentsMemory.bytes;
+import static sunmisc.utils.concurrent.memory.BitwiseSegmentsMemory.ints;
+import static sunmisc.utils.concurrent.memory.BitwiseSegmentsMemory.longs;
+import static sunmisc.utils.concurrent.memory.NumericSegmentsMemory.doubles;
+import static sunmisc.utils.concurrent.memory.NumericSegmentsMemory.floats;
+
 public final class MemoryTest {
 
     @Test
@@ -82,4 +127,872 @@ public final class MemoryTest {
             );
         });
     }
+
+    @Test
+    public void nativeMemory() {
+        final int size = 1 << 10;
+        final int threads = 8;
+        try (final NativeMemory<Long> memory = new NativeMemory<>(long.class, size)) {
+            try (final ExecutorService executor = Executors.newWorkStealingPool()) {
+                for (int t = 0; t < threads; ++t) {
+                    executor.execute(() -> {
+                        for (int index = 0; index < size; ++index) {
+                            memory.fetchAndAdd(index, (long) index);
+                        }
+                    });
+                }
+            }
+            try (final NativeMemory<Long> copy = memory.realloc(size << 1)) {
+                for (int index = 0; index < size; ++index) {
+                    final long value = copy.fetch(index);
+                    final long expected = (long) index * threads;
+                    MatcherAssert.assertThat(
+                            String.format(
+                                    "The value of %s at index %s does not match the original: %s",
+                                    value, index, expected
+                            ),
+                            value,
+                            CoreMatchers.equalTo(expected)
+                    );
+                }
+                MatcherAssert.assertThat(
+                        copy.fetch((size << 1) - 1),
+                        CoreMatchers.equalTo(0L)
+                );
+            }
+        }
+    }
+
+    @Test
+    public void mappedMemory(@TempDir final Path dir) throws IOException {
+        final int size = 1 << 12;
+        final Path file = dir.resolve("counters");
+        try (final MappedSegmentsMemory<Long> memory =
+                     new MappedSegmentsMemory<>(file, long.class, 16)) {
+            final MappedSegmentsMemory<Long> grown = memory.realloc(size);
+            for (int index = 0; index < size; ++index) {
+                grown.fetchAndAdd(index, (long) index);
+            }
+            grown.force();
+        }
+        try (final MappedSegmentsMemory<Long> memory =
+                     new MappedSegmentsMemory<>(file, long.class, 2)) {
+            MatcherAssert.assertThat(memory.length(), CoreMatchers.equalTo(size));
+            for (int index = 0; index < size; ++index) {
+                final long value = memory.fetch(index);
+                MatcherAssert.assertThat(
+                        String.format(
+                                "The value of %s at index %s does not match the original: %s",
+                                value, index, index
+                        ),
+                        value,
+                        CoreMatchers.equalTo((long) index)
+                );
+            }
+        }
+    }
+
+    @Test
+    public void primitiveMemory() {
+        final int size = 1 << 10;
+        final BitwiseSegmentsMemory<Long> memory =
+                new BitwiseSegmentsMemory<>(long.class, size);
+        final LongMemory words = longs(memory);
+        try (final ExecutorService executor = Executors.newWorkStealingPool()) {
+            for (int index = 0; index < size; ++index) {
+                final int i = index;
+                executor.execute(() -> {
+                    words.fetchAndAddLong(i, 1L << 40);
+                    memory.transform(i, x -> x + 1);
+                });
+            }
+        }
+        for (int index = 0; index < size; ++index) {
+            MatcherAssert.assertThat(
+                    words.fetchLong(index),
+                    CoreMatchers.equalTo((1L << 40) + 1)
+            );
+        }
+        // the view is typed by the component type and cached
+        MatcherAssert.assertThat(longs(memory), CoreMatchers.sameInstance(words));
+    }
+
+    @Test
+    public void sparseMemory() {
+        final ModifiableMemory<Integer> memory =
+                new SegmentsMemory<Integer>(16, LazyMemory::new)
+                        .realloc(1 << 28);
+        final int[] indexes = {3, 1 << 20, (1 << 28) - 1};
+        for (final int index : indexes) {
+            MatcherAssert.assertThat(memory.fetch(index), CoreMatchers.nullValue());
+            MatcherAssert.assertThat(
+                    memory.compareAndExchange(index, null, index),
+                    CoreMatchers.nullValue()
+            );
+        }
+        for (final int index : indexes) {
+            MatcherAssert.assertThat(memory.fetch(index), CoreMatchers.equalTo(index));
+        }
+        MatcherAssert.assertThat(memory.fetch(1 << 27), CoreMatchers.nullValue());
+        Assertions.assertThrows(
+                IndexOutOfBoundsException.class,
+                () -> memory.fetch(1 << 28)
+        );
+    }
+
+    @Test
+    public void paddedMemory() {
+        final int size = 1 << 8;
+        final ModifiableMemory<Integer> array = new PaddedArrayMemory<>(size);
+        final BitwiseSegmentsMemory<Long> longs =
+                new BitwiseSegmentsMemory<>(long.class, size, true);
+        final LongMemory words = longs(longs);
+        try (final ExecutorService executor = Executors.newWorkStealingPool()) {
+            for (int index = 0; index < size; ++index) {
+                final int i = index;
+                executor.execute(() -> {
+                    array.store(i, i);
+                    words.fetchAndAddLong(i, i);
+                });
+            }
+        }
+        final ModifiableMemory<Integer> grown = array.realloc(size << 1);
+        for (int index = 0; index < size; ++index) {
+            MatcherAssert.assertThat(grown.fetch(index), CoreMatchers.equalTo(index));
+            MatcherAssert.assertThat(words.fetchLong(index), CoreMatchers.equalTo((long) index));
+        }
+        MatcherAssert.assertThat(longs.length(), CoreMatchers.equalTo(size));
+        Assertions.assertThrows(
+                IndexOutOfBoundsException.class,
+                () -> array.fetch(-1)
+        );
+        // the padded length would overflow an int
+        Assertions.assertThrows(
+                IllegalArgumentException.class,
+                () -> new PaddedArrayMemory<>(1 << 26)
+        );
+        Assertions.assertThrows(
+                IllegalArgumentException.class,
+                () -> array.realloc(Integer.MAX_VALUE)
+        );
+        Assertions.assertThrows(
+                IllegalArgumentException.class,
+                () -> new PaddedArrayMemory<>(-1)
+        );
+    }
+
+    @ParameterizedTest
+    @EnumSource(AccessMode.class)
+    public void accessModeMemory(final AccessMode mode) {
+        final int size = 1 << 6;
+        final ModifiableMemory<Integer> array = new ArrayMemory<>(size);
+        final ModifiableMemory<Integer> segments = new SegmentsMemory<>(size);
+        final BitwiseSegmentsMemory<Long> longs =
+                new BitwiseSegmentsMemory<>(long.class, size, true);
+        final ModifiableMemory<Integer> arrayView = array.withMode(mode);
+        final ModifiableMemory<Integer> segmentsView = segments.withMode(mode);
+        final BitwiseSegmentsMemory<Long> longsView = longs.withMode(mode);
+        final LongMemory words = longs(longs);
+        final LongMemory wordsView = longs(longsView);
+        for (int index = 0; index < size; ++index) {
+            arrayView.store(index, index);
+            segmentsView.store(index, index);
+            wordsView.storeLong(index, index);
+            wordsView.fetchAndAddLong(index, index);
+        }
+        for (int index = 0; index < size; ++index) {
+            MatcherAssert.assertThat(array.fetch(index), CoreMatchers.equalTo(index));
+            MatcherAssert.assertThat(segments.fetch(index), CoreMatchers.equalTo(index));
+            MatcherAssert.assertThat(words.fetchLong(index), CoreMatchers.equalTo(2L * index));
+        }
+        MatcherAssert.assertThat(wordsView.compareAndStoreLong(1, 2L, 5L), CoreMatchers.is(true));
+        MatcherAssert.assertThat(wordsView.compareAndStoreLong(1, 2L, 7L), CoreMatchers.is(false));
+        MatcherAssert.assertThat(arrayView.fetchAndStore(3, 9), CoreMatchers.equalTo(3));
+
+        final ModifiableMemory<Integer> grown = segmentsView.realloc(size << 1);
+        grown.store(size, size);
+        MatcherAssert.assertThat(grown.fetch(size), CoreMatchers.equalTo(size));
+        MatcherAssert.assertThat(words.fetchLong(1), CoreMatchers.equalTo(5L));
+        MatcherAssert.assertThat(array.fetch(3), CoreMatchers.equalTo(9));
+
+        // bulk access to padded slots goes slot by slot
+        final long[] range = new long[size];
+        wordsView.fillLong(2, size, -1L);
+        words.fetchRangeLong(0, range, 0, size);
+        MatcherAssert.assertThat(range[1], CoreMatchers.equalTo(5L));
+        MatcherAssert.assertThat(range[size - 1], CoreMatchers.equalTo(-1L));
+        MatcherAssert.assertThat(longs.popCount(), CoreMatchers.equalTo(2L + 64L * (size - 2)));
+    }
+
+    @Test
+    public void growableMemory() {
+        final int size = 1 << 14;
+        final ModifiableMemory<Integer> memory = new GrowableMemory<>(1);
+        try (final ExecutorService executor = Executors.newWorkStealingPool()) {
+            for (int index = 0; index < size; ++index) {
+                final int i = index;
+                executor.execute(() -> {
+                    memory.store(i, i);
+                    // racing with the migration of the same slot
+                    memory.fetchAndStore(i >>> 1, i >>> 1);
+                    memory.compareAndExchange(size + i, null, i);
+                });
+            }
+        }
+        MatcherAssert.assertThat(memory.length() >= size << 1, CoreMatchers.is(true));
+        for (int index = 0; index < size; ++index) {
+            MatcherAssert.assertThat(memory.fetch(index), CoreMatchers.equalTo(index));
+            MatcherAssert.assertThat(memory.fetch(size + index), CoreMatchers.equalTo(index));
+        }
+        MatcherAssert.assertThat(memory.realloc(1), CoreMatchers.sameInstance(memory));
+        MatcherAssert.assertThat(memory.fetch(Integer.MAX_VALUE - 1), CoreMatchers.nullValue());
+        Assertions.assertThrows(
+                IndexOutOfBoundsException.class,
+                () -> memory.store(-1, 0)
+        );
+    }
+
+    @Test
+    public void iterateMemory() {
+        final int size = 1 << 12;
+        final ModifiableMemory<Integer> segments = new SegmentsMemory<>(size);
+        final BitwiseSegmentsMemory<Long> longs = new BitwiseSegmentsMemory<>(long.class, size);
+        final LongMemory words = longs(longs);
+        for (int index = 0; index < size; ++index) {
+            segments.store(index, index);
+            words.storeLong(index, index);
+        }
+        final long expected = (long) size * (size - 1) / 2;
+        MatcherAssert.assertThat(
+                segments.parallelStream().mapToLong(Integer::longValue).sum(),
+                CoreMatchers.equalTo(expected));
+        MatcherAssert.assertThat(
+                longs.parallelStream().mapToLong(Long::longValue).sum(),
+                CoreMatchers.equalTo(expected));
+        MatcherAssert.assertThat(
+                new ArrayMemory<Integer>(size).stream().count(),
+                CoreMatchers.equalTo((long) size));
+        // primitive iteration does not box
+        MatcherAssert.assertThat(
+                words.longStream().parallel().sum(),
+                CoreMatchers.equalTo(expected));
+        final BitwiseSegmentsMemory<Integer> padded =
+                new BitwiseSegmentsMemory<>(int.class, size, true);
+        ints(padded).fillInt(0, size, 3);
+        MatcherAssert.assertThat(
+                ints(padded).intStream().parallel().sum(),
+                CoreMatchers.equalTo(3 * size));
+        final AtomicLong last = new AtomicLong(-1L);
+        words.forEachLong(5, size, value -> {
+            MatcherAssert.assertThat(value, CoreMatchers.equalTo(last.get() < 0 ? 5L : last.get() + 1));
+            last.set(value);
+        });
+        MatcherAssert.assertThat(last.get(), CoreMatchers.equalTo(size - 1L));
+
+        final AtomicInteger next = new AtomicInteger();
+        segments.forEachIndexed(3, size - 1, (element, index) -> {
+            MatcherAssert.assertThat(index, CoreMatchers.equalTo(next.getAndIncrement() + 3));
+            MatcherAssert.assertThat(element, CoreMatchers.equalTo(index));
+        });
+        MatcherAssert.assertThat(next.get(), CoreMatchers.equalTo(size - 4));
+
+        // splits at the segment boundary first
+        final Spliterator<Integer> spliterator = segments.spliterator();
+        final Spliterator<Integer> prefix = spliterator.trySplit();
+        MatcherAssert.assertThat(prefix.estimateSize(), CoreMatchers.equalTo((long) size >> 1));
+        MatcherAssert.assertThat(spliterator.estimateSize(), CoreMatchers.equalTo((long) size >> 1));
+        Assertions.assertThrows(
+                IndexOutOfBoundsException.class,
+                () -> segments.forEachIndexed(0, size + 1, (element, index) -> { })
+        );
+    }
+
+    @Test
+    public void stripedCounterMemory() {
+        final int size = 1 << 3, adds = 1 << 14;
+        final StripedCounterMemory counters = new StripedCounterMemory(size);
+        final AtomicInteger ors = new AtomicInteger();
+        try (final ExecutorService executor = Executors.newWorkStealingPool()) {
+            for (int n = 0; n < adds; ++n) {
+                final int i = n;
+                executor.execute(() -> {
+                    counters.add(i & (size - 1), 2L);
+                    counters.fetchAndAddLong(0, 2L);
+                    if ((i & 0xFF) == 0) {
+                        // folds the cells, no addition may be lost
+                        counters.fetchAndBitwiseOrLong(0, 1L);
+                        ors.incrementAndGet();
+                    }
+                });
+            }
+        }
+        MatcherAssert.assertThat(counters.fetchLong(0),
+                CoreMatchers.equalTo(2L * (adds / size + adds) + 1));
+        for (int index = 1; index < size; ++index) {
+            MatcherAssert.assertThat(counters.fetch(index),
+                    CoreMatchers.equalTo(2L * (adds / size)));
+        }
+        MatcherAssert.assertThat(ors.get(), CoreMatchers.equalTo(adds >> 8));
+        MatcherAssert.assertThat(counters.compareAndStoreLong(1, 2L * (adds / size), 7L),
+                CoreMatchers.is(true));
+        MatcherAssert.assertThat(counters.realloc(size << 1).fetchLong(1),
+                CoreMatchers.equalTo(7L));
+    }
+
+    @Test
+    public void numericMemory() {
+        final int size = 1 << 6, adds = 1 << 12;
+        final NumericSegmentsMemory<Double> doubles =
+                new NumericSegmentsMemory<>(double.class, size);
+        final NumericSegmentsMemory<Float> floats =
+                new NumericSegmentsMemory<>(float.class, size);
+        final BitwiseSegmentsMemory<Long> longs =
+                new BitwiseSegmentsMemory<>(long.class, size);
+        final DoubleMemory doubleView = doubles(doubles);
+        final FloatMemory floatView = floats(floats);
+        try (final ExecutorService executor = Executors.newWorkStealingPool()) {
+            for (int n = 0; n < adds; ++n) {
+                final int i = n;
+                executor.execute(() -> {
+                    doubleView.fetchAndAddDouble(i & (size - 1), 0.5);
+                    floatView.fetchAndMaxFloat(0, i);
+                    floatView.fetchAndMinFloat(1, -i);
+                    longs.fetchAndMax(0, (long) i);
+                });
+            }
+        }
+        for (int index = 0; index < size; ++index) {
+            MatcherAssert.assertThat(doubles.fetch(index),
+                    CoreMatchers.equalTo(0.5 * adds / size));
+        }
+        MatcherAssert.assertThat(floatView.fetchFloat(0), CoreMatchers.equalTo(adds - 1f));
+        MatcherAssert.assertThat(floatView.fetchFloat(1), CoreMatchers.equalTo(1f - adds));
+        MatcherAssert.assertThat(longs.fetch(0), CoreMatchers.equalTo(adds - 1L));
+
+        doubleView.storeDouble(2, Double.NaN);
+        MatcherAssert.assertThat(doubleView.compareAndStoreDouble(2, Double.NaN, 1.0),
+                CoreMatchers.is(true));
+        MatcherAssert.assertThat(doubleView.compareAndStoreDouble(3, -0.0, 1.0),
+                CoreMatchers.is(false));
+        MatcherAssert.assertThat(doubles(doubles.realloc(size << 1)).fetchDouble(2),
+                CoreMatchers.equalTo(1.0));
+        Assertions.assertThrows(
+                IllegalArgumentException.class,
+                () -> new NumericSegmentsMemory<>(long.class, size)
+        );
+    }
+
+    @Test
+    public void channelMemory(@TempDir final Path dir) throws IOException {
+        final int size = 1 << 15;
+        final BitwiseSegmentsMemory<Long> dense = new BitwiseSegmentsMemory<>(long.class, size);
+        final BitwiseSegmentsMemory<Integer> padded =
+                new BitwiseSegmentsMemory<>(int.class, size, true);
+        for (int index = 0; index < size; ++index) {
+            longs(dense).storeLong(index, -index);
+            ints(padded).storeInt(index, index);
+        }
+        final Path longs = dir.resolve("longs"), ints = dir.resolve("ints");
+        try (final FileChannel channel = FileChannel.open(longs, CREATE, WRITE)) {
+            dense.writeTo(channel);
+        }
+        try (final FileChannel channel = FileChannel.open(ints, CREATE, WRITE)) {
+            padded.writeTo(channel);
+        }
+        MatcherAssert.assertThat(Files.size(longs), CoreMatchers.equalTo((long) size * Long.BYTES));
+        try (final FileChannel channel = FileChannel.open(longs, READ);
+             final MappedSegmentsMemory<Long> mapped =
+                     new MappedSegmentsMemory<>(longs, long.class, size)) {
+            final BitwiseSegmentsMemory<Long> read =
+                    BitwiseSegmentsMemory.readFrom(channel, long.class, size);
+            for (int index = 0; index < size; ++index) {
+                MatcherAssert.assertThat(longs(read).fetchLong(index), CoreMatchers.equalTo((long) -index));
+                MatcherAssert.assertThat(mapped.fetch(index), CoreMatchers.equalTo((long) -index));
+            }
+        }
+        try (final FileChannel channel = FileChannel.open(ints, READ);
+             final NativeMemory<Integer> read = NativeMemory.readFrom(channel, int.class, size)) {
+            for (int index = 0; index < size; ++index) {
+                MatcherAssert.assertThat(read.fetch(index), CoreMatchers.equalTo(index));
+            }
+            Assertions.assertThrows(
+                    EOFException.class,
+                    () -> BitwiseSegmentsMemory.readFrom(channel, int.class, size)
+            );
+        }
+        // byte areas go to the channel without a copy
+        final BitwiseSegmentsMemory<Byte> bytes = new BitwiseSegmentsMemory<>(byte.class, size);
+        for (int index = 0; index < size; ++index) {
+            bytes(bytes).storeByte(index, (byte) index);
+        }
+        final Path raw = dir.resolve("bytes");
+        try (final FileChannel channel = FileChannel.open(raw, CREATE, WRITE)) {
+            bytes.writeTo(channel);
+        }
+        try (final FileChannel channel = FileChannel.open(raw, READ)) {
+            final BitwiseSegmentsMemory<Byte> read =
+                    BitwiseSegmentsMemory.readFrom(channel, byte.class, size);
+            for (int index = 0; index < size; ++index) {
+                MatcherAssert.assertThat(bytes(read).fetchByte(index), CoreMatchers.equalTo((byte) index));
+            }
+        }
+        Assertions.assertThrows(
+                UnsupportedOperationException.class,
+                () -> new ArrayMemory<Integer>(1).writeTo(
+                        Channels.newChannel(OutputStream.nullOutputStream()))
+        );
+    }
+
+    @Test
+    public void longIndexedMemory() {
+        // sparse chunks, only the touched 2-slot segments are allocated
+        final LongIndexedMemory<Long> sparse = new LongIndexedSegmentsMemory<>(
+                1L << 34, len -> new SegmentsMemory<>(len, LazyMemory::new));
+        MatcherAssert.assertThat(sparse.length(), CoreMatchers.equalTo(1L << 34));
+        final long[] indexes = {0, 3, 1L << 31, (1L << 31) + (1L << 30), (1L << 33) + 1};
+        for (final long index : indexes) {
+            sparse.store(index, index);
+        }
+        for (final long index : indexes) {
+            MatcherAssert.assertThat(sparse.fetch(index), CoreMatchers.equalTo(index));
+        }
+        MatcherAssert.assertThat(sparse.fetch((1L << 32) - 1), CoreMatchers.nullValue());
+        Assertions.assertThrows(
+                IndexOutOfBoundsException.class,
+                () -> sparse.fetch(1L << 34)
+        );
+        Assertions.assertThrows(
+                IndexOutOfBoundsException.class,
+                () -> sparse.fetch(Long.MIN_VALUE + 1)
+        );
+        Assertions.assertThrows(
+                IndexOutOfBoundsException.class,
+                () -> sparse.store(-1L, 1L)
+        );
+
+        final int size = 1 << 10;
+        try (final LongIndexedNativeMemory<Long> longs =
+                     new LongIndexedNativeMemory<>(long.class, size)) {
+            try (final ExecutorService executor = Executors.newWorkStealingPool()) {
+                for (int index = 0; index < size; ++index) {
+                    final long i = index;
+                    executor.execute(() -> {
+                        longs.fetchAndAdd(i, i);
+                        longs.fetchAndBitwiseOr(i & 1, 1L);
+                    });
+                }
+            }
+            final LongIndexedNativeMemory<Long> grown = longs.realloc(size << 1);
+            grown.store(size, 7L);
+            MatcherAssert.assertThat(grown.length(), CoreMatchers.equalTo((long) size << 1));
+            MatcherAssert.assertThat(grown.fetch(size), CoreMatchers.equalTo(7L));
+            MatcherAssert.assertThat(grown.fetch(0L), CoreMatchers.equalTo(1L));
+            for (long index = 2; index < size; ++index) {
+                MatcherAssert.assertThat(longs.fetch(index), CoreMatchers.equalTo(index));
+            }
+            MatcherAssert.assertThat(longs.compareAndStore(5, 5L, 6L), CoreMatchers.is(true));
+        }
+    }
+
+    @Test
+    public void poolMemory() {
+        // zeroed in the releasing thread
+        final SegmentPool pool = new SegmentPool(2, Runnable::run);
+        final long[] released = pool.acquire(long[].class, 1 << 4);
+        Arrays.fill(released, -1L);
+        pool.release(released);
+        final long[] reused = pool.acquire(long[].class, 1 << 4);
+        MatcherAssert.assertThat(reused, CoreMatchers.sameInstance(released));
+        MatcherAssert.assertThat(reused, CoreMatchers.equalTo(new long[1 << 4]));
+        // other length, other type, not a power of two
+        MatcherAssert.assertThat(pool.acquire(long[].class, 1 << 5).length, CoreMatchers.equalTo(1 << 5));
+        MatcherAssert.assertThat(pool.acquire(int[].class, 1 << 4).length, CoreMatchers.equalTo(1 << 4));
+        pool.release(new long[3]);
+        MatcherAssert.assertThat(pool.acquire(long[].class, 3).length, CoreMatchers.equalTo(3));
+
+        final int size = 1 << 8;
+        for (int cycle = 0; cycle < 4; ++cycle) {
+            SegmentsMemory<Integer> objects = new SegmentsMemory<>(size, pool);
+            BitwiseSegmentsMemory<Long> longs = new BitwiseSegmentsMemory<>(long.class, size, pool);
+            final LongMemory words = longs(longs);
+            for (int i = 0; i < size; ++i) {
+                MatcherAssert.assertThat(objects.fetch(i), CoreMatchers.nullValue());
+                MatcherAssert.assertThat(words.fetchLong(i), CoreMatchers.equalTo(0L));
+                objects.store(i, i);
+                words.storeLong(i, i);
+            }
+            // shrink and grow back, the cut off segments are recycled zeroed
+            objects = objects.realloc(size >> 2).realloc(size);
+            longs = longs.realloc(size >> 2).realloc(size);
+            for (int i = 0; i < size; ++i) {
+                MatcherAssert.assertThat(objects.fetch(i), CoreMatchers.equalTo(i < size >> 2 ? i : null));
+                MatcherAssert.assertThat(longs.fetch(i), CoreMatchers.equalTo(i < size >> 2 ? i : 0L));
+            }
+            objects.release();
+            longs.release();
+        }
+        ModifiableMemory<Integer> array = new ArrayMemory<>(1 << 4, pool);
+        array.store(3, 3);
+        array = array.realloc(1 << 5);
+        MatcherAssert.assertThat(array.fetch(3), CoreMatchers.equalTo(3));
+        MatcherAssert.assertThat(array.length(), CoreMatchers.equalTo(1 << 5));
+
+        // views and old memories never release, a release happens once
+        final long[] owned = pool.acquire(long[].class, 1 << 6);
+        pool.release(owned);
+        final BitwiseSegmentsMemory<Long> first = new BitwiseSegmentsMemory<>(long.class, 1 << 7, pool);
+        final BitwiseSegmentsMemory<Long> grown = first.realloc(1 << 8);
+        first.withMode(AccessMode.OPAQUE).release();
+        first.release();
+        MatcherAssert.assertThat(pool.acquire(long[].class, 1 << 6), CoreMatchers.not(CoreMatchers.sameInstance(owned)));
+        grown.release();
+        grown.release();
+        MatcherAssert.assertThat(pool.acquire(long[].class, 1 << 6), CoreMatchers.sameInstance(owned));
+        MatcherAssert.assertThat(pool.acquire(long[].class, 1 << 6), CoreMatchers.not(CoreMatchers.sameInstance(owned)));
+
+        // only the owner of pooled segments may be reallocated
+        Assertions.assertThrows(IllegalStateException.class, () -> first.realloc(1 << 6));
+        Assertions.assertThrows(IllegalStateException.class, () -> grown.withMode(AccessMode.OPAQUE).realloc(1 << 6));
+        final SegmentsMemory<Integer> pooled = new SegmentsMemory<>(1 << 7, pool);
+        final SegmentsMemory<Integer> moved = pooled.realloc(1 << 8);
+        Assertions.assertThrows(IllegalStateException.class, () -> pooled.realloc(1 << 6));
+        Assertions.assertThrows(IllegalStateException.class, () -> moved.withMode(AccessMode.OPAQUE).realloc(1 << 6));
+        moved.realloc(1 << 6).release();
+    }
+
+    @Test
+    public void packedMemory() {
+        final int size = 1 << 8;
+        final PackedMemory nibbles = new PackedMemory(4, size);
+        MatcherAssert.assertThat(nibbles.max(), CoreMatchers.equalTo(15L));
+        try (final ExecutorService executor = Executors.newWorkStealingPool()) {
+            for (int k = 0; k < 1 << 6; ++k) {
+                executor.execute(() -> {
+                    for (int index = 0; index < size; index += 2) {
+                        nibbles.fetchAndIncrementSaturated(index);
+                        nibbles.fetchAndAdd(index + 1, 1L);
+                    }
+                });
+            }
+        }
+        for (int index = 0; index < size; index += 2) {
+            // saturated at 15, 64 wrapped around to 0
+            MatcherAssert.assertThat(nibbles.fetch(index), CoreMatchers.equalTo(15L));
+            MatcherAssert.assertThat(nibbles.fetch(index + 1), CoreMatchers.equalTo(0L));
+        }
+        MatcherAssert.assertThat(nibbles.fetchAndAddSaturated(0, -20L), CoreMatchers.equalTo(15L));
+        MatcherAssert.assertThat(nibbles.fetch(0), CoreMatchers.equalTo(0L));
+        MatcherAssert.assertThat(nibbles.compareAndStore(1, 0L, 9L), CoreMatchers.is(true));
+        MatcherAssert.assertThat(nibbles.compareAndExchange(1, 0L, 3L), CoreMatchers.equalTo(9L));
+        MatcherAssert.assertThat(nibbles.fetchAndMax(1, 12L), CoreMatchers.equalTo(9L));
+        MatcherAssert.assertThat(nibbles.fetch(2), CoreMatchers.equalTo(15L));
+        Assertions.assertThrows(
+                IllegalArgumentException.class,
+                () -> nibbles.store(3, 16L)
+        );
+
+        // 21 values per word, the last one is shared by the cut off slots
+        final PackedMemory triples = new PackedMemory(3, 50);
+        triples.fill(0, 50, 7L);
+        final PackedMemory grown = triples.realloc(30).realloc(50);
+        for (int index = 0; index < 50; ++index) {
+            MatcherAssert.assertThat(grown.fetch(index), CoreMatchers.equalTo(index < 30 ? 7L : 0L));
+        }
+        final PackedMemory wide = new PackedMemory(32, 3);
+        wide.store(1, 0xFFFF_FFFFL);
+        MatcherAssert.assertThat(wide.fetchAndAdd(1, 2L), CoreMatchers.equalTo(0xFFFF_FFFFL));
+        MatcherAssert.assertThat(wide.fetch(1), CoreMatchers.equalTo(1L));
+        MatcherAssert.assertThat(wide.fetch(0), CoreMatchers.equalTo(0L));
+    }
+
+    @Test
+    public void multiCasMemory() {
+        final int size = 1 << 3, total = 1 << 10;
+        final MultiCasMemory<Integer> accounts = new MultiCasMemory<>(new SegmentsMemory<>(size));
+        for (int i = 0; i < size; ++i) {
+            accounts.store(i, total / size);
+        }
+        try (final ExecutorService executor = Executors.newWorkStealingPool()) {
+            for (int k = 0; k < 1 << 10; ++k) {
+                final int from = k & (size - 1), to = (k * 5 + 3) & (size - 1);
+                // moves a unit between two accounts, retried until it commits
+                executor.execute(() -> {
+                    for (;;) {
+                        final Integer a = accounts.fetch(from), b = accounts.fetch(to);
+                        if (accounts.casN(new int[]{from, to},
+                                new Integer[]{a, b},
+                                new Integer[]{a - 1, b + 1})) {
+                            break;
+                        }
+                    }
+                });
+            }
+        }
+        int sum = 0;
+        for (int i = 0; i < size; ++i) {
+            sum += accounts.fetch(i);
+        }
+        MatcherAssert.assertThat(sum, CoreMatchers.equalTo(total));
+
+        final Integer x = accounts.fetch(0), y = accounts.fetch(1);
+        MatcherAssert.assertThat(accounts.casN(new int[]{1, 0},
+                new Integer[]{y, -1}, new Integer[]{7, 7}), CoreMatchers.is(false));
+        MatcherAssert.assertThat(accounts.fetch(1), CoreMatchers.sameInstance(y));
+        MatcherAssert.assertThat(accounts.fetch(0), CoreMatchers.sameInstance(x));
+        Assertions.assertThrows(
+                IllegalArgumentException.class,
+                () -> accounts.casN(new int[]{2, 2}, new Integer[]{x, x}, new Integer[]{y, y})
+        );
+        final MultiCasMemory<Integer> grown = accounts.realloc(size << 1);
+        MatcherAssert.assertThat(grown.fetch(1), CoreMatchers.sameInstance(y));
+        MatcherAssert.assertThat(grown.fetch(size), CoreMatchers.nullValue());
+    }
+
+    @Test
+    public void backoffMemory() {
+        final int size = 1 << 2;
+        final ModifiableMemory<Integer> memory = new ArrayMemory<>(size);
+        memory.fill(0, size, 0);
+        MatcherAssert.assertThat(memory.transformContended(0, x -> x + 1, Backoff.NONE),
+                CoreMatchers.equalTo(0));
+        final AtomicInteger pauses = new AtomicInteger();
+        final Backoff counting = failures -> {
+            pauses.incrementAndGet();
+            Backoff.DEFAULT.pause(failures);
+        };
+        final AtomicInteger failures = new AtomicInteger();
+        try (final ExecutorService executor = Executors.newWorkStealingPool()) {
+            for (int k = 0; k < 1 << 10; ++k) {
+                final int i = k & (size - 1);
+                executor.execute(() -> failures.addAndGet(
+                        memory.transformContended(i, x -> x + 1, counting)));
+                executor.execute(() -> memory.transform(i, x -> x + 1));
+            }
+        }
+        MatcherAssert.assertThat(failures.get(), CoreMatchers.equalTo(pauses.get()));
+        MatcherAssert.assertThat(memory.fetch(0), CoreMatchers.equalTo((1 << 11) / size + 1));
+        for (int i = 1; i < size; ++i) {
+            MatcherAssert.assertThat(memory.fetch(i), CoreMatchers.equalTo((1 << 11) / size));
+        }
+        Assertions.assertThrows(
+                IllegalArgumentException.class,
+                () -> Backoff.exponential(4, 8, 2)
+        );
+    }
+
+    @Test
+    public void compactMemory() throws Exception {
+        final int size = 1 << 10, rounds = 1 << 4;
+        final SegmentsMemory<Integer> memory = new SegmentsMemory<>(size);
+        memory.fill(0, size, 0);
+        final ModifiableMemory<Integer> flat;
+        try (final ExecutorService executor = Executors.newWorkStealingPool()) {
+            final List<Future<?>> writers = new ArrayList<>();
+            for (int k = 0; k < rounds; ++k) {
+                writers.add(executor.submit(() -> {
+                    for (int i = 0; i < size; ++i) {
+                        memory.transform(i, x -> x + 1);
+                    }
+                }));
+            }
+            // writers race with the compaction and are forwarded
+            flat = memory.compact();
+            for (final Future<?> writer : writers) {
+                writer.get();
+            }
+        }
+        MatcherAssert.assertThat(memory.compact(), CoreMatchers.sameInstance(flat));
+        MatcherAssert.assertThat(flat.length(), CoreMatchers.equalTo(size));
+        final Integer[] range = new Integer[size];
+        memory.fetchRange(0, range, 0, size);
+        for (int i = 0; i < size; ++i) {
+            MatcherAssert.assertThat(flat.fetch(i), CoreMatchers.equalTo(rounds));
+            MatcherAssert.assertThat(range[i], CoreMatchers.equalTo(rounds));
+        }
+        memory.store(7, -1);
+        MatcherAssert.assertThat(flat.fetch(7), CoreMatchers.equalTo(-1));
+        MatcherAssert.assertThat(memory.compareAndExchange(7, -1, -2), CoreMatchers.equalTo(-1));
+        MatcherAssert.assertThat(flat.fetch(7), CoreMatchers.equalTo(-2));
+        Assertions.assertThrows(
+                IllegalStateException.class,
+                () -> memory.realloc(size << 1)
+        );
+    }
+
+    @Test
+    public void compactRacingWrites() throws Exception {
+        final int size = 1 << 10, half = size >> 1, writers = 4, rounds = 1 << 4;
+        final SegmentsMemory<Integer> memory = new SegmentsMemory<>(size);
+        memory.fill(0, size, 0);
+        final AtomicLong swappedOut = new AtomicLong();
+        final ModifiableMemory<Integer> flat;
+        try (final ExecutorService executor = Executors.newWorkStealingPool()) {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int w = 0; w < writers; ++w) {
+                final int id = w;
+                futures.add(executor.submit(() -> {
+                    for (int r = 1; r <= rounds; ++r) {
+                        for (int i = 0; i < half; ++i) {
+                            swappedOut.addAndGet(memory.fetchAndStore(i, r));
+                        }
+                        // every writer owns a quarter of the stored half
+                        for (int i = half + id; i < size; i += writers) {
+                            memory.store(i, r);
+                        }
+                    }
+                }));
+            }
+            futures.add(executor.submit(() -> {
+                final Integer[] range = new Integer[size];
+                for (int r = 0; r < rounds; ++r) {
+                    memory.fetchRange(0, range, 0, size);
+                    for (final Integer value : range) {
+                        MatcherAssert.assertThat(value, CoreMatchers.notNullValue());
+                    }
+                }
+            }));
+            // every write races with the compaction and is forwarded
+            flat = memory.compact();
+            for (final Future<?> future : futures) {
+                future.get();
+            }
+        }
+        // no swap is lost: every stored value is either swapped out or final
+        long remaining = 0;
+        for (int i = 0; i < half; ++i) {
+            remaining += flat.fetch(i);
+        }
+        MatcherAssert.assertThat(swappedOut.get() + remaining,
+                CoreMatchers.equalTo((long) writers * half * rounds * (rounds + 1) / 2));
+        final Integer[] range = new Integer[size];
+        memory.fetchRange(0, range, 0, size);
+        for (int i = half; i < size; ++i) {
+            MatcherAssert.assertThat(flat.fetch(i), CoreMatchers.equalTo(rounds));
+            MatcherAssert.assertThat(range[i], CoreMatchers.equalTo(rounds));
+        }
+    }
+
+    @Test
+    public void compactSharedMemory() {
+        final SegmentsMemory<Integer> memory = new SegmentsMemory<>(1 << 6);
+        memory.fill(0, memory.length(), 1);
+        final SegmentsMemory<Integer> same = memory.realloc(memory.length());
+        final SegmentsMemory<Integer> grown = memory.realloc(1 << 7);
+        final ModifiableMemory<Integer> flat = memory.compact();
+        // the siblings forward the shared slots into the same flat memory
+        MatcherAssert.assertThat(same.fetch(5), CoreMatchers.equalTo(1));
+        same.store(5, 2);
+        MatcherAssert.assertThat(flat.fetch(5), CoreMatchers.equalTo(2));
+        MatcherAssert.assertThat(grown.fetchAndStore(5, 3), CoreMatchers.equalTo(2));
+        grown.store(100, 4);
+        MatcherAssert.assertThat(grown.fetch(100), CoreMatchers.equalTo(4));
+        MatcherAssert.assertThat(same.compact(), CoreMatchers.sameInstance(flat));
+        Assertions.assertThrows(IllegalStateException.class, () -> same.realloc(1 << 8));
+        Assertions.assertThrows(IllegalStateException.class, grown::compact);
+    }
+
+    @Test
+    public void snapshotMemory() throws Exception {
+        final int size = 1 << 8, writes = 1 << 16;
+        final VersionedSegmentsMemory<Integer> memory = new VersionedSegmentsMemory<>(size);
+        final List<ReadableMemory<Integer>> snapshots = new ArrayList<>();
+        try (final ExecutorService executor = Executors.newSingleThreadExecutor()) {
+            // the k-th write stores k into the slot k % size
+            final Future<?> writer = executor.submit(() -> {
+                for (int k = 0; k < writes; ++k) {
+                    memory.store(k & (size - 1), k);
+                }
+            });
+            for (int i = 0; i < 64 && !writer.isDone(); ++i) {
+                snapshots.add(memory.snapshot());
+                Thread.yield();
+            }
+            writer.get();
+        }
+        snapshots.add(memory.snapshot());
+        for (final ReadableMemory<Integer> snapshot : snapshots) {
+            // a point in time: every slot holds the last write before the latest one
+            int last = -1;
+            for (int index = 0; index < size; ++index) {
+                final Integer value = snapshot.fetch(index);
+                if (value != null) {
+                    last = Math.max(last, value);
+                }
+            }
+            for (int index = 0; index < size; ++index) {
+                final int expected = last - ((last - index) & (size - 1));
+                MatcherAssert.assertThat(snapshot.fetch(index),
+                        CoreMatchers.equalTo(expected < 0 ? null : expected));
+            }
+        }
+        final ReadableMemory<Integer> before = memory.snapshot();
+        memory.store(0, -1);
+        MatcherAssert.assertThat(before.fetch(0), CoreMatchers.equalTo(writes - size));
+        MatcherAssert.assertThat(memory.fetch(0), CoreMatchers.equalTo(-1));
+
+        final ModifiableMemory<Integer> grown = memory.realloc(size << 1);
+        grown.store(1, -2);
+        MatcherAssert.assertThat(memory.fetch(1), CoreMatchers.equalTo(writes - size + 1));
+        MatcherAssert.assertThat(grown.fetch(0), CoreMatchers.equalTo(-1));
+        MatcherAssert.assertThat(grown.length(), CoreMatchers.equalTo(size << 1));
+    }
+
+    @Test
+    public void rangeMemory() {
+        final int size = 1 << 12;
+        final Integer[] values = new Integer[size];
+        Arrays.setAll(values, i -> i);
+        final ModifiableMemory<Integer> memory = new SegmentsMemory<>(size);
+        memory.storeRange(3, values, 3, size - 3);
+        memory.fill(0, 3, -1);
+        final ModifiableMemory<Integer> copy = new ArrayMemory<>(size);
+        memory.copyTo(copy);
+        final Integer[] fetched = new Integer[size];
+        copy.fetchRange(0, fetched, 0, size);
+        for (int index = 0; index < size; ++index) {
+            final int expected = index < 3 ? -1 : index;
+            MatcherAssert.assertThat(fetched[index], CoreMatchers.equalTo(expected));
+        }
+        final long[] longs = new long[size];
+        Arrays.setAll(longs, i -> (long) i << 32);
+        final BitwiseSegmentsMemory<Long> bits =
+                new BitwiseSegmentsMemory<>(long.class, size);
+        longs(bits).storeRangeLong(0, longs, 0, size);
+        final long[] read = new long[size - 5];
+        longs(bits).fetchRangeLong(5, read, 0, size - 5);
+        MatcherAssert.assertThat(
+                read,
+                CoreMatchers.equalTo(Arrays.copyOfRange(longs, 5, size))
+        );
+        Assertions.assertThrows(
+                IndexOutOfBoundsException.class,
+                () -> memory.fetchRange(size - 1, fetched, 0, 2)
+        );
+    }
+
+    @Test
+    public void bitwiseMemory() {
+        final int size = 1 << 10;
+        final BitwiseSegmentsMemory<Long> a = new BitwiseSegmentsMemory<>(long.class, size);
+        final BitwiseSegmentsMemory<Long> b = new BitwiseSegmentsMemory<>(long.class, size >> 1);
+        final long[] x = ThreadLocalRandom.current().longs(size).toArray();
+        final long[] y = ThreadLocalRandom.current().longs(size >> 1).toArray();
+        longs(a).storeRangeLong(0, x, 0, size);
+        longs(b).storeRangeLong(0, y, 0, size >> 1);
+        final BitSet expected = BitSet.valueOf(x);
+        expected.xor(BitSet.valueOf(y));
+        final BitwiseSegmentsMemory<Long> snapshot = a.xorSnapshot(b);
+        a.xor(b);
+        for (final BitwiseSegmentsMemory<Long> actual : List.of(a, snapshot)) {
+            final long[] words = new long[size];
+            longs(actual).fetchRangeLong(0, words, 0, size);
+            MatcherAssert.assertThat(BitSet.valueOf(words), CoreMatchers.equalTo(expected));
+            MatcherAssert.assertThat(actual.popCount(), CoreMatchers.equalTo((long) expected.cardinality()));
+        }
+        a.and(b);
+        expected.and(BitSet.valueOf(y));
+        final long[] words = new long[size];
+        longs(a).fetchRangeLong(0, words, 0, size);
+        MatcherAssert.assertThat(BitSet.valueOf(words), CoreMatchers.equalTo(expected));
+    }
 }